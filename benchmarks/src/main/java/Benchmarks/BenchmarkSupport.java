@@ -0,0 +1,81 @@
+package Benchmarks;
+
+import ServerSide.Chat;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shared setup for the server benchmarks.
+ * 
+ * @author Refactored
+ */
+final class BenchmarkSupport {
+    
+    private BenchmarkSupport() {
+        // Utility class - prevent instantiation
+    }
+    
+    /**
+     * Silences per-join and per-message logging so it does not dominate results.
+     */
+    static void quietLogging() {
+        Logger.getLogger("").setLevel(Level.WARNING);
+        Logger.getLogger("ServerSide").setLevel(Level.WARNING);
+    }
+    
+    /**
+     * Creates a chat server populated with stub clients.
+     * 
+     * @param clients number of stub clients to add
+     * @param latencyMicros per-callback latency of each stub
+     * @param received counter shared by all stubs
+     * @return the populated server
+     * @throws RemoteException if the server cannot be created
+     */
+    static Chat populatedChat(int clients, long latencyMicros, LongAdder received) throws RemoteException {
+        quietLogging();
+        Chat chat = new Chat();
+        for (int i = 0; i < clients; i++) {
+            chat.addClient(username(i), new StubChatClient(latencyMicros, received));
+        }
+        return chat;
+    }
+    
+    /**
+     * Waits until every queued delivery has been sent, so setup traffic
+     * does not leak into the measurement.
+     * 
+     * @param chat the server to wait on
+     */
+    static void awaitQuiescence(Chat chat) {
+        while (chat.getPendingDeliveryCount() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+    
+    /**
+     * Unexports a server created by {@link #populatedChat}.
+     * 
+     * @param chat the server to shut down
+     */
+    static void shutdown(Chat chat) {
+        try {
+            UnicastRemoteObject.unexportObject(chat, true);
+        } catch (RemoteException e) {
+            // Already unexported
+        }
+    }
+    
+    /**
+     * Gets the username used for the stub client at an index.
+     * 
+     * @param index the client index
+     * @return a valid username
+     */
+    static String username(int index) {
+        return "user_" + index;
+    }
+}
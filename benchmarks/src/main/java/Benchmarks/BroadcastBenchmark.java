@@ -0,0 +1,69 @@
+package Benchmarks;
+
+import ServerSide.Chat;
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Broadcast fan-out from {@code Chat.updateChat} to in-process stub clients.
+ * {@code updateChat} measures what the sender waits for; {@code updateChatAndAwaitDelivery}
+ * measures until every stub has received the message, including the batch flush window.
+ * 
+ * @author Refactored
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BroadcastBenchmark {
+    
+    @Param({"10", "1000"})
+    public int clients;
+    
+    @Param({"0", "50"})
+    public long latencyMicros;
+    
+    private final LongAdder received = new LongAdder();
+    private Chat chat;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws RemoteException {
+        chat = BenchmarkSupport.populatedChat(clients, latencyMicros, received);
+        BenchmarkSupport.awaitQuiescence(chat);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.shutdown(chat);
+    }
+    
+    @Benchmark
+    public void updateChat() throws RemoteException {
+        chat.updateChat("user_0", "The quick brown fox jumps over the lazy dog");
+    }
+    
+    @Benchmark
+    public void updateChatAndAwaitDelivery() throws RemoteException {
+        long target = received.sum() + clients;
+        chat.updateChat("user_0", "The quick brown fox jumps over the lazy dog");
+        while (received.sum() < target) {
+            Thread.onSpinWait();
+        }
+    }
+}
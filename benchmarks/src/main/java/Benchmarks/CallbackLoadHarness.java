@@ -0,0 +1,182 @@
+package Benchmarks;
+
+import ServerSide.Chat;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Loads the server with many clients whose callbacks all block at once, and
+ * reports the threads and memory that takes on platform and on virtual
+ * delivery threads. Every client answers each callback after a fixed
+ * latency, so a burst of messages keeps a remote call in flight to every
+ * client at the same time.
+ *
+ * <p>Without {@code -Dchat.delivery.virtualThreads} the harness runs itself
+ * twice in child JVMs, once with platform threads and once with virtual
+ * threads, and each prints one line: peak live platform threads, peak
+ * resident memory (Linux only), peak heap used, and delivered messages per
+ * second.
+ *
+ * <p>Usage: {@code java -cp target/benchmarks.jar Benchmarks.CallbackLoadHarness [clients] [latencyMs] [messages]}.
+ *
+ * @author Refactored
+ */
+public final class CallbackLoadHarness {
+
+    private static final String VIRTUAL_THREADS_PROPERTY = "chat.delivery.virtualThreads";
+
+    /** Give up on delivery if it has not finished within this long */
+    private static final long MAX_WAIT_MILLIS = 300_000;
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 20;
+
+    /** Callback latency of every client; zero while the clients join */
+    private static volatile long latencyNanos = 0;
+
+    private CallbackLoadHarness() {
+        // Entry point only
+    }
+
+    /**
+     * Runs the harness.
+     *
+     * @param args optional client count, callback latency in milliseconds,
+     *             and number of messages broadcast
+     * @throws Exception if the server cannot be created
+     */
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        long latencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 400;
+        int messages = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        if (System.getProperty(VIRTUAL_THREADS_PROPERTY) == null) {
+            System.out.printf("%d clients, %d ms callback latency, %d messages%n", clients, latencyMillis, messages);
+            System.out.printf("%-9s %14s %10s %10s %12s%n", "threads", "peak threads", "peak RSS", "peak heap", "msg/s");
+            runChild("false", args);
+            runChild("true", args);
+            return;
+        }
+
+        // Only the delivery workers should be calling the clients
+        setDefault("chat.heartbeat.intervalMs", "0");
+        setDefault("chat.history.replayOnJoin", "0");
+        BenchmarkSupport.quietLogging();
+
+        LongAdder received = new LongAdder();
+        Chat chat = new Chat();
+        for (int i = 0; i < clients; i++) {
+            chat.addClient(BenchmarkSupport.username(i), new BlockingClient(received));
+        }
+        BenchmarkSupport.awaitQuiescence(chat);
+        Thread.sleep(500);
+        received.reset();
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        threads.resetPeakThreadCount();
+        latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+
+        long expected = (long) clients * messages;
+        long start = System.nanoTime();
+        for (int m = 0; m < messages; m++) {
+            chat.updateChat(BenchmarkSupport.username(m % clients), "load message " + m);
+        }
+        long peakRss = 0;
+        long peakHeap = 0;
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MILLIS);
+        while (received.sum() < expected && System.nanoTime() < deadline) {
+            peakRss = Math.max(peakRss, residentBytes());
+            peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+            Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        System.out.printf("%-9s %14d %9dM %9dM %12.0f%s%n",
+            Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY) ? "virtual" : "platform",
+            threads.getPeakThreadCount(), peakRss >> 20, peakHeap >> 20,
+            received.sum() * 1e9 / elapsedNanos,
+            received.sum() < expected ? "  (incomplete)" : "");
+        System.exit(0);
+    }
+
+    private static void runChild(String virtualThreads, String[] args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-D" + VIRTUAL_THREADS_PROPERTY + "=" + virtualThreads);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(CallbackLoadHarness.class.getName());
+        command.addAll(List.of(args));
+        int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+        if (exitCode != 0) {
+            System.out.println("Run with " + VIRTUAL_THREADS_PROPERTY + "=" + virtualThreads
+                + " failed with exit code " + exitCode);
+        }
+    }
+
+    /**
+     * Reads the resident set size of this process.
+     *
+     * @return resident bytes, or 0 where /proc is not available
+     */
+    private static long residentBytes() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not Linux
+        }
+        return 0;
+    }
+
+    private static void setDefault(String property, String value) {
+        if (System.getProperty(property) == null) {
+            System.setProperty(property, value);
+        }
+    }
+
+    /**
+     * Client whose every callback blocks for the current latency, as a
+     * remote call waiting on the network would.
+     */
+    private static final class BlockingClient extends StubChatClient {
+
+        BlockingClient(LongAdder received) {
+            super(0, received);
+        }
+
+        @Override
+        public void receiveEncoded(byte[] encodedBatch) throws RemoteException {
+            block();
+            super.receiveEncoded(encodedBatch);
+        }
+
+        @Override
+        public void receiveCompressed(byte[] compressedBatch) throws RemoteException {
+            block();
+            super.receiveCompressed(compressedBatch);
+        }
+
+        private static void block() {
+            long nanos = latencyNanos;
+            if (nanos > 0) {
+                LockSupport.parkNanos(nanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package Benchmarks;
+
+import ServerSide.Chatter;
+import ServerSide.ClientRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * ClientRegistry against the synchronized list it replaced, for username
+ * lookups, broadcast iteration and join/leave.
+ * 
+ * @author Refactored
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClientRegistryBenchmark {
+    
+    @Param({"10", "1000", "10000"})
+    public int chatters;
+    
+    private ClientRegistry registry;
+    private List<Chatter> synchronizedList;
+    private String lastUser;
+    private Chatter churner;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.quietLogging();
+        Executor noDelivery = task -> { };
+        registry = new ClientRegistry();
+        synchronizedList = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < chatters; i++) {
+            Chatter chatter = newChatter(BenchmarkSupport.username(i), noDelivery);
+            registry.add(chatter);
+            synchronizedList.add(chatter);
+        }
+        lastUser = BenchmarkSupport.username(chatters - 1).toUpperCase();
+        churner = newChatter("churner", noDelivery);
+    }
+    
+    private static Chatter newChatter(String name, Executor executor) {
+        return new Chatter(name, new StubChatClient(0, new LongAdder()), executor, chatter -> { });
+    }
+    
+    @Benchmark
+    public boolean registryContains() {
+        return registry.contains(lastUser);
+    }
+    
+    @Benchmark
+    public boolean listContains() {
+        synchronized (synchronizedList) {
+            return synchronizedList.stream()
+                    .anyMatch(chatter -> chatter.getName().equalsIgnoreCase(lastUser));
+        }
+    }
+    
+    @Benchmark
+    public void registryIterate(Blackhole blackhole) {
+        for (Chatter chatter : registry.snapshot()) {
+            blackhole.consume(chatter);
+        }
+    }
+    
+    @Benchmark
+    public void listIterate(Blackhole blackhole) {
+        synchronized (synchronizedList) {
+            for (Chatter chatter : synchronizedList) {
+                blackhole.consume(chatter);
+            }
+        }
+    }
+    
+    @Benchmark
+    public void registryJoinLeave() {
+        registry.add(churner);
+        registry.remove(churner);
+    }
+    
+    @Benchmark
+    public void listJoinLeave() {
+        synchronized (synchronizedList) {
+            synchronizedList.add(churner);
+            synchronizedList.remove(churner);
+        }
+    }
+}
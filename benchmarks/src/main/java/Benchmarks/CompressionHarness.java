@@ -0,0 +1,179 @@
+package Benchmarks;
+
+import ServerSide.ChatConstants;
+import ServerSide.ChatMessage;
+import ServerSide.MessageBatch;
+import ServerSide.MessageCompression;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Reports how well batch compression works on a synthetic chat corpus and
+ * what it costs. For each kind of batch the server sends, it prints the
+ * average encoded size, the size after plain Deflate and after Deflate with
+ * the shared chat dictionary, and the CPU time to compress and decompress
+ * one batch with the dictionary.
+ *
+ * <p>The corpus is generated from a fixed seed: short messages built from
+ * common chat words, a few join notices, and occasional long pastes of log
+ * output. Set {@code -Dchat.compression.level} to compare Deflate levels.
+ *
+ * <p>Usage: {@code java -cp target/benchmarks.jar Benchmarks.CompressionHarness [batchesPerKind]}.
+ *
+ * @author Refactored
+ */
+public final class CompressionHarness {
+
+    private static final String[] WORDS = {
+        "the", "and", "to", "a", "I", "you", "it", "is", "that", "for", "on", "was",
+        "with", "this", "we", "can", "do", "what", "so", "if", "just", "about", "meeting",
+        "server", "build", "deploy", "test", "fix", "bug", "today", "tomorrow", "lunch",
+        "thanks", "ok", "yes", "no", "lol", "think", "know", "check", "looks", "good",
+        "broken", "again", "release", "branch", "merge", "review", "please", "later"
+    };
+
+    private static final String[] LOG_LINES = {
+        "2024-03-14 09:12:44,118 INFO  [main] Starting service on port 8080",
+        "2024-03-14 09:12:45,002 WARN  [pool-1-thread-3] Retrying request after timeout",
+        "2024-03-14 09:12:45,771 ERROR [pool-1-thread-7] Request failed",
+        "java.io.IOException: Connection refused",
+        "\tat java.base/sun.nio.ch.Net.connect0(Native Method)",
+        "\tat java.base/sun.nio.ch.Net.connect(Net.java:579)",
+        "\tat com.example.client.Gateway.send(Gateway.java:212)",
+        "Caused by: java.lang.NullPointerException: Cannot invoke \"String.length()\""
+    };
+
+    private static final int USERS = 30;
+    private static final int WARMUP_ROUNDS = 20;
+
+    private CompressionHarness() {
+        // Entry point only
+    }
+
+    /**
+     * Runs the harness.
+     *
+     * @param args optional number of batches generated for each kind
+     */
+    public static void main(String[] args) {
+        int batchesPerKind = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        Random random = new Random(42);
+
+        System.out.printf("Deflate level %d, compression threshold %d bytes%n",
+            ChatConstants.COMPRESSION_LEVEL, ChatConstants.COMPRESSION_THRESHOLD_BYTES);
+        System.out.printf("%-22s %9s %9s %9s %7s %10s %10s%n",
+            "batch", "encoded", "deflate", "dict", "ratio", "comp us", "decomp us");
+        report("live, 8 messages", batches(random, batchesPerKind, 8, 0));
+        report("replay, 50 messages", batches(random, batchesPerKind, ChatConstants.HISTORY_REPLAY_ON_JOIN, 0.02));
+        report("history, 200 messages", batches(random, batchesPerKind, ChatConstants.MAX_HISTORY_PAGE, 0.02));
+        report("one long paste", batches(random, batchesPerKind, 1, 1));
+    }
+
+    private static List<byte[]> batches(Random random, int count, int messagesPerBatch, double pasteChance) {
+        List<byte[]> batches = new ArrayList<>(count);
+        long sequence = 1;
+        long timestamp = 1_700_000_000_000L;
+        for (int b = 0; b < count; b++) {
+            List<ChatMessage> messages = new ArrayList<>(messagesPerBatch);
+            for (int m = 0; m < messagesPerBatch; m++) {
+                timestamp += random.nextInt(20_000);
+                String sender = BenchmarkSupport.username(random.nextInt(USERS));
+                ChatMessage message;
+                if (random.nextDouble() < pasteChance) {
+                    message = ChatMessage.chat(sender, null, paste(random));
+                } else if (random.nextInt(20) == 0) {
+                    message = ChatMessage.server(null, sender + " has joined the chat!");
+                } else {
+                    message = ChatMessage.chat(sender, null, sentence(random));
+                }
+                messages.add(new ChatMessage(sequence++, timestamp, message.getKind(),
+                    message.getSender(), message.getRoom(), message.getText()));
+            }
+            batches.add(MessageBatch.encode(messages));
+        }
+        return batches;
+    }
+
+    private static String sentence(Random random) {
+        int words = 3 + random.nextInt(12);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.append(random.nextBoolean() ? "" : "?").toString();
+    }
+
+    private static String paste(Random random) {
+        int lines = 20 + random.nextInt(40);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text.append(LOG_LINES[random.nextInt(LOG_LINES.length)]).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static void report(String name, List<byte[]> batches) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long encodedBytes = 0;
+        long plainBytes = 0;
+        long dictionaryBytes = 0;
+        List<byte[]> compressed = new ArrayList<>(batches.size());
+        for (byte[] batch : batches) {
+            encodedBytes += batch.length;
+            plainBytes += deflateWithoutDictionary(batch);
+            byte[] deflated = MessageCompression.compress(batch);
+            dictionaryBytes += deflated.length;
+            compressed.add(deflated);
+            if (!Arrays.equals(batch, MessageCompression.decompress(deflated))) {
+                throw new IllegalStateException("Round trip changed a batch");
+            }
+        }
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (int i = 0; i < batches.size(); i++) {
+                MessageCompression.compress(batches.get(i));
+                MessageCompression.decompress(compressed.get(i));
+            }
+        }
+        long start = threads.getCurrentThreadCpuTime();
+        for (byte[] batch : batches) {
+            MessageCompression.compress(batch);
+        }
+        long compressNanos = threads.getCurrentThreadCpuTime() - start;
+        start = threads.getCurrentThreadCpuTime();
+        for (byte[] deflated : compressed) {
+            MessageCompression.decompress(deflated);
+        }
+        long decompressNanos = threads.getCurrentThreadCpuTime() - start;
+
+        int n = batches.size();
+        System.out.printf("%-22s %9d %9d %9d %6.2fx %10.1f %10.1f%n", name,
+            encodedBytes / n, plainBytes / n, dictionaryBytes / n,
+            (double) encodedBytes / dictionaryBytes,
+            compressNanos / 1000.0 / n, decompressNanos / 1000.0 / n);
+    }
+
+    private static int deflateWithoutDictionary(byte[] batch) {
+        Deflater deflater = new Deflater(ChatConstants.COMPRESSION_LEVEL, true);
+        try {
+            deflater.setInput(batch);
+            deflater.finish();
+            byte[] out = new byte[batch.length + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            return length;
+        } finally {
+            deflater.end();
+        }
+    }
+}
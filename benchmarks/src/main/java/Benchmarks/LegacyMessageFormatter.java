@@ -0,0 +1,42 @@
+package Benchmarks;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * The regex and String.format based MessageFormatter that predates the
+ * cached-timestamp version, kept as a baseline for comparison.
+ * 
+ * @author Refactored
+ */
+final class LegacyMessageFormatter {
+    
+    private static final DateTimeFormatter TIME_FORMATTER = 
+        DateTimeFormatter.ofPattern("HH:mm:ss");
+    
+    private LegacyMessageFormatter() {
+        // Utility class - prevent instantiation
+    }
+    
+    static String formatChatMessage(String username, String message) {
+        String timestamp = LocalDateTime.now().format(TIME_FORMATTER);
+        return String.format("[%s] %s : %s\n", timestamp, username, message);
+    }
+    
+    static String sanitizeInput(String input) {
+        if (input == null) {
+            return "";
+        }
+        return input.replaceAll("[\\x00-\\x08\\x0B\\x0C\\x0E-\\x1F]", "").trim();
+    }
+    
+    static boolean isValidUsername(String username) {
+        if (username == null || username.trim().isEmpty()) {
+            return false;
+        }
+        String trimmed = username.trim();
+        return trimmed.length() >= 3 && 
+               trimmed.length() <= 20 && 
+               trimmed.matches("^[a-zA-Z0-9_-]+$");
+    }
+}
@@ -0,0 +1,335 @@
+package Benchmarks;
+
+import ClientSide.ChatClient;
+import ServerSide.Chat;
+import ServerSide.ChatConstants;
+import ServerSide.ChatMessage;
+import ServerSide.Chattable;
+import ServerSide.LatencyHistogram;
+import ServerSide.MessageBatch;
+import ServerSide.MessageCompression;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load-tests a chat server with headless clients, all on localhost. The
+ * generator starts an RMI registry and a server, then exports one
+ * {@link ChatClient} per simulated user and joins by passing it to
+ * {@link Chattable#join(String[], ChatClient)}, as the GUI client does.
+ * It then drives chat messages at a fixed total rate, turns a share of them
+ * into private messages, and makes clients leave and rejoin at a fixed rate.
+ *
+ * <p>Each message carries the time it was due to be sent, so latency is
+ * measured from the schedule rather than from when a busy sender got round
+ * to it, and a stalled server shows up in the percentiles. Latency is
+ * recorded when a client receives the message; messages a client receives
+ * as history after rejoining are not counted. The first seconds of the run
+ * warm up the JIT and are not reported.
+ *
+ * <p>Usage: {@code java -cp target/benchmarks.jar Benchmarks.LoadGenerator
+ * [clients] [seconds] [messagesPerSecond] [privatePercent] [rejoinsPerSecond]}.
+ * The registry listens on the standard port, which must be free.
+ *
+ * @author Refactored
+ */
+public final class LoadGenerator {
+
+    private static final String HOSTNAME = "localhost";
+
+    /** Prefix of generated message text, followed by the due time in nanoseconds */
+    private static final String TEXT_PREFIX = "load ";
+
+    private static final long WARMUP_SECONDS = 3;
+
+    /** How long a churned client stays away before rejoining */
+    private static final long REJOIN_DELAY_MILLIS = 100;
+
+    /** Give up waiting for deliveries this long after the last send */
+    private static final long DRAIN_MILLIS = 10_000;
+
+    private static final int MAX_PRIVATE_RECIPIENTS = 3;
+
+    private static final LatencyHistogram CHAT_LATENCY = new LatencyHistogram("chat");
+    private static final LatencyHistogram PRIVATE_LATENCY = new LatencyHistogram("private");
+    private static final LatencyHistogram JOIN_LATENCY = new LatencyHistogram("join");
+    private static final LongAdder RECEIVED = new LongAdder();
+
+    private LoadGenerator() {
+        // Entry point only
+    }
+
+    /**
+     * Runs the generator.
+     *
+     * @param args optional client count, run length in seconds, total chat
+     *             messages per second, percentage sent as private messages,
+     *             and clients leaving and rejoining per second
+     * @throws Exception if the registry, server or a client cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        int clientCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 30;
+        double messagesPerSecond = args.length > 2 ? Double.parseDouble(args[2]) : 200;
+        int privatePercent = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        double rejoinsPerSecond = args.length > 4 ? Double.parseDouble(args[4]) : 2;
+        if (clientCount < 2 || seconds <= WARMUP_SECONDS || messagesPerSecond <= 0
+                || privatePercent < 0 || privatePercent > 100 || rejoinsPerSecond < 0) {
+            throw new IllegalArgumentException(
+                "Usage: LoadGenerator [clients>=2] [seconds>" + WARMUP_SECONDS
+                + "] [messagesPerSecond>0] [privatePercent 0-100] [rejoinsPerSecond>=0]");
+        }
+        BenchmarkSupport.quietLogging();
+
+        Registry registry = LocateRegistry.createRegistry(ChatConstants.RMI_REGISTRY_PORT);
+        Chat chat = new Chat();
+        registry.rebind(ChatConstants.SERVER_SERVICE_NAME, chat);
+        Chattable service = (Chattable) registry.lookup(ChatConstants.SERVER_SERVICE_NAME);
+
+        System.out.printf("%d clients, %d s, %.0f msg/s, %d%% private, %.1f rejoins/s%n",
+            clientCount, seconds, messagesPerSecond, privatePercent, rejoinsPerSecond);
+        LoadClient[] clients = new LoadClient[clientCount];
+        long joinStart = System.nanoTime();
+        for (int i = 0; i < clientCount; i++) {
+            clients[i] = new LoadClient(BenchmarkSupport.username(i));
+            clients[i].join(service);
+        }
+        System.out.printf("Joined in %d ms%n", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - joinStart));
+        BenchmarkSupport.awaitQuiescence(chat);
+
+        LongAdder sent = new LongAdder();
+        LongAdder failed = new LongAdder();
+        LongAdder rejoins = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+
+        Thread churn = new Thread(() -> churn(clients, service, rejoinsPerSecond, running, rejoins, failed),
+            "load-churn");
+        churn.setDaemon(true);
+        churn.start();
+
+        long start = System.nanoTime();
+        long warmupEnd = start + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long intervalNanos = (long) (1e9 / messagesPerSecond);
+        boolean measuring = false;
+        for (long due = start; due < end; due += intervalNanos) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (!measuring && due >= warmupEnd) {
+                measuring = true;
+                resetCounters(sent, failed, rejoins);
+            }
+            long dueNanos = due;
+            boolean isPrivate = ThreadLocalRandom.current().nextInt(100) < privatePercent;
+            senders.execute(() -> send(clients, service, dueNanos, isPrivate, sent, failed));
+        }
+        long measuredNanos = System.nanoTime() - warmupEnd;
+        running.set(false);
+        senders.shutdown();
+        senders.awaitTermination(DRAIN_MILLIS, TimeUnit.MILLISECONDS);
+        long drainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_MILLIS);
+        while (chat.getPendingDeliveryCount() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+
+        double measuredSeconds = measuredNanos / 1e9;
+        System.out.printf("sent      %,d messages, %,.0f msg/s, %,d calls failed%n",
+            sent.sum(), sent.sum() / measuredSeconds, failed.sum());
+        System.out.printf("received  %,d messages, %,.0f msg/s%n",
+            RECEIVED.sum(), RECEIVED.sum() / measuredSeconds);
+        System.out.printf("rejoined  %,d clients, %,d dropped deliveries%n",
+            rejoins.sum(), chat.getDroppedDeliveryCount());
+        System.out.println(CHAT_LATENCY.summary());
+        System.out.println(PRIVATE_LATENCY.summary());
+        System.out.println(JOIN_LATENCY.summary());
+        System.exit(0);
+    }
+
+    private static void resetCounters(LongAdder... counters) {
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+        RECEIVED.reset();
+        CHAT_LATENCY.reset();
+        PRIVATE_LATENCY.reset();
+        JOIN_LATENCY.reset();
+    }
+
+    /**
+     * Sends one chat or private message from a random joined client.
+     */
+    private static void send(LoadClient[] clients, Chattable service, long dueNanos, boolean isPrivate,
+            LongAdder sent, LongAdder failed) {
+        LoadClient sender = pickJoined(clients, null);
+        if (sender == null) {
+            return;
+        }
+        String text = TEXT_PREFIX + dueNanos;
+        try {
+            if (isPrivate) {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                String[] recipients = new String[1 + random.nextInt(MAX_PRIVATE_RECIPIENTS)];
+                for (int i = 0; i < recipients.length; i++) {
+                    LoadClient recipient = pickJoined(clients, sender);
+                    recipients[i] = recipient != null ? recipient.username : sender.username;
+                }
+                service.sendPrivateMessage(sender.username, recipients, text);
+            } else {
+                service.updateChat(sender.username, text);
+            }
+            sent.increment();
+        } catch (RemoteException | RuntimeException e) {
+            // The sender may have left between being picked and sending
+            failed.increment();
+        }
+    }
+
+    /**
+     * Makes random clients leave and rejoin at a fixed rate until stopped.
+     */
+    private static void churn(LoadClient[] clients, Chattable service, double rejoinsPerSecond,
+            AtomicBoolean running, LongAdder rejoins, LongAdder failed) {
+        if (rejoinsPerSecond == 0) {
+            return;
+        }
+        long intervalNanos = (long) (1e9 / rejoinsPerSecond);
+        long due = System.nanoTime();
+        while (running.get()) {
+            due += intervalNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            LoadClient client = pickJoined(clients, null);
+            if (client == null) {
+                continue;
+            }
+            try {
+                client.leave(service);
+                Thread.sleep(REJOIN_DELAY_MILLIS);
+                client.join(service);
+                rejoins.increment();
+            } catch (RemoteException | RuntimeException e) {
+                failed.increment();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Picks a random joined client, probing onwards from a random start.
+     *
+     * @param clients the clients
+     * @param exclude a client not to pick, or null
+     * @return a joined client, or null if none is joined
+     */
+    private static LoadClient pickJoined(LoadClient[] clients, LoadClient exclude) {
+        int start = ThreadLocalRandom.current().nextInt(clients.length);
+        for (int i = 0; i < clients.length; i++) {
+            LoadClient client = clients[(start + i) % clients.length];
+            if (client.joined && client != exclude) {
+                return client;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Headless client that decodes what it receives and records how long
+     * each generated message took to arrive.
+     */
+    private static final class LoadClient implements ChatClient {
+
+        final String username;
+        final String serviceName;
+        final ChatClient stub;
+        volatile boolean joined;
+        /** When the current session began; messages due earlier are history */
+        private volatile long joinedAtNanos;
+
+        LoadClient(String username) throws RemoteException {
+            this.username = username;
+            this.serviceName = ChatConstants.CLIENT_SERVICE_PREFIX + username;
+            this.stub = (ChatClient) UnicastRemoteObject.exportObject(this, 0);
+        }
+
+        void join(Chattable service) throws RemoteException {
+            joinedAtNanos = System.nanoTime();
+            service.join(new String[] {username, HOSTNAME, serviceName, MessageCompression.DEFLATE}, stub);
+            JOIN_LATENCY.record(System.nanoTime() - joinedAtNanos);
+            joined = true;
+        }
+
+        void leave(Chattable service) throws RemoteException {
+            joined = false;
+            service.leaveChat(username);
+        }
+
+        @Override
+        public void receiveEncoded(byte[] encodedBatch) throws RemoteException {
+            record(MessageBatch.decode(encodedBatch));
+        }
+
+        @Override
+        public void receiveCompressed(byte[] compressedBatch) throws RemoteException {
+            record(MessageBatch.decodeCompressed(compressedBatch));
+        }
+
+        @Override
+        public void messageFromServer(String message) throws RemoteException {
+            RECEIVED.increment();
+        }
+
+        @Override
+        public void updateUserList(String[] currentUsers) throws RemoteException {
+            // Membership is not measured
+        }
+
+        @Override
+        public void userListSnapshot(long version, String[] currentUsers) throws RemoteException {
+            // Membership is not measured
+        }
+
+        @Override
+        public void userListDelta(long version, String[] added, String[] removed) throws RemoteException {
+            // Membership is not measured
+        }
+
+        @Override
+        public void ping() throws RemoteException {
+            // Answering is enough
+        }
+
+        private void record(List<ChatMessage> messages) {
+            long now = System.nanoTime();
+            long sessionStart = joinedAtNanos;
+            RECEIVED.add(messages.size());
+            for (ChatMessage message : messages) {
+                String text = message.getText();
+                if (message.getKind() == ChatMessage.Kind.SERVER || !text.startsWith(TEXT_PREFIX)) {
+                    continue;
+                }
+                long dueNanos = Long.parseLong(text.substring(TEXT_PREFIX.length()));
+                if (dueNanos - sessionStart < 0) {
+                    continue;
+                }
+                (message.getKind() == ChatMessage.Kind.PRIVATE ? PRIVATE_LATENCY : CHAT_LATENCY)
+                    .record(now - dueNanos);
+            }
+        }
+    }
+}
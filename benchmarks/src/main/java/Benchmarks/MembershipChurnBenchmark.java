@@ -0,0 +1,58 @@
+package Benchmarks;
+
+import ServerSide.Chat;
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Join and leave churn against a server already holding a population of stub clients.
+ * 
+ * @author Refactored
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MembershipChurnBenchmark {
+    
+    @Param({"10", "1000"})
+    public int members;
+    
+    private final LongAdder received = new LongAdder();
+    private Chat chat;
+    private StubChatClient churner;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws RemoteException {
+        chat = BenchmarkSupport.populatedChat(members, 0, received);
+        churner = new StubChatClient(0, received);
+        BenchmarkSupport.awaitQuiescence(chat);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.shutdown(chat);
+    }
+    
+    @Benchmark
+    public void joinAndLeave() throws RemoteException {
+        chat.addClient("churner", churner);
+        chat.leaveChat("churner");
+    }
+}
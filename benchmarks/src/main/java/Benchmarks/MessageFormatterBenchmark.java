@@ -0,0 +1,83 @@
+package Benchmarks;
+
+import ServerSide.ChatMessage;
+import ServerSide.MessageFormatter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of message formatting, sanitizing and username validation.
+ * {@code formatChatMessage} formats a message envelope as the server does
+ * for clients that predate them.
+ * The {@code legacy*} methods run the previous regex and String.format
+ * implementation as a baseline. Run with {@code -prof gc} to compare
+ * allocation per operation.
+ * 
+ * @author Refactored
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageFormatterBenchmark {
+    
+    private final String username = "alice_42";
+    private final String cleanMessage = "Has anyone looked at the build failure on the release branch yet?";
+    private final String dirtyMessage = "Has anyone\u0007 looked at the build\u0000 failure on the release branch yet?\u001B";
+    private final ChatMessage chatMessage = ChatMessage.chat(username, null, cleanMessage);
+    
+    @Benchmark
+    public String formatChatMessage() {
+        return MessageFormatter.format(chatMessage);
+    }
+    
+    @Benchmark
+    public String formatServerMessage() {
+        return MessageFormatter.formatServerMessage(username + " has joined the chat!");
+    }
+    
+    @Benchmark
+    public String sanitizeClean() {
+        return MessageFormatter.sanitizeInput(cleanMessage);
+    }
+    
+    @Benchmark
+    public String sanitizeDirty() {
+        return MessageFormatter.sanitizeInput(dirtyMessage);
+    }
+    
+    @Benchmark
+    public boolean isValidUsername() {
+        return MessageFormatter.isValidUsername(username);
+    }
+    
+    @Benchmark
+    public String legacyFormatChatMessage() {
+        return LegacyMessageFormatter.formatChatMessage(username, cleanMessage);
+    }
+    
+    @Benchmark
+    public String legacySanitizeClean() {
+        return LegacyMessageFormatter.sanitizeInput(cleanMessage);
+    }
+    
+    @Benchmark
+    public String legacySanitizeDirty() {
+        return LegacyMessageFormatter.sanitizeInput(dirtyMessage);
+    }
+    
+    @Benchmark
+    public boolean legacyIsValidUsername() {
+        return LegacyMessageFormatter.isValidUsername(username);
+    }
+}
@@ -0,0 +1,77 @@
+package Benchmarks;
+
+import ServerSide.MessageLog;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sustained append throughput of the durable message log, including segment
+ * rolls, retention and the background group-commit flusher.
+ * Segments are written to a temporary directory that is removed afterwards.
+ * 
+ * @author Refactored
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageLogBenchmark {
+    
+    @Param({"50"})
+    public long flushIntervalMillis;
+    
+    @Param({"16777216"})
+    public int segmentBytes;
+    
+    private final String message = "Has anyone looked at the build failure on the release branch yet?\n";
+    private Path directory;
+    private MessageLog log;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkSupport.quietLogging();
+        directory = Files.createTempDirectory("chat-log-bench");
+        // Keep four segments so retention runs during the measurement
+        log = new MessageLog(directory, segmentBytes, 4L * segmentBytes,
+            TimeUnit.HOURS.toMillis(1), flushIntervalMillis);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        log.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+    
+    @Benchmark
+    public long append() {
+        return log.append(MessageLog.Kind.CHAT, "Lobby", "alice_42", message);
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public long appendContended() {
+        return log.append(MessageLog.Kind.CHAT, "Lobby", "alice_42", message);
+    }
+}
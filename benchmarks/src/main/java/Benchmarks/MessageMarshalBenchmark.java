@@ -0,0 +1,97 @@
+package Benchmarks;
+
+import ServerSide.ChatMessage;
+import ServerSide.MessageBatch;
+import ServerSide.MessageFormatter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization cost of broadcasting one message to every member of a room,
+ * as RMI marshals a callback argument once per recipient. The stream is
+ * reset between recipients, as each RMI call starts a fresh one.
+ * {@code formattedString} is the preformatted string sent before the
+ * message envelope, {@code batchPerRecipient} encodes an envelope object
+ * for each recipient, and {@code encodeOnce} encodes the message once and
+ * hands the same bytes to every recipient, as broadcasts now do.
+ *
+ * @author Refactored
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageMarshalBenchmark {
+
+    @Param({"1000"})
+    public int recipients;
+
+    @Param({"44", "1000"})
+    public int textLength;
+
+    private ChatMessage message;
+    private String formatted;
+    private ByteArrayOutputStream bytes;
+    private ObjectOutputStream out;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder text = new StringBuilder(textLength);
+        while (text.length() < textLength) {
+            text.append("The quick brown fox jumps over the lazy dog. ");
+        }
+        text.setLength(textLength);
+        message = ChatMessage.chat("alice_42", null, text.toString()).withSequence(1000);
+        formatted = MessageFormatter.format(message);
+        bytes = new ByteArrayOutputStream(4096);
+        out = new ObjectOutputStream(bytes);
+    }
+
+    @Benchmark
+    public int formattedString() throws IOException {
+        for (int i = 0; i < recipients; i++) {
+            marshal(formatted);
+        }
+        return bytes.size();
+    }
+
+    @Benchmark
+    public int batchPerRecipient() throws IOException {
+        for (int i = 0; i < recipients; i++) {
+            marshal(new MessageBatch(List.of(message)));
+        }
+        return bytes.size();
+    }
+
+    @Benchmark
+    public int encodeOnce() throws IOException {
+        byte[] shared = MessageBatch.encode(List.of(message));
+        for (int i = 0; i < recipients; i++) {
+            marshal(shared);
+        }
+        return bytes.size();
+    }
+
+    private void marshal(Object argument) throws IOException {
+        bytes.reset();
+        out.reset();
+        out.writeObject(argument);
+        out.flush();
+    }
+}
@@ -0,0 +1,84 @@
+package Benchmarks;
+
+import ServerSide.Chat;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs a server with healthy clients and clients that never answer, and
+ * reports how long the heartbeat monitor takes to evict the dead ones while
+ * chat traffic keeps flowing to the rest.
+ *
+ * <p>Usage: {@code java -cp target/benchmarks.jar Benchmarks.SlowClientHarness [healthy] [hung]}.
+ * Heartbeat settings are taken from the {@code chat.heartbeat.*} properties,
+ * defaulting here to a 500 ms interval, 200 ms timeout and 3 misses.
+ *
+ * @author Refactored
+ */
+public final class SlowClientHarness {
+
+    /** Callback latency of a hung client: long enough to never return during the run */
+    private static final long HUNG_LATENCY_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    /** Give up if the hung clients are not evicted within this long */
+    private static final long MAX_WAIT_MILLIS = 60_000;
+
+    private SlowClientHarness() {
+        // Entry point only
+    }
+
+    /**
+     * Runs the harness.
+     *
+     * @param args optional healthy and hung client counts
+     * @throws Exception if the server cannot be created
+     */
+    public static void main(String[] args) throws Exception {
+        int healthy = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int hung = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        setDefault("chat.heartbeat.intervalMs", "500");
+        setDefault("chat.heartbeat.timeoutMs", "200");
+        setDefault("chat.heartbeat.maxMissed", "3");
+
+        LongAdder received = new LongAdder();
+        Chat chat = BenchmarkSupport.populatedChat(healthy, 0, received);
+        for (int i = 0; i < hung; i++) {
+            chat.addClient("hung_" + i, new StubChatClient(HUNG_LATENCY_MICROS, new LongAdder()));
+        }
+        System.out.printf("Started with %d healthy and %d hung clients%n", healthy, hung);
+        // Let join notices reach the healthy clients so only chat traffic is counted
+        Thread.sleep(200);
+        received.reset();
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MILLIS);
+        int sent = 0;
+        while (chat.getConnectedClientCount() > healthy && System.nanoTime() < deadline) {
+            chat.updateChat(BenchmarkSupport.username(0), "message " + sent++);
+            Thread.sleep(10);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long expected = (long) sent * healthy;
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (received.sum() < expected && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+
+        if (chat.getConnectedClientCount() > healthy) {
+            System.out.printf("Hung clients still connected after %d ms%n", elapsedMillis);
+        } else {
+            System.out.printf("Evicted %d hung clients after %d ms%n", hung, elapsedMillis);
+        }
+        System.out.printf("Healthy clients received %d of %d messages%n", received.sum(), expected);
+        System.out.print(chat.getMetrics().dumpSnapshot());
+
+        BenchmarkSupport.shutdown(chat);
+        System.exit(0);
+    }
+
+    private static void setDefault(String property, String value) {
+        if (System.getProperty(property) == null) {
+            System.setProperty(property, value);
+        }
+    }
+}
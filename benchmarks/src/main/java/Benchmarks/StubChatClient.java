@@ -0,0 +1,79 @@
+package Benchmarks;
+
+import ClientSide.ChatClient;
+import ServerSide.MessageBatch;
+import ServerSide.MessageCompression;
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process ChatClient that counts what it receives.
+ * Each callback can be delayed to stand in for network and client latency.
+ * 
+ * @author Refactored
+ */
+public class StubChatClient implements ChatClient {
+    
+    private final long latencyNanos;
+    private final LongAdder messagesReceived;
+    
+    /**
+     * Creates a stub client.
+     * 
+     * @param latencyMicros delay applied to every callback, in microseconds
+     * @param messagesReceived counter incremented for every message received
+     */
+    public StubChatClient(long latencyMicros, LongAdder messagesReceived) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        this.messagesReceived = messagesReceived;
+    }
+    
+    @Override
+    public void messageFromServer(String message) throws RemoteException {
+        simulateLatency();
+        messagesReceived.increment();
+    }
+    
+    @Override
+    public void receiveEncoded(byte[] encodedBatch) throws RemoteException {
+        simulateLatency();
+        messagesReceived.add(MessageBatch.countOf(encodedBatch));
+    }
+    
+    @Override
+    public void receiveCompressed(byte[] compressedBatch) throws RemoteException {
+        simulateLatency();
+        messagesReceived.add(MessageBatch.countOf(MessageCompression.decompress(compressedBatch)));
+    }
+    
+    @Override
+    public void updateUserList(String[] currentUsers) throws RemoteException {
+        simulateLatency();
+    }
+    
+    @Override
+    public void userListSnapshot(long version, String[] currentUsers) throws RemoteException {
+        simulateLatency();
+    }
+    
+    @Override
+    public void userListDelta(long version, String[] added, String[] removed) throws RemoteException {
+        simulateLatency();
+    }
+    
+    @Override
+    public void ping() throws RemoteException {
+        simulateLatency();
+    }
+    
+    /**
+     * Parks the calling delivery worker for the configured latency.
+     */
+    private void simulateLatency() {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package Benchmarks;
+
+import ClientSide.ChatClient;
+import ClientSide.NioChatService;
+import ServerSide.Chat;
+import ServerSide.Chattable;
+import ServerSide.NioChatServer;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.RemoteException;
+import java.rmi.server.RMISocketFactory;
+import java.rmi.server.RemoteObject;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares the RMI and NIO transports end to end over loopback. Every client
+ * sends chat messages through its transport and receives everyone's
+ * messages back through it; the harness reports delivered messages per
+ * second and wire bytes per delivered message for each transport.
+ *
+ * <p>RMI bytes are counted by a socket factory wrapping every connection
+ * the JVM opens, so both requests and callbacks are seen once. NIO bytes
+ * are the server's read and write totals. Delivery queues are sized to
+ * hold a whole round, so no message is dropped when senders outpace
+ * delivery.
+ *
+ * <p>Usage: {@code java -cp target/benchmarks.jar Benchmarks.TransportHarness [clients] [messagesPerClient]}.
+ *
+ * @author Refactored
+ */
+public final class TransportHarness {
+
+    /** Give up on a round if delivery has not finished within this long */
+    private static final long MAX_WAIT_MILLIS = 120_000;
+
+    private static final String QUEUE_CAPACITY_PROPERTY = "chat.delivery.queueCapacity";
+
+    private static final CountingSocketFactory RMI_SOCKETS = new CountingSocketFactory();
+
+    private TransportHarness() {
+        // Entry point only
+    }
+
+    /**
+     * Runs the harness.
+     *
+     * @param args optional client count and messages sent per client
+     * @throws Exception if a server or client cannot be created
+     */
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int messagesPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        // Measure the transport, not the overflow policy: every queue can hold a whole round
+        if (System.getProperty(QUEUE_CAPACITY_PROPERTY) == null) {
+            System.setProperty(QUEUE_CAPACITY_PROPERTY, Integer.toString(clients * messagesPerClient));
+        }
+        BenchmarkSupport.quietLogging();
+        // Must be installed before anything is exported
+        RMISocketFactory.setSocketFactory(RMI_SOCKETS);
+
+        System.out.printf("%d clients, %d messages each%n", clients, messagesPerClient);
+        for (String transport : new String[] {"rmi", "nio"}) {
+            // The first round warms up the JIT and is not reported
+            runRound(transport, clients, Math.max(1, messagesPerClient / 10));
+            Result result = runRound(transport, clients, messagesPerClient);
+            System.out.printf("%-4s %,12.0f msg/s %10.1f bytes/msg%s%n", transport,
+                result.messagesPerSecond(), result.bytesPerMessage(),
+                result.complete ? "" : "  (incomplete)");
+        }
+        System.exit(0);
+    }
+
+    private static Result runRound(String transport, int clients, int messagesPerClient) throws Exception {
+        Chat chat = new Chat();
+        LongAdder received = new LongAdder();
+        List<Chattable> services = new ArrayList<>(clients);
+        List<ChatClient> exported = new ArrayList<>(clients);
+        NioChatServer server = null;
+
+        if ("nio".equals(transport)) {
+            server = new NioChatServer(chat, 0);
+            for (int i = 0; i < clients; i++) {
+                NioChatService service = new NioChatService("localhost", server.getPort(),
+                    new StubChatClient(0, received));
+                service.join(new String[] {BenchmarkSupport.username(i)});
+                services.add(service);
+            }
+        } else {
+            Chattable service = (Chattable) RemoteObject.toStub(chat);
+            for (int i = 0; i < clients; i++) {
+                ChatClient client = new StubChatClient(0, received);
+                ChatClient stub = (ChatClient) UnicastRemoteObject.exportObject(client, 0);
+                exported.add(client);
+                chat.addClient(BenchmarkSupport.username(i), stub);
+                services.add(service);
+            }
+        }
+        // Let join notices settle so only chat traffic is measured
+        BenchmarkSupport.awaitQuiescence(chat);
+        Thread.sleep(200);
+        received.reset();
+        RMI_SOCKETS.reset();
+        long nioBytesBefore = server == null ? 0 : server.getBytesRead() + server.getBytesWritten();
+
+        long expected = (long) clients * messagesPerClient * clients;
+        long start = System.nanoTime();
+        List<Thread> senders = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            Chattable service = services.get(i);
+            String username = BenchmarkSupport.username(i);
+            Thread sender = new Thread(() -> {
+                try {
+                    for (int m = 0; m < messagesPerClient; m++) {
+                        service.updateChat(username, "message " + m + " from " + username);
+                    }
+                } catch (RemoteException e) {
+                    throw new IllegalStateException("Send failed", e);
+                }
+            }, "sender-" + i);
+            sender.start();
+            senders.add(sender);
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MILLIS);
+        while (received.sum() < expected && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        long delivered = received.sum();
+        long bytes = server == null
+            ? RMI_SOCKETS.getBytes()
+            : server.getBytesRead() + server.getBytesWritten() - nioBytesBefore;
+
+        for (Chattable service : services) {
+            if (service instanceof NioChatService) {
+                ((NioChatService) service).close();
+            }
+        }
+        if (server != null) {
+            server.close();
+        }
+        // Leave before unexporting so no callback is sent to a closed client
+        for (int i = 0; i < exported.size(); i++) {
+            chat.leaveChat(BenchmarkSupport.username(i));
+        }
+        BenchmarkSupport.awaitQuiescence(chat);
+        Thread.sleep(200);
+        for (ChatClient client : exported) {
+            UnicastRemoteObject.unexportObject(client, true);
+        }
+        BenchmarkSupport.shutdown(chat);
+        return new Result(delivered, bytes, elapsedNanos, delivered >= expected);
+    }
+
+    /**
+     * Outcome of one measured round.
+     */
+    private static final class Result {
+        final long delivered;
+        final long bytes;
+        final long elapsedNanos;
+        final boolean complete;
+
+        Result(long delivered, long bytes, long elapsedNanos, boolean complete) {
+            this.delivered = delivered;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+            this.complete = complete;
+        }
+
+        double messagesPerSecond() {
+            return delivered * 1e9 / elapsedNanos;
+        }
+
+        double bytesPerMessage() {
+            return delivered == 0 ? 0 : (double) bytes / delivered;
+        }
+    }
+
+    /**
+     * RMI socket factory that counts the bytes moved over every outgoing
+     * connection. Each connection has exactly one outgoing end in this JVM,
+     * so no traffic is counted twice.
+     */
+    private static final class CountingSocketFactory extends RMISocketFactory {
+
+        private final LongAdder bytes = new LongAdder();
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return new CountingSocket(host, port, bytes);
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            return new ServerSocket(port);
+        }
+
+        long getBytes() {
+            return bytes.sum();
+        }
+
+        void reset() {
+            bytes.reset();
+        }
+    }
+
+    /**
+     * Socket whose streams add every byte to a shared counter.
+     */
+    private static final class CountingSocket extends Socket {
+
+        private final LongAdder bytes;
+
+        CountingSocket(String host, int port, LongAdder bytes) throws IOException {
+            super(host, port);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(super.getInputStream()) {
+                @Override
+                public int read() throws IOException {
+                    int b = in.read();
+                    if (b >= 0) {
+                        bytes.increment();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int n = in.read(buffer, offset, length);
+                    if (n > 0) {
+                        bytes.add(n);
+                    }
+                    return n;
+                }
+            };
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return new FilterOutputStream(super.getOutputStream()) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    bytes.increment();
+                }
+
+                @Override
+                public void write(byte[] buffer, int offset, int length) throws IOException {
+                    out.write(buffer, offset, length);
+                    bytes.add(length);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package ClientSide;
+
+import ServerSide.ChatMessage;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.AbstractListModel;
+
+/**
+ * Bounded list model of the lines shown in the chat view, kept in a ring
+ * buffer. Appending past the capacity drops the oldest lines, so memory and
+ * the cost of each update stay the same however long the session runs.
+ * Older lines fetched from history can be added at the front while there
+ * is room for them.
+ *
+ * <p>Each line keeps the message it came from, if any, so the view can
+ * style it and find where to continue paging history. A message spanning
+ * several lines is stored as one line per line of text.
+ *
+ * <p>Like other Swing models, it must only be used on the event dispatch thread.
+ *
+ * @author Refactored
+ */
+public class ChatBuffer extends AbstractListModel<ChatBuffer.Line> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * One displayed line.
+     */
+    public static final class Line {
+
+        private final ChatMessage message;
+        private final String text;
+
+        /**
+         * Creates a line.
+         *
+         * @param message the message the line belongs to, or null for local text
+         * @param text the text to display, without a line break
+         */
+        public Line(ChatMessage message, String text) {
+            this.message = message;
+            this.text = text;
+        }
+
+        /**
+         * Gets the message this line belongs to.
+         *
+         * @return the message, or null for local text
+         */
+        public ChatMessage getMessage() {
+            return message;
+        }
+
+        /**
+         * Gets the text to display.
+         *
+         * @return the text
+         */
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    private final Line[] lines;
+    private int head;
+    private int size;
+
+    /**
+     * Creates an empty buffer.
+     *
+     * @param capacity the most lines kept
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public ChatBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Chat buffer capacity must be positive");
+        }
+        this.lines = new Line[capacity];
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public Line getElementAt(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + size);
+        }
+        return lines[(head + index) % lines.length];
+    }
+
+    /**
+     * Gets the most lines kept.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return lines.length;
+    }
+
+    /**
+     * Checks whether older lines can still be added at the front.
+     *
+     * @return true if the buffer is full
+     */
+    public boolean isFull() {
+        return size == lines.length;
+    }
+
+    /**
+     * Adds lines after the newest, dropping the oldest lines to make room.
+     *
+     * @param added the lines, oldest first
+     */
+    public void append(List<Line> added) {
+        // Of a batch larger than the buffer only the newest lines would survive
+        int skipped = Math.max(0, added.size() - lines.length);
+        int incoming = added.size() - skipped;
+        if (incoming == 0) {
+            return;
+        }
+
+        int evicted = Math.max(0, size + incoming - lines.length);
+        if (evicted > 0) {
+            for (int i = 0; i < evicted; i++) {
+                lines[(head + i) % lines.length] = null;
+            }
+            head = (head + evicted) % lines.length;
+            size -= evicted;
+            fireIntervalRemoved(this, 0, evicted - 1);
+        }
+
+        int first = size;
+        for (int i = skipped; i < added.size(); i++) {
+            lines[(head + size) % lines.length] = added.get(i);
+            size++;
+        }
+        fireIntervalAdded(this, first, size - 1);
+    }
+
+    /**
+     * Adds older lines before the oldest, as far as there is room. Lines
+     * that do not fit are the oldest ones given and are not added.
+     *
+     * @param older the lines, oldest first
+     * @return the number of lines added
+     */
+    public int prepend(List<Line> older) {
+        int added = Math.min(older.size(), lines.length - size);
+        if (added == 0) {
+            return 0;
+        }
+        head = (head - added + lines.length) % lines.length;
+        int skipped = older.size() - added;
+        for (int i = 0; i < added; i++) {
+            lines[(head + i) % lines.length] = older.get(skipped + i);
+        }
+        size += added;
+        fireIntervalAdded(this, 0, added - 1);
+        return added;
+    }
+
+    /**
+     * Removes every line.
+     */
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        int removed = size;
+        Arrays.fill(lines, null);
+        head = 0;
+        size = 0;
+        fireIntervalRemoved(this, 0, removed - 1);
+    }
+
+    /**
+     * Finds the oldest sequence number of a room's messages in the buffer.
+     *
+     * @param room the room name as messages carry it, null for the default room
+     * @return the sequence number, or 0 if the buffer has no numbered message from the room
+     */
+    public long oldestSequence(String room) {
+        for (int i = 0; i < size; i++) {
+            ChatMessage message = getElementAt(i).getMessage();
+            if (message != null && message.getSequence() > 0
+                    && message.getKind() != ChatMessage.Kind.PRIVATE
+                    && (room == null ? message.getRoom() == null : room.equalsIgnoreCase(message.getRoom()))) {
+                return message.getSequence();
+            }
+        }
+        return 0;
+    }
+}
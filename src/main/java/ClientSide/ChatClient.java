@@ -1,5 +1,7 @@
 package ClientSide;
 
+import ServerSide.MessageBatch;
+import ServerSide.MessageCompression;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 
@@ -12,13 +14,41 @@ import java.rmi.RemoteException;
 public interface ChatClient extends Remote {
     
     /**
-     * Receives a message from the server (broadcast or private).
+     * Receives a message from the server (broadcast or private), already
+     * formatted for display. Servers only use this for clients that do not
+     * implement {@link #receiveEncoded(byte[])}.
      * 
      * @param message the message content
      * @throws RemoteException if a remote communication error occurs
      */
     void messageFromServer(String message) throws RemoteException;
     
+    /**
+     * Receives one or more messages from the server in a single call, in
+     * order, encoded as a {@link MessageBatch}; decode them with
+     * {@link MessageBatch#decode(byte[])}. A broadcast message is encoded
+     * once and the same bytes are sent to every recipient. The client
+     * formats messages for display. Servers fall back to
+     * {@link #messageFromServer(String)} for clients that do not implement
+     * this method.
+     * 
+     * @param encodedBatch the encoded messages, oldest first
+     * @throws RemoteException if a remote communication error occurs
+     */
+    void receiveEncoded(byte[] encodedBatch) throws RemoteException;
+    
+    /**
+     * Receives messages as {@link #receiveEncoded(byte[])} does, compressed
+     * with {@link MessageCompression}; decode them with
+     * {@link MessageBatch#decodeCompressed(byte[])}. Only called on clients
+     * that offered compression when joining, and only for batches large
+     * enough to benefit.
+     * 
+     * @param compressedBatch the compressed messages, oldest first
+     * @throws RemoteException if a remote communication error occurs
+     */
+    void receiveCompressed(byte[] compressedBatch) throws RemoteException;
+    
     /**
      * Updates the client's user list with currently connected users.
      * 
@@ -26,4 +56,34 @@ public interface ChatClient extends Remote {
      * @throws RemoteException if a remote communication error occurs
      */
     void updateUserList(String[] currentUsers) throws RemoteException;
+    
+    /**
+     * Replaces the client's user list with a full snapshot.
+     * 
+     * @param version the membership version the snapshot reflects
+     * @param currentUsers array of currently connected usernames
+     * @throws RemoteException if a remote communication error occurs
+     */
+    void userListSnapshot(long version, String[] currentUsers) throws RemoteException;
+    
+    /**
+     * Applies a single membership change to the client's user list.
+     * Versions increase by one per change; a client that sees a gap should
+     * ask the server for a snapshot.
+     * 
+     * @param version the membership version after the change
+     * @param added usernames that joined
+     * @param removed usernames that left
+     * @throws RemoteException if a remote communication error occurs
+     */
+    void userListDelta(long version, String[] added, String[] removed) throws RemoteException;
+    
+    /**
+     * Answers a liveness check from the server. Should return immediately.
+     * Servers treat clients that do not implement this method as alive
+     * whenever the call reaches them.
+     * 
+     * @throws RemoteException if a remote communication error occurs
+     */
+    void ping() throws RemoteException;
 }
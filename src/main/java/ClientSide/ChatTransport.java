@@ -0,0 +1,44 @@
+package ClientSide;
+
+import ServerSide.ChatConstants;
+import ServerSide.Chattable;
+import java.rmi.RemoteException;
+import java.util.Locale;
+
+/**
+ * A way of reaching the chat server. Every transport yields a
+ * {@link Chattable} for calls to the server and delivers server callbacks to
+ * a {@link ChatClient}, so the rest of the client is transport-agnostic.
+ * 
+ * @author Refactored
+ */
+@FunctionalInterface
+public interface ChatTransport {
+    
+    /**
+     * Connects to the server.
+     * 
+     * @param callbacks the client receiving server callbacks
+     * @return the chat service
+     * @throws RemoteException if the server cannot be reached
+     */
+    Chattable connect(ChatClient callbacks) throws RemoteException;
+    
+    /**
+     * Creates the transport named by {@code chat.transport}.
+     * 
+     * @param hostname the server hostname
+     * @return the configured transport
+     * @throws IllegalArgumentException if the transport name is unknown
+     */
+    static ChatTransport fromConfig(String hostname) {
+        switch (ChatConstants.TRANSPORT.toLowerCase(Locale.ROOT)) {
+            case "rmi":
+                return new ConnectionManager(hostname, ChatConstants.RMI_REGISTRY_PORT);
+            case "nio":
+                return callbacks -> new NioChatService(hostname, ChatConstants.NIO_PORT, callbacks);
+            default:
+                throw new IllegalArgumentException("Unknown transport: " + ChatConstants.TRANSPORT);
+        }
+    }
+}
@@ -1,22 +1,45 @@
 package ClientSide;
 
 import ServerSide.ChatConstants;
+import ServerSide.ChatMessage;
+import ServerSide.ChatSession;
+import ServerSide.MessageBatch;
+import ServerSide.MessageCompression;
 import ServerSide.Chattable;
 import ServerSide.MessageFormatter;
-import java.rmi.ConnectException;
-import java.rmi.Naming;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 /**
  * Client implementation for the chat application.
  * Handles connection to the server and implements remote callbacks.
  * 
+ * <p>Once connected, the client checks the connection whenever the server
+ * has been silent for a while; the server pings idle clients, so silence
+ * usually means the connection is gone. A lost connection is restored in
+ * the background with backoff, resuming the session with the token the
+ * server issued so that only the missed messages are sent again.
+ * 
+ * <p>Numbered messages pass through a {@link MessageSequencer}, so each
+ * room's messages are shown in order and once. A message still missing
+ * after the gap timeout is asked for again with
+ * {@link Chattable#resend(String, String, long)}; if the server no longer
+ * has it, the client moves on and says how many were lost.
+ * 
  * @author Refactored
  */
 public class Client extends UnicastRemoteObject implements ChatClient, Runnable {
@@ -26,12 +49,56 @@ public class Client extends UnicastRemoteObject implements ChatClient, Runnable
     
     private final String username;
     private final ClientRMIGUI chatGUI;
-    private Chattable chatService;
+    private volatile Chattable chatService;
     private final String hostname;
     private final String clientServiceName;
     private volatile boolean connectionProblem = false;
     private volatile boolean isConnected = false;
     
+    /** Last user list version applied; guarded by this */
+    private long userListVersion = -1;
+    
+    /** Whether a snapshot has been requested after a gap; guarded by this */
+    private boolean snapshotRequested = false;
+    
+    /** Formatted lines received but not yet shown, in arrival order */
+    private final ConcurrentLinkedQueue<List<ChatBuffer.Line>> inbound = new ConcurrentLinkedQueue<>();
+    
+    /** Whether a flush of the inbound lines is pending on the EDT */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    
+    /** Token for resuming this session after a lost connection, or null before joining */
+    private volatile String resumeToken;
+    
+    /** Orders numbered messages by room; guards showing them too, so they are queued in order */
+    private final MessageSequencer sequencer = new MessageSequencer();
+    
+    /** Whether a check for overdue gaps is scheduled */
+    private final AtomicBoolean gapCheckScheduled = new AtomicBoolean();
+    
+    /** When the server was last heard from, from System.nanoTime */
+    private volatile long lastHeardNanos = System.nanoTime();
+    
+    /** Whether a reconnect is in progress */
+    private final AtomicBoolean reconnecting = new AtomicBoolean();
+    
+    /** Set once the user leaves, so a lost connection is no longer restored */
+    private volatile boolean leaving = false;
+    
+    /** Runs the connection and gap checks; its thread starts on first use */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-client-checks");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    /** Whether the periodic connection check has started */
+    private final AtomicBoolean connectionCheckStarted = new AtomicBoolean();
+    
+    /** When the inbound lines were last shown, from System.nanoTime; written on the EDT */
+    private volatile long lastFlushNanos =
+        System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(GUIConstants.CHAT_FLUSH_INTERVAL_MS);
+    
     /**
      * Default constructor for RMI export.
      * 
@@ -106,46 +173,23 @@ public class Client extends UnicastRemoteObject implements ChatClient, Runnable
     
     /**
      * Main connection logic executed in a separate thread.
-     * Connects to the RMI registry, looks up the chat service, and registers this client.
+     * Connects over the configured transport, registers this client if the
+     * transport needs it, and joins the chat.
      */
     @Override
     public void run() {
         try {
             LOGGER.info("Connecting to chat server...");
             
-            // Connect with retry logic
-            ConnectionManager connectionManager = new ConnectionManager(
-                hostname, ChatConstants.RMI_REGISTRY_PORT);
-            chatService = connectionManager.connectWithRetry();
-            LOGGER.info("Found chat service in registry");
-            
-            // Register this client with RMI
-            String clientUrl = "rmi://" + hostname + "/" + clientServiceName;
-            try {
-                Naming.rebind(clientUrl, this);
-                LOGGER.info("Client registered at: " + clientUrl);
-            } catch (ConnectException e) {
-                connectionProblem = true;
-                LOGGER.log(Level.SEVERE, "Failed to connect to RMI registry", e);
-                SwingUtilities.invokeLater(() -> {
-                    chatGUI.showErrorMessage("Connection Error", 
-                        "Failed to connect to server. Please ensure the server is running.");
-                });
-                return;
-            } catch (Exception e) {
-                connectionProblem = true;
-                LOGGER.log(Level.SEVERE, "Unexpected error during client registration", e);
-                SwingUtilities.invokeLater(() -> {
-                    chatGUI.showErrorMessage("Registration Error", 
-                        "Failed to register client: " + e.getMessage());
-                });
-                return;
-            }
+            // Connect over the configured transport (RMI with retries by default)
+            ChatTransport transport = ChatTransport.fromConfig(hostname);
+            chatService = transport.connect(this);
+            LOGGER.info("Found chat service");
             
-            // Join the chat
-            String[] clientDetails = {username, hostname, clientServiceName};
-            chatService.join(clientDetails);
+            // The callback travels with the join, so nothing is bound in a registry
+            openSession(chatService);
             isConnected = true;
+            startConnectionCheck();
             
             LOGGER.info("Successfully joined chat as: " + username);
             SwingUtilities.invokeLater(() -> {
@@ -179,23 +223,392 @@ public class Client extends UnicastRemoteObject implements ChatClient, Runnable
         }
     }
     
+    /**
+     * Joins the chat, resuming the last session if there was one.
+     * 
+     * @param service the chat service to join
+     * @return the session
+     * @throws RemoteException if the server refuses the join or cannot be reached
+     */
+    private ChatSession openSession(Chattable service) throws RemoteException {
+        // Any server sends a fresh snapshot on joining; a restarted one counts versions from the start
+        synchronized (this) {
+            userListVersion = -1;
+            snapshotRequested = false;
+        }
+        // Hold messages until the session is known: a fresh one numbers them from the start
+        long presented;
+        synchronized (sequencer) {
+            presented = sequencer.lastShown(null);
+            sequencer.hold();
+        }
+        long continueFrom = presented;
+        try {
+            // Join the chat, offering to receive large batches compressed
+            String[] clientDetails = {username, hostname, clientServiceName, MessageCompression.DEFLATE};
+            ChatSession session = service.joinSession(clientDetails, this, resumeToken, presented);
+            resumeToken = session.getResumeToken();
+            if (!session.isResumed()) {
+                continueFrom = session.getFirstSequence() - 1;
+            }
+            heard();
+            return session;
+        } finally {
+            synchronized (sequencer) {
+                show(sequencer.release(null, continueFrom));
+            }
+        }
+    }
+    
+    /**
+     * Starts checking the connection after silence from the server.
+     */
+    private void startConnectionCheck() {
+        if (ChatConstants.CONNECTION_CHECK_MS <= 0 || !connectionCheckStarted.compareAndSet(false, true)) {
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(() -> {
+            long silentNanos = System.nanoTime() - lastHeardNanos;
+            if (silentNanos >= TimeUnit.MILLISECONDS.toNanos(ChatConstants.CONNECTION_CHECK_MS)) {
+                probeConnection();
+            }
+        }, ChatConstants.CONNECTION_CHECK_MS, ChatConstants.CONNECTION_CHECK_MS, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Joins a room, ordering its messages from the first one the server
+     * sends, which may arrive after newer ones.
+     * 
+     * @param roomName the room name
+     * @throws RemoteException if the server refuses the join or cannot be reached
+     */
+    public void joinRoom(String roomName) throws RemoteException {
+        Chattable service = chatService;
+        if (service == null) {
+            throw new RemoteException("Not connected");
+        }
+        if (roomName == null) {
+            throw new IllegalArgumentException("Room name cannot be null");
+        }
+        String room = roomName.trim();
+        synchronized (sequencer) {
+            sequencer.holdRoom(room);
+        }
+        long firstSequence = 0;
+        try {
+            firstSequence = service.joinRoom(username, room);
+        } finally {
+            synchronized (sequencer) {
+                show(sequencer.releaseRoom(room, firstSequence));
+            }
+        }
+    }
+    
+    /**
+     * Checks in the background that the server still knows this client,
+     * reconnecting if not. Call after a request to the server fails.
+     */
+    public void verifyConnection() {
+        if (isConnected && !leaving) {
+            scheduler.execute(this::probeConnection);
+        }
+    }
+    
+    /**
+     * Asks the server for the user list, which fails if the server is gone
+     * or has dropped this client.
+     */
+    private void probeConnection() {
+        Chattable service = chatService;
+        if (!isConnected || service == null) {
+            return;
+        }
+        try {
+            service.requestUserList(username);
+            heard();
+        } catch (RemoteException e) {
+            connectionLost(e);
+        }
+    }
+    
+    /**
+     * Asks the server for the full user list in the background. The server
+     * queues the snapshot behind the callback that found the gap, so asking
+     * from within that callback would wait on itself.
+     */
+    private void requestSnapshot() {
+        try {
+            scheduler.execute(this::probeConnection);
+        } catch (RejectedExecutionException e) {
+            // Leaving
+        }
+    }
+    
+    /**
+     * Starts restoring a lost connection in the background, unless already
+     * doing so or the user has left.
+     * 
+     * @param cause what showed the connection was lost
+     */
+    private void connectionLost(Exception cause) {
+        if (leaving || !reconnecting.compareAndSet(false, true)) {
+            return;
+        }
+        isConnected = false;
+        LOGGER.log(Level.WARNING, "Lost connection to chat server, reconnecting", cause);
+        SwingUtilities.invokeLater(() -> {
+            chatGUI.setConnected(false);
+            chatGUI.updateConnectionStatus("Reconnecting...", false);
+        });
+        
+        Thread thread = new Thread(this::reconnect, "chat-reconnect");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Reconnects with backoff until it succeeds or the user leaves.
+     */
+    private void reconnect() {
+        try {
+            ChatSession session = ConnectionManager.retryWithBackoff(this::rejoin, () -> !leaving);
+            if (session == null) {
+                return;
+            }
+            isConnected = true;
+            LOGGER.info((session.isResumed() ? "Resumed session" : "Rejoined chat") + " as: " + username);
+            String notice = session.isResumed()
+                ? "Reconnected to chat server"
+                : "Reconnected to chat server; messages sent while away may be missing";
+            SwingUtilities.invokeLater(() -> {
+                chatGUI.setConnected(true);
+                chatGUI.updateConnectionStatus("Connected", true);
+            });
+            enqueue(ClientRMIGUI.textLines(MessageFormatter.formatServerMessage(notice)));
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.SEVERE, "Server refused to rejoin", e);
+            SwingUtilities.invokeLater(() -> {
+                chatGUI.updateConnectionStatus("Disconnected", false);
+                chatGUI.showErrorMessage("Connection Error", "Could not rejoin the chat: " + e.getMessage());
+            });
+        } finally {
+            reconnecting.set(false);
+        }
+    }
+    
+    /**
+     * Makes one attempt at connecting again and rejoining.
+     * 
+     * @return the session
+     * @throws RemoteException if the server cannot be reached or refuses the join
+     */
+    private ChatSession rejoin() throws RemoteException {
+        Chattable previous = chatService;
+        if (previous instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) previous).close();
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Error closing lost connection", e);
+            }
+        }
+        
+        Chattable service = ChatTransport.fromConfig(hostname).connect(this);
+        chatService = service;
+        return openSession(service);
+    }
+    
+    /**
+     * Notes that the server was heard from.
+     */
+    private void heard() {
+        lastHeardNanos = System.nanoTime();
+    }
+    
     @Override
     public void messageFromServer(String message) throws RemoteException {
+        heard();
         if (message == null) {
             LOGGER.warning("Received null message from server");
             return;
         }
         
         LOGGER.fine("Received message from server");
+        enqueue(ClientRMIGUI.textLines(message));
+    }
+    
+    @Override
+    public void receiveEncoded(byte[] encodedBatch) throws RemoteException {
+        showBatch(encodedBatch, false);
+    }
+    
+    @Override
+    public void receiveCompressed(byte[] compressedBatch) throws RemoteException {
+        showBatch(compressedBatch, true);
+    }
+    
+    /**
+     * Decodes a batch of messages and shows them.
+     * 
+     * @param bytes the batch as received
+     * @param compressed whether the batch is compressed
+     */
+    private void showBatch(byte[] bytes, boolean compressed) {
+        heard();
+        if (bytes == null) {
+            LOGGER.warning("Received null message batch from server");
+            return;
+        }
         
-        // Update GUI on EDT (Event Dispatch Thread)
-        SwingUtilities.invokeLater(() -> {
-            chatGUI.appendMessage(message);
-        });
+        List<ChatMessage> messages;
+        try {
+            messages = compressed ? MessageBatch.decodeCompressed(bytes) : MessageBatch.decode(bytes);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Received malformed message batch from server", e);
+            return;
+        }
+        
+        LOGGER.fine("Received " + messages.size() + " messages from server");
+        boolean gaps;
+        synchronized (sequencer) {
+            show(sequencer.accept(messages));
+            gaps = sequencer.hasGaps();
+        }
+        if (gaps) {
+            scheduleGapCheck();
+        }
+    }
+    
+    /**
+     * Queues messages for the chat view. Call while holding the sequencer
+     * lock, so messages are queued in the order it released them.
+     * 
+     * @param messages the messages, in order
+     */
+    private void show(List<ChatMessage> messages) {
+        if (!messages.isEmpty()) {
+            enqueue(ClientRMIGUI.toLines(messages));
+        }
+    }
+    
+    /**
+     * Schedules a check for overdue gaps, unless one is already scheduled.
+     */
+    private void scheduleGapCheck() {
+        if (!gapCheckScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            scheduler.schedule(this::recoverGaps, ChatConstants.GAP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Leaving
+        }
+    }
+    
+    /**
+     * Asks the server again for messages missing longer than the gap
+     * timeout. Messages the server no longer has are given up on; if the
+     * server cannot be reached the gap stays open and is retried.
+     */
+    private void recoverGaps() {
+        gapCheckScheduled.set(false);
+        List<MessageSequencer.Gap> gaps;
+        synchronized (sequencer) {
+            gaps = sequencer.overdueGaps(TimeUnit.MILLISECONDS.toNanos(ChatConstants.GAP_TIMEOUT_MS));
+        }
+        
+        Chattable service = chatService;
+        for (MessageSequencer.Gap gap : gaps) {
+            String room = gap.getRoom();
+            List<ChatMessage> resent;
+            try {
+                if (!isConnected || service == null) {
+                    break;
+                }
+                resent = service.resend(username, room == null ? ChatConstants.DEFAULT_ROOM : room,
+                    gap.getFromSequence()).getMessages();
+            } catch (RemoteException e) {
+                LOGGER.log(Level.FINE, "Could not ask for missed messages again", e);
+                continue;
+            }
+            
+            synchronized (sequencer) {
+                show(sequencer.accept(resent));
+                if (sequencer.lastShown(room) < gap.getFromSequence()) {
+                    // Not recovered: the server no longer has them
+                    long skipped = sequencer.getSkippedCount();
+                    List<ChatMessage> ready = sequencer.skipGap(room);
+                    skipped = sequencer.getSkippedCount() - skipped;
+                    LOGGER.warning(skipped + " messages could not be recovered");
+                    enqueue(ClientRMIGUI.textLines(MessageFormatter.formatServerMessage(skipped
+                        + " messages" + (room == null ? "" : " in #" + room) + " could not be recovered")));
+                    show(ready);
+                }
+            }
+        }
+        
+        boolean gapsLeft;
+        synchronized (sequencer) {
+            gapsLeft = sequencer.hasGaps();
+        }
+        if (gapsLeft) {
+            scheduleGapCheck();
+        }
+    }
+    
+    /**
+     * Queues formatted lines for the chat view. Lines are formatted on the
+     * receiving thread and shown by the EDT in one update per frame, at
+     * most every {@link GUIConstants#CHAT_FLUSH_INTERVAL_MS} milliseconds,
+     * so a flood of messages costs one model change and one scroll per
+     * frame rather than one per message.
+     * 
+     * @param lines the lines, oldest first
+     */
+    private void enqueue(List<ChatBuffer.Line> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        inbound.add(lines);
+        if (!flushScheduled.compareAndSet(false, true)) {
+            return; // The pending flush will take these lines too
+        }
+        
+        long waitMillis = TimeUnit.NANOSECONDS.toMillis(lastFlushNanos - System.nanoTime())
+            + GUIConstants.CHAT_FLUSH_INTERVAL_MS;
+        if (waitMillis <= 0) {
+            SwingUtilities.invokeLater(this::flushInbound);
+        } else {
+            Timer timer = new Timer((int) waitMillis, event -> flushInbound());
+            timer.setRepeats(false);
+            timer.start();
+        }
+    }
+    
+    /**
+     * Shows every queued line in one update. Must be called on the EDT.
+     */
+    private void flushInbound() {
+        // Cleared first, so lines queued while flushing schedule another flush
+        flushScheduled.set(false);
+        lastFlushNanos = System.nanoTime();
+        
+        List<ChatBuffer.Line> pending = inbound.poll();
+        if (pending == null) {
+            return;
+        }
+        List<ChatBuffer.Line> more = inbound.poll();
+        if (more != null) {
+            pending = new ArrayList<>(pending);
+            do {
+                pending.addAll(more);
+            } while ((more = inbound.poll()) != null);
+        }
+        chatGUI.appendLines(pending);
     }
     
     @Override
     public void updateUserList(String[] currentUsers) throws RemoteException {
+        heard();
         if (currentUsers == null) {
             LOGGER.warning("Received null user list from server");
             return;
@@ -209,12 +622,77 @@ public class Client extends UnicastRemoteObject implements ChatClient, Runnable
         });
     }
     
+    @Override
+    public void userListSnapshot(long version, String[] currentUsers) throws RemoteException {
+        heard();
+        if (currentUsers == null) {
+            LOGGER.warning("Received null user list snapshot from server");
+            return;
+        }
+        
+        synchronized (this) {
+            if (version < userListVersion) {
+                LOGGER.fine("Ignoring stale user list snapshot " + version);
+                return;
+            }
+            userListVersion = version;
+            snapshotRequested = false;
+        }
+        
+        LOGGER.fine("Applying user list snapshot " + version + " with " + currentUsers.length + " users");
+        
+        SwingUtilities.invokeLater(() -> {
+            chatGUI.updateUserList(currentUsers);
+        });
+    }
+    
+    @Override
+    public void ping() throws RemoteException {
+        // Reaching this method is the answer
+        heard();
+    }
+    
+    @Override
+    public void userListDelta(long version, String[] added, String[] removed) throws RemoteException {
+        heard();
+        if (added == null || removed == null) {
+            LOGGER.warning("Received malformed user list delta from server");
+            return;
+        }
+        
+        boolean requestSnapshot = false;
+        synchronized (this) {
+            if (version <= userListVersion) {
+                return; // Already reflected in a snapshot
+            }
+            if (version != userListVersion + 1) {
+                // Missed a change; wait for a full snapshot instead
+                requestSnapshot = !snapshotRequested;
+                snapshotRequested = true;
+            } else {
+                userListVersion = version;
+            }
+        }
+        
+        if (requestSnapshot) {
+            LOGGER.info("Gap in user list versions at " + version + ", requesting snapshot");
+            requestSnapshot();
+            return;
+        }
+        
+        SwingUtilities.invokeLater(() -> {
+            chatGUI.applyUserListDelta(added, removed);
+        });
+    }
+    
     /**
      * Disconnects from the chat server.
      * 
      * @throws RemoteException if disconnection fails
      */
     public void disconnect() throws RemoteException {
+        leaving = true;
+        scheduler.shutdownNow();
         if (isConnected && chatService != null) {
             try {
                 chatService.leaveChat(username);
@@ -2,16 +2,21 @@ package ClientSide;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Container;
 import java.awt.Font;
 import java.awt.GridLayout;
-import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.AdjustmentEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.rmi.RemoteException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.DefaultListModel;
 import javax.swing.JButton;
 import java.awt.event.WindowAdapter;
@@ -21,11 +26,16 @@ import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import ServerSide.ChatConstants;
+import ServerSide.ChatMessage;
+import ServerSide.Chattable;
+import ServerSide.HistoryPage;
 import ServerSide.MessageFormatter;
 
 /**
@@ -47,6 +57,8 @@ public class ClientRMIGUI extends JFrame implements ActionListener, KeyListener
                                                   "╚═══════════════════════════════════════╝\n\n";
     private static final String NO_USERS_MESSAGE = "No other users";
     private static final String USER_LIST_LABEL = "👥 Online Users";
+    private static final DateTimeFormatter TIME_FORMATTER =
+        DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
     
     // UI Components
     private JPanel textPanel;
@@ -54,7 +66,9 @@ public class ClientRMIGUI extends JFrame implements ActionListener, KeyListener
     private JPanel userPanel;
     private JPanel clientPanel;
     private JTextField messageTextField;
-    private JTextArea chatTextArea;
+    private ChatBuffer chatBuffer;
+    private JList<ChatBuffer.Line> chatList;
+    private JScrollBar chatScrollBar;
     private JList<String> userList;
     private DefaultListModel<String> userListModel;
     private JButton sendButton;
@@ -70,6 +84,10 @@ public class ClientRMIGUI extends JFrame implements ActionListener, KeyListener
     private JLabel statusLabel;
     private int messageCount = 0;
     
+    // History paging, touched only on the EDT
+    private boolean loadingHistory = false;
+    private boolean historyExhausted = false;
+    
     /**
      * Main entry point for the client application.
      * 
@@ -157,26 +175,36 @@ public class ClientRMIGUI extends JFrame implements ActionListener, KeyListener
     
     /**
      * Creates the text panel for displaying chat messages.
+     * Messages are kept in a bounded {@link ChatBuffer} and shown one line
+     * per row with a fixed row size, so the list only lays out and paints
+     * the rows in view, however many lines the buffer holds. Scrolling to
+     * the top fetches older messages from the server.
      * 
      * @return the configured text panel
      */
     private JPanel createTextPanel() {
-        chatTextArea = new JTextArea(WELCOME_MESSAGE);
-        chatTextArea.setMargin(new Insets(10, 10, 10, 10));
-        chatTextArea.setFont(GUIConstants.DEFAULT_FONT);
-        chatTextArea.setLineWrap(true);
-        chatTextArea.setWrapStyleWord(true);
-        chatTextArea.setEditable(false);
-        chatTextArea.setBackground(GUIConstants.CHAT_BACKGROUND);
-        chatTextArea.setForeground(GUIConstants.MESSAGE_COLOR);
-        chatTextArea.setBorder(BorderFactory.createCompoundBorder(
+        chatBuffer = new ChatBuffer(GUIConstants.CHAT_BUFFER_LINES);
+        chatList = new JList<>(chatBuffer);
+        chatList.setFont(GUIConstants.DEFAULT_FONT);
+        chatList.setBackground(GUIConstants.CHAT_BACKGROUND);
+        chatList.setForeground(GUIConstants.MESSAGE_COLOR);
+        chatList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        chatList.setCellRenderer(new ChatLineRenderer());
+        // Fixed sizes spare the list from measuring every row; rows fill the view width
+        chatList.setFixedCellHeight(chatList.getFontMetrics(GUIConstants.DEFAULT_FONT).getHeight() + 2);
+        chatList.setFixedCellWidth(1);
+        chatList.setBorder(BorderFactory.createCompoundBorder(
             BorderFactory.createLineBorder(new Color(200, 200, 200), 1),
             BorderFactory.createEmptyBorder(5, 5, 5, 5)));
+        chatList.setToolTipText("");
+        appendLocalText(WELCOME_MESSAGE);
         
-        JScrollPane scrollPane = new JScrollPane(chatTextArea);
+        JScrollPane scrollPane = new JScrollPane(chatList);
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
         scrollPane.setBorder(null);
+        chatScrollBar = scrollPane.getVerticalScrollBar();
+        chatScrollBar.addAdjustmentListener(this::chatScrolled);
         
         textPanel = new JPanel(new BorderLayout());
         textPanel.add(scrollPane, BorderLayout.CENTER);
@@ -243,11 +271,11 @@ public class ClientRMIGUI extends JFrame implements ActionListener, KeyListener
         userPanel.add(headerPanel, BorderLayout.NORTH);
         
         // Initialize user list
-        String[] noUsers = {NO_USERS_MESSAGE};
-        updateClientPanel(noUsers);
+        createClientPanel();
         
         // Button panel
         userPanel.add(createButtonPanel(), BorderLayout.SOUTH);
+        updateClientPanel(new String[] {NO_USERS_MESSAGE});
         userPanel.setBackground(GUIConstants.PANEL_BACKGROUND);
         userPanel.setBorder(BorderFactory.createCompoundBorder(
             BorderFactory.createLineBorder(new Color(200, 200, 200), 1),
@@ -349,31 +377,79 @@ public class ClientRMIGUI extends JFrame implements ActionListener, KeyListener
     }
     
     /**
-     * Updates the client panel with the current user list.
+     * Creates the client panel holding the user list.
+     * The list model is kept for the life of the window and updated in place.
+     */
+    private void createClientPanel() {
+        clientPanel = new JPanel(new BorderLayout());
+        userListModel = new DefaultListModel<>();
+        
+        // Create list
+        userList = new JList<>(userListModel);
+        userList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        userList.setVisibleRowCount(10);
+        userList.setFont(GUIConstants.USER_LIST_FONT);
+        userList.setBackground(GUIConstants.CHAT_BACKGROUND);
+        userList.setSelectionBackground(GUIConstants.BUTTON_COLOR);
+        userList.setSelectionForeground(Color.WHITE);
+        
+        JScrollPane listScrollPane = new JScrollPane(userList);
+        listScrollPane.setBorder(BorderFactory.createLineBorder(new Color(200, 200, 200), 1));
+        clientPanel.add(listScrollPane, BorderLayout.CENTER);
+        clientPanel.setBackground(GUIConstants.PANEL_BACKGROUND);
+        
+        userPanel.add(clientPanel, BorderLayout.CENTER);
+    }
+    
+    /**
+     * Replaces the user list contents with a full snapshot.
      * 
      * @param currentUsers array of current usernames
      */
     private void updateClientPanel(String[] currentUsers) {
-        if (userPanel == null) {
+        if (userListModel == null) {
             return;
         }
         
-        // Remove old panel if exists
-        if (clientPanel != null) {
-            userPanel.remove(clientPanel);
+        java.util.List<String> users = new java.util.ArrayList<>(currentUsers.length);
+        for (String user : currentUsers) {
+            if (user != null && !user.isEmpty() && !user.equals(NO_USERS_MESSAGE)) {
+                users.add(user);
+            }
         }
         
-        // Create new panel
-        clientPanel = new JPanel(new BorderLayout());
-        userListModel = new DefaultListModel<>();
+        userListModel.clear();
+        userListModel.addAll(users);
+        userListChanged();
+    }
+    
+    /**
+     * Applies a membership delta to the existing user list.
+     * 
+     * @param added usernames that joined
+     * @param removed usernames that left
+     */
+    private void applyClientPanelDelta(String[] added, String[] removed) {
+        if (userListModel == null) {
+            return;
+        }
         
-        int actualUserCount = 0;
-        for (String user : currentUsers) {
-            if (user != null && !user.isEmpty() && !user.equals(NO_USERS_MESSAGE)) {
+        for (String user : removed) {
+            userListModel.removeElement(user);
+        }
+        for (String user : added) {
+            if (user != null && !user.isEmpty() && !userListModel.contains(user)) {
                 userListModel.addElement(user);
-                actualUserCount++;
             }
         }
+        userListChanged();
+    }
+    
+    /**
+     * Refreshes the user count and private message button after a list change.
+     */
+    private void userListChanged() {
+        int actualUserCount = userListModel.getSize();
         
         // Update user count
         updateUserCount(actualUserCount);
@@ -381,24 +457,6 @@ public class ClientRMIGUI extends JFrame implements ActionListener, KeyListener
         // Enable private message button if enough users
         boolean canSendPrivate = actualUserCount >= 1 && isConnected;
         privateMessageButton.setEnabled(canSendPrivate);
-        
-        // Create list
-        userList = new JList<>(userListModel);
-        userList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
-        userList.setVisibleRowCount(10);
-        userList.setFont(GUIConstants.USER_LIST_FONT);
-        userList.setBackground(GUIConstants.CHAT_BACKGROUND);
-        userList.setSelectionBackground(GUIConstants.BUTTON_COLOR);
-        userList.setSelectionForeground(Color.WHITE);
-        
-        JScrollPane listScrollPane = new JScrollPane(userList);
-        listScrollPane.setBorder(BorderFactory.createLineBorder(new Color(200, 200, 200), 1));
-        clientPanel.add(listScrollPane, BorderLayout.CENTER);
-        clientPanel.setBackground(GUIConstants.PANEL_BACKGROUND);
-        
-        userPanel.add(clientPanel, BorderLayout.CENTER);
-        userPanel.revalidate();
-        userPanel.repaint();
     }
     
     /**
@@ -413,13 +471,14 @@ public class ClientRMIGUI extends JFrame implements ActionListener, KeyListener
     }
     
     /**
-     * Clears the chat text area.
+     * Clears the chat view.
      */
     private void clearChat() {
-        if (chatTextArea != null) {
-            chatTextArea.setText("");
+        if (chatBuffer != null) {
+            chatBuffer.clear();
             messageCount = 0;
-            appendMessage(WELCOME_MESSAGE);
+            historyExhausted = false;
+            appendLocalText(WELCOME_MESSAGE);
         }
     }
     
@@ -442,6 +501,10 @@ public class ClientRMIGUI extends JFrame implements ActionListener, KeyListener
             }
         } catch (RemoteException ex) {
             LOGGER.log(java.util.logging.Level.SEVERE, "Error handling action", ex);
+            if (chatClient != null) {
+                // Reconnects in the background if the server is gone
+                chatClient.verifyConnection();
+            }
             showErrorMessage("Communication Error", 
                 "Failed to communicate with server: " + ex.getMessage());
         } catch (Exception ex) {
@@ -517,10 +580,76 @@ public class ClientRMIGUI extends JFrame implements ActionListener, KeyListener
         }
         
         messageTextField.setText("");
+        if (message.startsWith("/")) {
+            handleRoomCommand(message);
+            return;
+        }
         sendMessage(message);
         messageCount++;
     }
     
+    /**
+     * Handles a room command typed into the message field:
+     * {@code /join room}, {@code /leave room}, {@code /rooms} or {@code /room room message}.
+     * 
+     * @param command the command text
+     * @throws RemoteException if the server call fails
+     */
+    private void handleRoomCommand(String command) throws RemoteException {
+        Chattable service = chatClient.getChatService();
+        String[] parts = command.split("\\s+", 3);
+        
+        switch (parts[0].toLowerCase()) {
+            case "/join":
+                if (parts.length < 2) {
+                    showErrorMessage("Invalid Command", "Usage: /join <room>");
+                    return;
+                }
+                chatClient.joinRoom(parts[1]);
+                break;
+            case "/leave":
+                if (parts.length < 2) {
+                    showErrorMessage("Invalid Command", "Usage: /leave <room>");
+                    return;
+                }
+                service.leaveRoom(username, parts[1]);
+                appendMessage(MessageFormatter.formatServerMessage("You left #" + parts[1]));
+                break;
+            case "/rooms":
+                appendMessage(MessageFormatter.formatServerMessage(
+                    "Rooms: " + String.join(", ", service.listRooms())));
+                break;
+            case "/room":
+                if (parts.length < 3) {
+                    showErrorMessage("Invalid Command", "Usage: /room <room> <message>");
+                    return;
+                }
+                service.updateRoomChat(username, parts[1], parts[2]);
+                messageCount++;
+                break;
+            case "/history":
+                if (parts.length < 2) {
+                    showErrorMessage("Invalid Command", "Usage: /history <room> [count]");
+                    return;
+                }
+                int count;
+                try {
+                    count = parts.length > 2 ? Integer.parseInt(parts[2].trim()) : 20;
+                } catch (NumberFormatException e) {
+                    showErrorMessage("Invalid Command", "Usage: /history <room> [count]");
+                    return;
+                }
+                HistoryPage page = service.fetchHistory(username, parts[1], 0, count);
+                appendMessage(MessageFormatter.formatServerMessage(
+                    "Last " + page.getMessages().size() + " messages in #" + page.getRoomName()));
+                appendChatMessages(page.getMessages());
+                break;
+            default:
+                showErrorMessage("Unknown Command", 
+                    "Commands: /join <room>, /leave <room>, /rooms, /room <room> <message>, /history <room> [count]");
+        }
+    }
+    
     /**
      * Handles the Private Message button click.
      * 
@@ -532,9 +661,9 @@ public class ClientRMIGUI extends JFrame implements ActionListener, KeyListener
             return;
         }
         
-        int[] selectedIndices = userList.getSelectedIndices();
+        java.util.List<String> selectedUsers = userList.getSelectedValuesList();
         
-        if (selectedIndices.length == 0) {
+        if (selectedUsers.isEmpty()) {
             showErrorMessage("No Selection", "Please select at least one user for private message");
             return;
         }
@@ -547,7 +676,7 @@ public class ClientRMIGUI extends JFrame implements ActionListener, KeyListener
         }
         
         messageTextField.setText("");
-        sendPrivateMessage(selectedIndices, message);
+        sendPrivateMessage(selectedUsers.toArray(new String[0]), message);
     }
     
     /**
@@ -586,16 +715,14 @@ public class ClientRMIGUI extends JFrame implements ActionListener, KeyListener
     /**
      * Sends a private message to selected users.
      * 
-     * @param recipientIndices indices of recipients in the user list
+     * @param recipients usernames of the recipients
      * @param message the message to send
      * @throws RemoteException if sending fails
      */
-    private void sendPrivateMessage(int[] recipientIndices, String message) throws RemoteException {
+    private void sendPrivateMessage(String[] recipients, String message) throws RemoteException {
         if (chatClient != null && chatClient.getChatService() != null) {
-            // Format private message with timestamp
-            String privateMessage = MessageFormatter.formatPrivateMessage(username, message);
-            chatClient.getChatService().sendPM(recipientIndices, privateMessage);
-            LOGGER.fine("Sent private message to " + recipientIndices.length + " user(s)");
+            chatClient.getChatService().sendPrivateMessage(username, recipients, message);
+            LOGGER.fine("Sent private message to " + recipients.length + " user(s)");
         }
     }
     
@@ -618,7 +745,7 @@ public class ClientRMIGUI extends JFrame implements ActionListener, KeyListener
     }
     
     /**
-     * Appends a message to the chat text area.
+     * Appends a message to the chat view.
      * Thread-safe method that can be called from any thread.
      * 
      * @param message the message to append
@@ -628,13 +755,210 @@ public class ClientRMIGUI extends JFrame implements ActionListener, KeyListener
             return;
         }
         
-        javax.swing.SwingUtilities.invokeLater(() -> {
-            if (chatTextArea != null) {
-                chatTextArea.append(message);
-                // Auto-scroll to bottom
-                chatTextArea.setCaretPosition(chatTextArea.getDocument().getLength());
+        javax.swing.SwingUtilities.invokeLater(() -> appendLocalText(message));
+    }
+    
+    /**
+     * Appends several messages to the chat view in one edit.
+     * Thread-safe method that can be called from any thread.
+     * 
+     * @param messages the messages to append, oldest first
+     */
+    public void appendMessages(java.util.List<String> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        
+        StringBuilder text = new StringBuilder();
+        for (String message : messages) {
+            if (message != null) {
+                text.append(message);
             }
-        });
+        }
+        appendMessage(text.toString());
+    }
+    
+    /**
+     * Formats messages from the server and appends them in one edit.
+     * Thread-safe method that can be called from any thread.
+     * 
+     * @param messages the messages to append, oldest first
+     */
+    public void appendChatMessages(java.util.List<ChatMessage> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        
+        java.util.List<ChatBuffer.Line> lines = toLines(messages);
+        javax.swing.SwingUtilities.invokeLater(() -> appendLines(lines));
+    }
+    
+    /**
+     * Appends text that did not come as a structured message.
+     * Must be called on the EDT.
+     * 
+     * @param text the text, possibly spanning several lines
+     */
+    private void appendLocalText(String text) {
+        appendLines(textLines(text));
+    }
+    
+    /**
+     * Appends lines to the chat view, keeping the newest line in view if
+     * the view was already scrolled to the bottom. Must be called on the EDT.
+     * 
+     * @param lines the lines, oldest first
+     */
+    void appendLines(java.util.List<ChatBuffer.Line> lines) {
+        if (chatBuffer == null || lines.isEmpty()) {
+            return;
+        }
+        boolean atBottom = chatScrollBar == null
+            || chatScrollBar.getValue() + chatScrollBar.getVisibleAmount()
+                >= chatScrollBar.getMaximum() - chatList.getFixedCellHeight();
+        chatBuffer.append(lines);
+        if (atBottom) {
+            chatList.ensureIndexIsVisible(chatBuffer.getSize() - 1);
+        }
+    }
+    
+    /**
+     * Formats messages into display lines.
+     * 
+     * @param messages the messages, oldest first
+     * @return the lines, oldest first
+     */
+    static java.util.List<ChatBuffer.Line> toLines(java.util.List<ChatMessage> messages) {
+        java.util.List<ChatBuffer.Line> lines = new java.util.ArrayList<>(messages.size());
+        StringBuilder text = new StringBuilder();
+        for (ChatMessage message : messages) {
+            if (message != null) {
+                text.setLength(0);
+                appendFormatted(text, message);
+                addLines(lines, message, text.toString());
+            }
+        }
+        return lines;
+    }
+    
+    /**
+     * Splits text that did not come as a structured message into display lines.
+     * 
+     * @param text the text, possibly spanning several lines
+     * @return the lines, oldest first
+     */
+    static java.util.List<ChatBuffer.Line> textLines(String text) {
+        java.util.List<ChatBuffer.Line> lines = new java.util.ArrayList<>();
+        addLines(lines, null, text);
+        return lines;
+    }
+    
+    /**
+     * Splits text into display lines, ignoring the final line break.
+     * 
+     * @param lines the list to add to
+     * @param message the message the text belongs to, or null
+     * @param text the text
+     */
+    private static void addLines(java.util.List<ChatBuffer.Line> lines, ChatMessage message, String text) {
+        int start = 0;
+        int length = text.endsWith("\n") ? text.length() - 1 : text.length();
+        while (start <= length) {
+            int end = text.indexOf('\n', start);
+            if (end < 0 || end > length) {
+                end = length;
+            }
+            lines.add(new ChatBuffer.Line(message, text.substring(start, end)));
+            start = end + 1;
+        }
+    }
+    
+    /**
+     * Fetches older messages once the view is scrolled to the top.
+     * 
+     * @param event the scroll bar change
+     */
+    private void chatScrolled(AdjustmentEvent event) {
+        JScrollBar scrollBar = chatScrollBar;
+        if (event.getValue() == scrollBar.getMinimum()
+                && scrollBar.getVisibleAmount() < scrollBar.getMaximum() - scrollBar.getMinimum()) {
+            loadOlderHistory();
+        }
+    }
+    
+    /**
+     * Fetches the page of lobby messages before the oldest one shown, off
+     * the EDT, and adds it to the top of the view. Stops once the buffer is
+     * full or the server has nothing older.
+     */
+    private void loadOlderHistory() {
+        if (loadingHistory || historyExhausted || chatBuffer.isFull()
+                || !isConnected || chatClient == null || chatClient.getChatService() == null) {
+            return;
+        }
+        long beforeSeq = chatBuffer.oldestSequence(null);
+        if (beforeSeq <= 1) {
+            return;
+        }
+        
+        loadingHistory = true;
+        Chattable service = chatClient.getChatService();
+        Thread loader = new Thread(() -> {
+            java.util.List<ChatMessage> older = java.util.List.of();
+            boolean failed = false;
+            try {
+                older = service.fetchHistory(username, ChatConstants.DEFAULT_ROOM, beforeSeq,
+                    GUIConstants.HISTORY_PAGE_SIZE).getMessages();
+            } catch (RemoteException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not fetch older messages", e);
+                failed = true;
+            }
+            java.util.List<ChatBuffer.Line> lines = toLines(older);
+            boolean exhausted = !failed && older.isEmpty();
+            javax.swing.SwingUtilities.invokeLater(() -> showOlderHistory(lines, exhausted));
+        }, "chat-history");
+        loader.setDaemon(true);
+        loader.start();
+    }
+    
+    /**
+     * Adds older lines to the top of the view without moving what is shown.
+     * 
+     * @param lines the lines, oldest first
+     * @param exhausted true if the server has no older messages
+     */
+    private void showOlderHistory(java.util.List<ChatBuffer.Line> lines, boolean exhausted) {
+        loadingHistory = false;
+        historyExhausted = exhausted;
+        int added = chatBuffer.prepend(lines);
+        if (added > 0) {
+            chatScrollBar.setValue(chatScrollBar.getValue() + added * chatList.getFixedCellHeight());
+        }
+    }
+    
+    /**
+     * Formats a message for the chat view as {@code [HH:mm:ss] sender : text},
+     * with the time shown in the local time zone.
+     * 
+     * @param text the builder to append to
+     * @param message the message
+     */
+    private static void appendFormatted(StringBuilder text, ChatMessage message) {
+        text.append('[').append(TIME_FORMATTER.format(Instant.ofEpochMilli(message.getTimestamp()))).append("] ");
+        if (message.getRoom() != null) {
+            text.append("[#").append(message.getRoom()).append("] ");
+        }
+        switch (message.getKind()) {
+            case SERVER:
+                text.append("[Server]");
+                break;
+            case PRIVATE:
+                text.append(message.getSender() == null ? "[PM]" : "[PM from " + message.getSender() + "]");
+                break;
+            default:
+                text.append(message.getSender());
+        }
+        text.append(" : ").append(message.getText()).append('\n');
     }
     
     /**
@@ -653,6 +977,23 @@ public class ClientRMIGUI extends JFrame implements ActionListener, KeyListener
         });
     }
     
+    /**
+     * Applies a membership delta to the user list display.
+     * Thread-safe method that can be called from any thread.
+     * 
+     * @param added usernames that joined
+     * @param removed usernames that left
+     */
+    public void applyUserListDelta(String[] added, String[] removed) {
+        if (added == null || removed == null) {
+            return;
+        }
+        
+        javax.swing.SwingUtilities.invokeLater(() -> {
+            applyClientPanelDelta(added, removed);
+        });
+    }
+    
     /**
      * Shows an error message dialog.
      * 
@@ -688,4 +1029,27 @@ public class ClientRMIGUI extends JFrame implements ActionListener, KeyListener
             });
         }
     }
+    
+    /**
+     * Draws one chat line, greying server notices and showing the whole
+     * line as a tooltip for lines too long to fit.
+     */
+    private static final class ChatLineRenderer extends DefaultListCellRenderer {
+        
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                boolean isSelected, boolean cellHasFocus) {
+            super.getListCellRendererComponent(list, value, index, isSelected, false);
+            ChatBuffer.Line line = (ChatBuffer.Line) value;
+            setText(line.getText().isEmpty() ? " " : line.getText());
+            setToolTipText(line.getText().isEmpty() ? null : line.getText());
+            ChatMessage message = line.getMessage();
+            if (!isSelected && message != null && message.getKind() == ChatMessage.Kind.SERVER) {
+                setForeground(GUIConstants.SERVER_MESSAGE_COLOR);
+            }
+            return this;
+        }
+    }
 }
@@ -7,19 +7,40 @@ import java.rmi.Naming;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Manages connection to the chat server with retry logic.
+ * This is the default RMI transport.
+ * 
+ * <p>Retries wait with exponential backoff and full jitter: the wait before
+ * a retry is drawn at random up to a ceiling that doubles with each failure,
+ * so clients that lose the server together spread their reconnects out
+ * instead of arriving at the registry all at once.
+ * 
+ * <p>Registry handles and the chat services looked up in them are cached
+ * per address and shared by every connection manager in the process. A
+ * cached service is reused after it answers a {@link Chattable#ping()},
+ * which costs one round trip where a lookup costs a registry call and a
+ * reference to a new stub; one that does not answer is dropped and looked
+ * up again.
  * 
  * @author Refactored
  */
-public class ConnectionManager {
+public class ConnectionManager implements ChatTransport {
     
     private static final Logger LOGGER = Logger.getLogger(ConnectionManager.class.getName());
     private static final int MAX_RETRY_ATTEMPTS = 3;
-    private static final long RETRY_DELAY_MS = 2000; // 2 seconds
+    
+    /** Registry handles by registry address */
+    private static final ConcurrentHashMap<String, Registry> REGISTRIES = new ConcurrentHashMap<>();
+    
+    /** Chat services looked up, by registry address */
+    private static final ConcurrentHashMap<String, Chattable> SERVICES = new ConcurrentHashMap<>();
     
     private final String hostname;
     private final int port;
@@ -35,21 +56,45 @@ public class ConnectionManager {
         this.port = port;
     }
     
+    @Override
+    public Chattable connect(ChatClient callbacks) throws RemoteException {
+        return connectWithRetry();
+    }
+    
     /**
-     * Connects to the chat server with retry logic.
+     * Connects to the chat server with retry logic, reusing the cached
+     * service for this address if it still answers.
      * 
      * @return the chat service if connection succeeds
      * @throws RemoteException if connection fails after all retries
      */
     public Chattable connectWithRetry() throws RemoteException {
+        String address = hostname + ":" + port;
+        Chattable cached = SERVICES.get(address);
+        if (cached != null) {
+            try {
+                cached.ping();
+                LOGGER.fine("Reusing chat service at " + address);
+                return cached;
+            } catch (RemoteException e) {
+                SERVICES.remove(address, cached);
+                LOGGER.log(Level.FINE, "Cached chat service at " + address + " no longer answers", e);
+            }
+        }
+        
         RemoteException lastException = null;
         
         for (int attempt = 1; attempt <= MAX_RETRY_ATTEMPTS; attempt++) {
             try {
                 LOGGER.info(String.format("Connection attempt %d of %d", attempt, MAX_RETRY_ATTEMPTS));
                 
-                Registry registry = LocateRegistry.getRegistry(hostname, port);
+                Registry registry = REGISTRIES.get(address);
+                if (registry == null) {
+                    registry = LocateRegistry.getRegistry(hostname, port);
+                    REGISTRIES.put(address, registry);
+                }
                 Chattable chatService = (Chattable) registry.lookup(ChatConstants.SERVER_SERVICE_NAME);
+                SERVICES.put(address, chatService);
                 
                 LOGGER.info("Successfully connected to chat server");
                 return chatService;
@@ -60,12 +105,7 @@ public class ConnectionManager {
                     String.format("Connection attempt %d failed", attempt), e);
                 
                 if (attempt < MAX_RETRY_ATTEMPTS) {
-                    try {
-                        Thread.sleep(RETRY_DELAY_MS);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new RemoteException("Connection interrupted", ie);
-                    }
+                    pause(attempt - 1);
                 }
             } catch (RemoteException e) {
                 lastException = e;
@@ -73,12 +113,7 @@ public class ConnectionManager {
                     String.format("Connection attempt %d failed", attempt), e);
                 
                 if (attempt < MAX_RETRY_ATTEMPTS) {
-                    try {
-                        Thread.sleep(RETRY_DELAY_MS);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new RemoteException("Connection interrupted", ie);
-                    }
+                    pause(attempt - 1);
                 }
             } catch (Exception e) {
                 lastException = new RemoteException("Unexpected error during connection", e);
@@ -91,5 +126,89 @@ public class ConnectionManager {
         throw lastException != null ? lastException : 
             new RemoteException("Failed to connect after " + MAX_RETRY_ATTEMPTS + " attempts");
     }
+    
+    /**
+     * Runs an attempt until it succeeds or is no longer wanted, waiting with
+     * backoff before each try. The first try waits too, up to the base
+     * delay, so clients that noticed the same outage do not retry in step.
+     * Failures are expected while the server is down and are logged quietly.
+     * 
+     * @param <T> the attempt's result type
+     * @param attempt the work to retry, typically connecting and rejoining
+     * @param stillWanted checked before each try; retrying stops once it is false
+     * @return the attempt's result, or null if retrying stopped or was interrupted
+     * @throws IllegalArgumentException if the attempt is refused as invalid,
+     *         which retrying would not change
+     */
+    public static <T> T retryWithBackoff(Attempt<T> attempt, BooleanSupplier stillWanted) {
+        for (int failures = 0; ; failures++) {
+            long delay = backoffDelay(failures);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            if (!stillWanted.getAsBoolean()) {
+                return null;
+            }
+            try {
+                return attempt.run();
+            } catch (RemoteException e) {
+                LOGGER.log(Level.FINE, "Reconnect attempt " + (failures + 1) + " failed", e);
+                if (failures % 10 == 0) {
+                    LOGGER.info("Still trying to reach the chat server: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Draws the wait before a retry: random up to the base delay doubled
+     * once per earlier failure, capped at the maximum delay.
+     * 
+     * @param failures the number of failed attempts so far
+     * @return the wait in milliseconds
+     */
+    static long backoffDelay(int failures) {
+        long ceiling = ChatConstants.RECONNECT_MAX_DELAY_MS;
+        long base = Math.max(1, ChatConstants.RECONNECT_BASE_DELAY_MS);
+        if (failures < Long.numberOfLeadingZeros(base) - 1) {
+            ceiling = Math.min(ceiling, base << failures);
+        }
+        return ThreadLocalRandom.current().nextLong(Math.max(0, ceiling) + 1);
+    }
+    
+    /**
+     * Waits before retrying a connection.
+     * 
+     * @param failures the number of failed attempts so far
+     * @throws RemoteException if interrupted while waiting
+     */
+    private static void pause(int failures) throws RemoteException {
+        try {
+            Thread.sleep(backoffDelay(failures));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Connection interrupted", e);
+        }
+    }
+    
+    /**
+     * One try at reaching the server.
+     * 
+     * @param <T> the result type
+     */
+    @FunctionalInterface
+    public interface Attempt<T> {
+        
+        /**
+         * Makes the try.
+         * 
+         * @return the result
+         * @throws RemoteException if the server could not be reached
+         */
+        T run() throws RemoteException;
+    }
 }
 
@@ -39,5 +39,13 @@ public final class GUIConstants {
     public static final int WINDOW_HEIGHT = 600;
     public static final int USER_PANEL_WIDTH = 200;
     public static final int STATUS_BAR_HEIGHT = 30;
+    
+    // Chat view
+    /** Most lines the chat view keeps; the oldest are dropped beyond this */
+    public static final int CHAT_BUFFER_LINES = Integer.getInteger("chat.client.bufferLines", 5000);
+    /** Messages fetched per page when scrolling back past the oldest line */
+    public static final int HISTORY_PAGE_SIZE = Integer.getInteger("chat.client.historyPageSize", 50);
+    /** Least time between two updates of the chat view with incoming messages, in milliseconds */
+    public static final int CHAT_FLUSH_INTERVAL_MS = Integer.getInteger("chat.client.flushIntervalMs", 16);
 }
 
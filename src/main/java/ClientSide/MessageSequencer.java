@@ -0,0 +1,295 @@
+package ClientSide;
+
+import ServerSide.ChatMessage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Puts the messages of each room back in sequence order before they are
+ * shown. The server numbers every room's messages as it publishes them; a
+ * message that arrives ahead of its predecessors waits here until they
+ * arrive, one already passed is a duplicate and is dropped, and one that
+ * stays missing is reported as a gap so the client can ask for it again.
+ * Messages without a number, such as private messages, pass straight through.
+ *
+ * <p>Each room's order starts from the first sequence number the server
+ * says it will send on joining, so a replayed message that arrives after a
+ * newer one is still shown. While joining, incoming messages are held until
+ * that is known, since a fresh session on a restarted server, or a room
+ * created again, numbers messages from the start.
+ *
+ * <p>Not thread-safe; callers synchronize on the sequencer, and should show
+ * what it returns before releasing the lock so the order is kept.
+ *
+ * @author Refactored
+ */
+public class MessageSequencer {
+
+    /** Most out-of-order messages a room waits on before giving up on the gap */
+    private static final int MAX_PENDING = 1024;
+
+    /**
+     * Messages of a room that cannot be shown yet.
+     */
+    public static final class Gap {
+
+        private final String room;
+        private final long fromSequence;
+
+        Gap(String room, long fromSequence) {
+            this.room = room;
+            this.fromSequence = fromSequence;
+        }
+
+        /**
+         * Gets the room, as messages carry it.
+         *
+         * @return the room name, or null for the default room
+         */
+        public String getRoom() {
+            return room;
+        }
+
+        /**
+         * Gets the first missing sequence number.
+         *
+         * @return the sequence number
+         */
+        public long getFromSequence() {
+            return fromSequence;
+        }
+    }
+
+    /**
+     * Ordering state of one room.
+     */
+    private static final class RoomOrder {
+
+        final String room;
+        /** Next sequence number to show, or 0 until the first message of a room joined without one arrives */
+        long expected;
+        final TreeMap<Long, ChatMessage> pending = new TreeMap<>();
+        /** When the oldest open gap appeared, from System.nanoTime */
+        long gapSinceNanos;
+
+        RoomOrder(String room) {
+            this.room = room;
+        }
+    }
+
+    private final Map<String, RoomOrder> rooms = new HashMap<>();
+    private List<ChatMessage> held;
+    /** Messages of rooms being joined, by room key */
+    private final Map<String, List<ChatMessage>> heldRooms = new HashMap<>();
+    private long skippedCount;
+
+    /**
+     * Orders arriving messages.
+     *
+     * @param messages the messages, in arrival order
+     * @return the messages that can be shown now, in order
+     */
+    public List<ChatMessage> accept(List<ChatMessage> messages) {
+        if (held != null) {
+            held.addAll(messages);
+            return List.of();
+        }
+        List<ChatMessage> ready = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            long sequence = message.getSequence();
+            if (sequence <= 0) {
+                ready.add(message);
+                continue;
+            }
+            List<ChatMessage> heldForRoom = heldRooms.isEmpty() ? null : heldRooms.get(key(message.getRoom()));
+            if (heldForRoom != null) {
+                heldForRoom.add(message);
+                continue;
+            }
+            RoomOrder order = rooms.computeIfAbsent(key(message.getRoom()), k -> new RoomOrder(message.getRoom()));
+            if (order.expected == 0) {
+                order.expected = sequence;
+            }
+            if (sequence < order.expected) {
+                continue; // Shown already
+            }
+            if (sequence > order.expected) {
+                if (order.pending.isEmpty()) {
+                    order.gapSinceNanos = System.nanoTime();
+                }
+                order.pending.put(sequence, message);
+                if (order.pending.size() > MAX_PENDING) {
+                    skipGap(order, ready);
+                }
+                continue;
+            }
+            ready.add(message);
+            order.expected++;
+            release(order, ready);
+        }
+        return ready;
+    }
+
+    /**
+     * Lists the gaps that have stayed open for at least the given time.
+     *
+     * @param minAgeNanos how long a gap must have been open
+     * @return the gaps, oldest room first
+     */
+    public List<Gap> overdueGaps(long minAgeNanos) {
+        List<Gap> gaps = new ArrayList<>();
+        long now = System.nanoTime();
+        for (RoomOrder order : rooms.values()) {
+            if (!order.pending.isEmpty() && now - order.gapSinceNanos >= minAgeNanos) {
+                gaps.add(new Gap(order.room, order.expected));
+            }
+        }
+        return gaps;
+    }
+
+    /**
+     * Checks whether any room is waiting on missing messages.
+     *
+     * @return true if a gap is open
+     */
+    public boolean hasGaps() {
+        for (RoomOrder order : rooms.values()) {
+            if (!order.pending.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gives up on the missing messages of a room that the server could not
+     * send again, and shows what was waiting behind them.
+     *
+     * @param room the room, as messages carry it
+     * @return the messages that can be shown now, in order
+     */
+    public List<ChatMessage> skipGap(String room) {
+        List<ChatMessage> ready = new ArrayList<>();
+        RoomOrder order = rooms.get(key(room));
+        if (order != null && !order.pending.isEmpty()) {
+            skipGap(order, ready);
+        }
+        return ready;
+    }
+
+    /**
+     * Gets the sequence number of the last message shown from a room.
+     *
+     * @param room the room, as messages carry it
+     * @return the sequence number, or 0 if none has been shown
+     */
+    public long lastShown(String room) {
+        RoomOrder order = rooms.get(key(room));
+        return order == null || order.expected == 0 ? 0 : order.expected - 1;
+    }
+
+    /**
+     * Gets the number of messages given up on because they could not be recovered.
+     *
+     * @return the skipped message count
+     */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Forgets every room's order and holds arriving messages until
+     * {@link #release(String, long)}, for a client that is joining.
+     */
+    public void hold() {
+        rooms.clear();
+        if (held == null) {
+            held = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Stops holding messages and orders those that arrived meanwhile.
+     *
+     * @param room the room the session was joined in, as messages carry it
+     * @param lastShown the sequence number before the first one of that room
+     *                  to show: the last one shown when resuming, or one
+     *                  less than the first the server said it would send
+     * @return the messages that can be shown now, in order
+     */
+    public List<ChatMessage> release(String room, long lastShown) {
+        startOrder(room, lastShown + 1);
+        List<ChatMessage> arrived = held == null ? List.of() : held;
+        held = null;
+        return accept(arrived);
+    }
+
+    /**
+     * Holds the messages of a room until {@link #releaseRoom}, for a client
+     * that is joining it.
+     *
+     * @param room the room, as messages carry it
+     */
+    public void holdRoom(String room) {
+        heldRooms.putIfAbsent(key(room), new ArrayList<>());
+    }
+
+    /**
+     * Stops holding a room's messages and orders those that arrived meanwhile.
+     *
+     * @param room the room, as messages carry it
+     * @param firstSequence the first sequence number the server said it
+     *                      would send from the room, or 0 to keep the
+     *                      room's current order
+     * @return the messages that can be shown now, in order
+     */
+    public List<ChatMessage> releaseRoom(String room, long firstSequence) {
+        if (firstSequence > 0) {
+            startOrder(room, firstSequence);
+        }
+        List<ChatMessage> arrived = heldRooms.remove(key(room));
+        return arrived == null ? List.of() : accept(arrived);
+    }
+
+    /**
+     * Starts a room's order afresh at a sequence number.
+     */
+    private void startOrder(String room, long expected) {
+        RoomOrder order = new RoomOrder(room);
+        order.expected = expected;
+        rooms.put(key(room), order);
+    }
+
+    /**
+     * Moves a room past its gap to the oldest waiting message.
+     */
+    private void skipGap(RoomOrder order, List<ChatMessage> ready) {
+        long next = order.pending.firstKey();
+        skippedCount += next - order.expected;
+        order.expected = next;
+        release(order, ready);
+    }
+
+    /**
+     * Shows the waiting messages that follow on without a gap.
+     */
+    private static void release(RoomOrder order, List<ChatMessage> ready) {
+        ChatMessage next;
+        while ((next = order.pending.remove(order.expected)) != null) {
+            ready.add(next);
+            order.expected++;
+        }
+        if (!order.pending.isEmpty()) {
+            // What is left waits on a newer gap
+            order.gapSinceNanos = System.nanoTime();
+        }
+    }
+
+    private static String key(String room) {
+        return room == null ? "" : room.toLowerCase(Locale.ROOT);
+    }
+}
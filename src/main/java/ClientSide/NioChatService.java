@@ -0,0 +1,429 @@
+package ClientSide;
+
+import ServerSide.ChatConstants;
+import ServerSide.ChatSession;
+import ServerSide.Chattable;
+import ServerSide.Frames;
+import ServerSide.HistoryPage;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.rmi.ConnectException;
+import java.rmi.RemoteException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Client end of the NIO transport: a {@link Chattable} that sends requests
+ * as binary frames over one persistent socket and waits for their replies.
+ * A reader thread receives replies and callbacks; callbacks are passed to
+ * the local {@link ChatClient} in order on a separate thread, so a callback
+ * that calls back into the server cannot block the reader.
+ *
+ * @author Refactored
+ */
+public class NioChatService implements Chattable, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(NioChatService.class.getName());
+
+    private final SocketChannel channel;
+    private final ChatClient callbacks;
+    private final ExecutorService callbackExecutor;
+    private final ConcurrentHashMap<Integer, CompletableFuture<Frames.Reader>> pendingCalls =
+        new ConcurrentHashMap<>();
+    private final AtomicInteger nextCallId = new AtomicInteger();
+    private final Object writeLock = new Object();
+    private volatile boolean closed = false;
+    // The server may close the connection before the leave reply is handled
+    private volatile boolean leaving = false;
+
+    /**
+     * Connects to a server's NIO transport.
+     *
+     * @param hostname the server hostname
+     * @param port the NIO transport port
+     * @param callbacks the client receiving server callbacks
+     * @throws RemoteException if the server cannot be reached
+     */
+    public NioChatService(String hostname, int port, ChatClient callbacks) throws RemoteException {
+        if (callbacks == null) {
+            throw new IllegalArgumentException("Callbacks cannot be null");
+        }
+        this.callbacks = callbacks;
+        try {
+            this.channel = SocketChannel.open(new InetSocketAddress(hostname, port));
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        } catch (IOException e) {
+            throw new ConnectException("Failed to connect to " + hostname + ":" + port, e);
+        }
+
+        this.callbackExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-nio-callbacks");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread reader = new Thread(this::readLoop, "chat-nio-reader");
+        reader.setDaemon(true);
+        reader.start();
+        LOGGER.info("Connected to NIO transport at " + hostname + ":" + port);
+    }
+
+    @Override
+    public void join(String[] clientDetails) throws RemoteException {
+        if (clientDetails == null || clientDetails.length < 1) {
+            throw new IllegalArgumentException("Client details must contain a username");
+        }
+        // The callbacks travel over this connection, so only the username and features are needed
+        int id = nextCallId.incrementAndGet();
+        call(id, new Frames.Writer(Frames.JOIN, id).writeString(clientDetails[0])
+            .writeString(clientDetails.length > 3 ? clientDetails[3] : null));
+    }
+
+    @Override
+    public ChatSession joinSession(String[] clientDetails, String resumeToken, long lastSequence)
+            throws RemoteException {
+        if (clientDetails == null || clientDetails.length < 1) {
+            throw new IllegalArgumentException("Client details must contain a username");
+        }
+        int id = nextCallId.incrementAndGet();
+        Frames.Reader reply = call(id, new Frames.Writer(Frames.JOIN_SESSION, id).writeString(clientDetails[0])
+            .writeString(clientDetails.length > 3 ? clientDetails[3] : null)
+            .writeString(resumeToken).writeLong(lastSequence));
+        return new ChatSession(reply.readString(), reply.readByte() != 0, reply.readLong());
+    }
+
+    /**
+     * {@inheritDoc}
+     * Callbacks always travel over this connection, to the client given
+     * when connecting.
+     *
+     * @throws IllegalArgumentException also if client is not the one given when connecting
+     */
+    @Override
+    public void join(String[] clientDetails, ChatClient client) throws RemoteException {
+        requireCallbacks(client);
+        join(clientDetails);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Callbacks always travel over this connection, to the client given
+     * when connecting.
+     *
+     * @throws IllegalArgumentException also if client is not the one given when connecting
+     */
+    @Override
+    public ChatSession joinSession(String[] clientDetails, ChatClient client, String resumeToken,
+            long lastSequence) throws RemoteException {
+        requireCallbacks(client);
+        return joinSession(clientDetails, resumeToken, lastSequence);
+    }
+
+    @Override
+    public void ping() throws RemoteException {
+        int id = nextCallId.incrementAndGet();
+        call(id, new Frames.Writer(Frames.PING, id));
+    }
+
+    private void requireCallbacks(ChatClient client) {
+        if (client != callbacks) {
+            throw new IllegalArgumentException("Callbacks are fixed when connecting over NIO");
+        }
+    }
+
+    @Override
+    public void updateChat(String userName, String chatMessage) throws RemoteException {
+        int id = nextCallId.incrementAndGet();
+        call(id, new Frames.Writer(Frames.UPDATE_CHAT, id).writeString(userName).writeString(chatMessage));
+    }
+
+    @Override
+    public void updateRoomChat(String userName, String roomName, String chatMessage) throws RemoteException {
+        int id = nextCallId.incrementAndGet();
+        call(id, new Frames.Writer(Frames.UPDATE_ROOM_CHAT, id)
+            .writeString(userName).writeString(roomName).writeString(chatMessage));
+    }
+
+    @Override
+    public long joinRoom(String userName, String roomName) throws RemoteException {
+        int id = nextCallId.incrementAndGet();
+        return call(id, new Frames.Writer(Frames.JOIN_ROOM, id).writeString(userName).writeString(roomName))
+            .readLong();
+    }
+
+    @Override
+    public void leaveRoom(String userName, String roomName) throws RemoteException {
+        int id = nextCallId.incrementAndGet();
+        call(id, new Frames.Writer(Frames.LEAVE_ROOM, id).writeString(userName).writeString(roomName));
+    }
+
+    @Override
+    public String[] listRooms() throws RemoteException {
+        int id = nextCallId.incrementAndGet();
+        return call(id, new Frames.Writer(Frames.LIST_ROOMS, id)).readStrings();
+    }
+
+    @Override
+    public String locateRoom(String roomName) throws RemoteException {
+        int id = nextCallId.incrementAndGet();
+        return call(id, new Frames.Writer(Frames.LOCATE_ROOM, id).writeString(roomName)).readString();
+    }
+
+    @Override
+    public String[] getRoomMembers(String roomName) throws RemoteException {
+        int id = nextCallId.incrementAndGet();
+        return call(id, new Frames.Writer(Frames.GET_ROOM_MEMBERS, id).writeString(roomName)).readStrings();
+    }
+
+    @Override
+    public HistoryPage fetchHistory(String userName, String roomName, long beforeSeq, int limit)
+            throws RemoteException {
+        int id = nextCallId.incrementAndGet();
+        Frames.Reader reply = call(id, new Frames.Writer(Frames.FETCH_HISTORY, id)
+            .writeString(userName).writeString(roomName).writeLong(beforeSeq).writeInt(limit));
+        return new HistoryPage(reply.readString(), reply.readLong(), reply.readMessages());
+    }
+
+    @Override
+    public HistoryPage resend(String userName, String roomName, long fromSeq) throws RemoteException {
+        int id = nextCallId.incrementAndGet();
+        Frames.Reader reply = call(id, new Frames.Writer(Frames.RESEND, id)
+            .writeString(userName).writeString(roomName).writeLong(fromSeq));
+        return new HistoryPage(reply.readString(), reply.readLong(), reply.readMessages());
+    }
+
+    /**
+     * {@inheritDoc}
+     * Leaving the chat also closes the connection.
+     */
+    @Override
+    public void leaveChat(String userName) throws RemoteException {
+        int id = nextCallId.incrementAndGet();
+        leaving = true;
+        try {
+            call(id, new Frames.Writer(Frames.LEAVE_CHAT, id).writeString(userName));
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void sendPrivateMessage(String senderName, String[] recipientNames, String message)
+            throws RemoteException {
+        int id = nextCallId.incrementAndGet();
+        call(id, new Frames.Writer(Frames.SEND_PRIVATE_MESSAGE, id)
+            .writeString(senderName).writeStrings(recipientNames).writeString(message));
+    }
+
+    @Override
+    @Deprecated
+    public void sendPM(int[] recipientIndices, String privateMessage) throws RemoteException {
+        int id = nextCallId.incrementAndGet();
+        call(id, new Frames.Writer(Frames.SEND_PM, id).writeInts(recipientIndices).writeString(privateMessage));
+    }
+
+    @Override
+    public void requestUserList(String userName) throws RemoteException {
+        int id = nextCallId.incrementAndGet();
+        call(id, new Frames.Writer(Frames.REQUEST_USER_LIST, id).writeString(userName));
+    }
+
+    /**
+     * Closes the connection. Calls still waiting fail with a RemoteException.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Error closing NIO connection", e);
+        }
+        callbackExecutor.shutdown();
+        RemoteException closedException = new RemoteException("Connection to server closed");
+        for (CompletableFuture<Frames.Reader> pending : pendingCalls.values()) {
+            pending.completeExceptionally(closedException);
+        }
+    }
+
+    /**
+     * Sends a request and waits for its reply.
+     *
+     * @param id the call id written into the request
+     * @param request the request frame
+     * @return the reply payload after the call id
+     * @throws RemoteException if the server reports an error, the connection
+     *         fails, or no reply arrives in time
+     */
+    private Frames.Reader call(int id, Frames.Writer request) throws RemoteException {
+        if (closed) {
+            throw new RemoteException("Connection to server closed");
+        }
+        CompletableFuture<Frames.Reader> reply = new CompletableFuture<>();
+        pendingCalls.put(id, reply);
+        try {
+            ByteBuffer frame = request.toBuffer();
+            synchronized (writeLock) {
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            }
+            return reply.get(ChatConstants.NIO_CALL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IllegalArgumentException) {
+                throw new IllegalArgumentException(cause.getMessage(), cause);
+            }
+            if (cause instanceof RemoteException) {
+                throw new RemoteException(cause.getMessage(), cause);
+            }
+            throw new RemoteException("Call failed", cause);
+        } catch (TimeoutException e) {
+            throw new RemoteException("No reply from server", new SocketTimeoutException(e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted waiting for the server", e);
+        } catch (IOException e) {
+            close();
+            throw new RemoteException("Connection to server lost", e);
+        } finally {
+            pendingCalls.remove(id);
+        }
+    }
+
+    /**
+     * Reads frames until the connection closes.
+     */
+    private void readLoop() {
+        ByteBuffer header = ByteBuffer.allocate(Frames.LENGTH_SIZE);
+        try {
+            while (!closed) {
+                header.clear();
+                readFully(header);
+                int length = header.getInt(0);
+                if (length <= 0 || length > Frames.MAX_FRAME_SIZE) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                ByteBuffer frame = ByteBuffer.allocate(length);
+                readFully(frame);
+                frame.flip();
+                byte opcode = frame.get();
+                handle(opcode, new Frames.Reader(frame.slice()));
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!closed && !leaving) {
+                LOGGER.log(Level.WARNING, "Lost connection to server", e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+        }
+    }
+
+    /**
+     * Completes a waiting call or queues a callback.
+     */
+    private void handle(byte opcode, Frames.Reader in) {
+        switch (opcode) {
+            case Frames.RESULT:
+                complete(in.readInt(), in, null);
+                break;
+            case Frames.REMOTE_ERROR: {
+                int id = in.readInt();
+                complete(id, null, new RemoteException(in.readString()));
+                break;
+            }
+            case Frames.ARGUMENT_ERROR: {
+                int id = in.readInt();
+                complete(id, null, new IllegalArgumentException(in.readString()));
+                break;
+            }
+            case Frames.MESSAGE: {
+                String message = in.readString();
+                dispatch(() -> callbacks.messageFromServer(message));
+                break;
+            }
+            case Frames.CHAT_MESSAGES: {
+                byte[] encodedBatch = in.readBytes();
+                dispatch(() -> callbacks.receiveEncoded(encodedBatch));
+                break;
+            }
+            case Frames.CHAT_MESSAGES_COMPRESSED: {
+                byte[] compressedBatch = in.readBytes();
+                dispatch(() -> callbacks.receiveCompressed(compressedBatch));
+                break;
+            }
+            case Frames.USER_LIST: {
+                String[] users = in.readStrings();
+                dispatch(() -> callbacks.updateUserList(users));
+                break;
+            }
+            case Frames.USER_LIST_SNAPSHOT: {
+                long version = in.readLong();
+                String[] users = in.readStrings();
+                dispatch(() -> callbacks.userListSnapshot(version, users));
+                break;
+            }
+            case Frames.USER_LIST_DELTA: {
+                long version = in.readLong();
+                String[] added = in.readStrings();
+                String[] removed = in.readStrings();
+                dispatch(() -> callbacks.userListDelta(version, added, removed));
+                break;
+            }
+            default:
+                LOGGER.warning("Ignoring unknown frame type " + opcode);
+        }
+    }
+
+    private void complete(int id, Frames.Reader result, Exception error) {
+        CompletableFuture<Frames.Reader> pending = pendingCalls.get(id);
+        if (pending == null) {
+            LOGGER.fine("Reply for call " + id + " arrived after it gave up");
+        } else if (error != null) {
+            pending.completeExceptionally(error);
+        } else {
+            pending.complete(result);
+        }
+    }
+
+    private void dispatch(Callback callback) {
+        callbackExecutor.execute(() -> {
+            try {
+                callback.run();
+            } catch (RemoteException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Error handling server callback", e);
+            }
+        });
+    }
+
+    /**
+     * A callback into the local client.
+     */
+    @FunctionalInterface
+    private interface Callback {
+        void run() throws RemoteException;
+    }
+}
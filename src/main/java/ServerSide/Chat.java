@@ -1,21 +1,39 @@
 package ServerSide;
 
 import ClientSide.ChatClient;
+import java.io.IOException;
 import java.rmi.Naming;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Main chat server implementation using Java RMI.
  * Manages client connections, message broadcasting, and user list updates.
+ * Callbacks to clients are queued per client and delivered asynchronously,
+ * so a slow or unresponsive client never stalls senders or other clients.
+ * Every client is in the default room; named rooms have their own member
+ * sets so their messages only fan out to their members. Each room keeps its
+ * recent messages in memory and replays them to clients as they join;
+ * with the message log enabled, the default room's history survives a restart.
+ * A heartbeat monitor pings idle clients and evicts those that stop answering.
+ * A client that drops can resume its session for a while with the token it
+ * was issued on joining, and is then sent only the messages it missed.
+ * Several servers can form a cluster that divides the named rooms between
+ * them, each passing requests for rooms hosted elsewhere on to the owner;
+ * see {@link ClusterNode}.
  * 
  * @author Refactored
  */
@@ -24,17 +42,85 @@ public class Chat extends UnicastRemoteObject implements Chattable {
     private static final long serialVersionUID = 1L;
     private static final Logger LOGGER = Logger.getLogger(Chat.class.getName());
     
-    /** Thread-safe list of connected clients */
-    private final List<Chatter> connectedClients;
+    /** RMI property bounding how long an outgoing call waits for its response */
+    private static final String RESPONSE_TIMEOUT_PROPERTY = "sun.rmi.transport.tcp.responseTimeout";
+    
+    /** Connected clients, readable without locking */
+    private final ClientRegistry connectedClients;
+    
+    /** Default room; its members are exactly the connected clients */
+    private final Room lobby;
+    
+    /** All rooms, including the lobby, keyed by lower-cased name */
+    private final ConcurrentHashMap<String, Room> rooms;
+    
+    /** Members of rooms hosted here who are connected to other cluster nodes, keyed by lower-cased name */
+    private final ConcurrentHashMap<String, Chatter> remoteMembers = new ConcurrentHashMap<>();
     
     /**
-     * Constructs a new Chat server instance.
+     * Serializes membership changes so versions reach every queue in order.
+     * Deliveries that would wait for room are made after it is released.
+     */
+    private final Object membershipLock = new Object();
+    
+    /** Incremented on every join and leave; guarded by membershipLock */
+    private long membershipVersion = 0;
+    
+    /** Runs the per-client delivery workers and heartbeat pings, on virtual threads by default */
+    private final ExecutorService deliveryExecutor;
+    
+    /** Durable record of chat events, or null if persistence is disabled */
+    private final MessageLog messageLog;
+    
+    /** Pings idle clients to find dead ones, or null if heartbeats are disabled */
+    private final HeartbeatMonitor heartbeatMonitor;
+    
+    /** Counters and latency histograms, published over JMX by {@link #main} */
+    private final ChatMetrics metrics;
+    
+    /** This server's cluster membership, or null when running on its own */
+    private volatile ClusterNode cluster;
+    
+    /** Resume tokens of connected and recently dropped clients */
+    private final SessionStore sessions;
+    
+    /**
+     * Constructs a new Chat server instance without persistence.
      * 
      * @throws RemoteException if RMI export fails
      */
     public Chat() throws RemoteException {
+        this(null);
+    }
+    
+    /**
+     * Constructs a new Chat server instance.
+     * 
+     * @param messageLog log that records every chat, server and private
+     *                   message event and restores the default room's
+     *                   history, or null to disable persistence
+     * @throws RemoteException if RMI export fails
+     */
+    public Chat(MessageLog messageLog) throws RemoteException {
         super();
-        this.connectedClients = Collections.synchronizedList(new ArrayList<>());
+        this.messageLog = messageLog;
+        this.connectedClients = new ClientRegistry();
+        this.lobby = new Room(ChatConstants.DEFAULT_ROOM, connectedClients);
+        this.rooms = new ConcurrentHashMap<>();
+        this.rooms.put(roomKey(lobby.getName()), lobby);
+        if (messageLog != null) {
+            restoreLobbyHistory(messageLog);
+        }
+        this.deliveryExecutor = ChatConstants.DELIVERY_VIRTUAL_THREADS
+            ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("chat-delivery-", 1).factory())
+            : Executors.newCachedThreadPool(new DeliveryThreadFactory());
+        this.sessions = new SessionStore(ChatConstants.SESSION_RESUME_WINDOW_MS);
+        this.metrics = new ChatMetrics(this::getConnectedClientCount, this::getPendingDeliveryCount,
+            this::getSuspectClientCount, this::getDegradedClientCount);
+        this.heartbeatMonitor = ChatConstants.HEARTBEAT_INTERVAL_MS > 0
+            ? new HeartbeatMonitor(ChatConstants.HEARTBEAT_INTERVAL_MS, ChatConstants.HEARTBEAT_TIMEOUT_MS,
+                ChatConstants.HEARTBEAT_MAX_MISSED, deliveryExecutor, this::evict)
+            : null;
         LOGGER.info("Chat server initialized");
     }
     
@@ -48,12 +134,47 @@ public class Chat extends UnicastRemoteObject implements Chattable {
         try {
             LOGGER.info("Starting chat server...");
             
+            // Bound every callback; RMI reads this once, before its first call
+            if (ChatConstants.CALLBACK_TIMEOUT_MS > 0
+                    && System.getProperty(RESPONSE_TIMEOUT_PROPERTY) == null) {
+                System.setProperty(RESPONSE_TIMEOUT_PROPERTY, Long.toString(ChatConstants.CALLBACK_TIMEOUT_MS));
+            }
+            // Reject breaker settings now rather than on the first join
+            CircuitBreaker.withDefaults();
+            
             // Create RMI registry
             Registry registry = LocateRegistry.createRegistry(ChatConstants.RMI_REGISTRY_PORT);
             LOGGER.info("RMI Registry created on port " + ChatConstants.RMI_REGISTRY_PORT);
             
-            // Create and bind chat service
-            Chattable chatService = new Chat();
+            // Open the durable message log and flush it on shutdown
+            MessageLog messageLog = MessageLog.openDefault();
+            if (messageLog != null) {
+                Runtime.getRuntime().addShutdownHook(new Thread(messageLog::close, "chat-log-shutdown"));
+            }
+            
+            // Create and bind chat service, publishing its metrics over JMX
+            Chat chatService = new Chat(messageLog);
+            Runtime.getRuntime().addShutdownHook(new Thread(chatService::shutdown, "chat-shutdown"));
+            ChatMetrics metrics = chatService.getMetrics();
+            
+            // Optionally accept clients over the binary NIO transport as well
+            if ("nio".equalsIgnoreCase(ChatConstants.TRANSPORT)) {
+                NioChatServer nioServer = new NioChatServer(chatService, ChatConstants.NIO_PORT);
+                Runtime.getRuntime().addShutdownHook(new Thread(nioServer::close, "chat-nio-shutdown"));
+            }
+            metrics.register();
+            Runtime.getRuntime().addShutdownHook(new Thread(
+                () -> LOGGER.info("Final metrics:\n" + metrics.dumpSnapshot()), "chat-metrics-shutdown"));
+            
+            // Join the cluster before taking clients, so usernames stay unique
+            if (!ChatConstants.CLUSTER_NODE_ID.isEmpty()) {
+                ClusterNode clusterNode = new ClusterNode(chatService, ChatConstants.CLUSTER_NODE_ID,
+                    ChatConstants.CLUSTER_NODES, ChatConstants.CLUSTER_VIRTUAL_NODES);
+                registry.rebind(ChatConstants.PEER_SERVICE_NAME, clusterNode);
+                clusterNode.start();
+                chatService.setCluster(clusterNode);
+                Runtime.getRuntime().addShutdownHook(new Thread(clusterNode::close, "chat-cluster-shutdown"));
+            }
             registry.rebind(ChatConstants.SERVER_SERVICE_NAME, chatService);
             
             LOGGER.info("Chat server is running and bound to '" + ChatConstants.SERVER_SERVICE_NAME + "'");
@@ -77,6 +198,8 @@ public class Chat extends UnicastRemoteObject implements Chattable {
         String username = clientDetails[0].trim();
         String hostname = clientDetails[1];
         String clientServiceName = clientDetails[2];
+        String features = clientDetails.length > 3 ? clientDetails[3] : null;
+        long start = System.nanoTime();
         
         try {
             // Check if username already exists
@@ -85,25 +208,9 @@ public class Chat extends UnicastRemoteObject implements Chattable {
                 throw new RemoteException("Username '" + username + "' is already in use");
             }
             
-            // Lookup client's remote object
-            String clientUrl = "rmi://" + hostname + "/" + clientServiceName;
-            ChatClient client = (ChatClient) Naming.lookup(clientUrl);
-            
-            // Add client to connected list
-            Chatter newChatter = new Chatter(username, client);
-            synchronized (connectedClients) {
-                connectedClients.add(newChatter);
-            }
-            
-            LOGGER.info("User '" + username + "' joined the chat");
-            
-            // Notify all clients
-            String joinMessage = MessageFormatter.formatServerMessage(
-                username + " has joined the chat!");
-            broadcastMessage(joinMessage);
-            
-            // Update user lists
-            updateAllUserLists();
+            ChatClient client = lookupClient(hostname, clientServiceName);
+            register(username, client, features, -1);
+            metrics.recordJoin(System.nanoTime() - start);
             
         } catch (RemoteException e) {
             LOGGER.log(Level.SEVERE, "Error joining user: " + username, e);
@@ -114,6 +221,204 @@ public class Chat extends UnicastRemoteObject implements Chattable {
         }
     }
     
+    @Override
+    public ChatSession joinSession(String[] clientDetails, String resumeToken, long lastSequence)
+            throws RemoteException {
+        validateClientDetails(clientDetails);
+        
+        String username = clientDetails[0].trim();
+        String features = clientDetails.length > 3 ? clientDetails[3] : null;
+        try {
+            ChatClient client = lookupClient(clientDetails[1], clientDetails[2]);
+            return openSession(username, client, features, resumeToken, lastSequence);
+        } catch (RemoteException e) {
+            LOGGER.log(Level.SEVERE, "Error joining user: " + username, e);
+            throw e;
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Unexpected error joining user: " + username, e);
+            throw new RemoteException("Failed to join chat: " + e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public void join(String[] clientDetails, ChatClient client) throws RemoteException {
+        validateCallbackDetails(clientDetails, client);
+        addClient(clientDetails[0].trim(), client, clientDetails.length > 3 ? clientDetails[3] : null);
+    }
+    
+    @Override
+    public ChatSession joinSession(String[] clientDetails, ChatClient client, String resumeToken,
+            long lastSequence) throws RemoteException {
+        validateCallbackDetails(clientDetails, client);
+        return openSession(clientDetails[0].trim(), client, clientDetails.length > 3 ? clientDetails[3] : null,
+            resumeToken, lastSequence);
+    }
+    
+    @Override
+    public void ping() throws RemoteException {
+        // Reaching this method is the answer
+    }
+    
+    /**
+     * Registers an already-resolved client or resumes its session, as
+     * {@link #joinSession(String[], String, long)} does for remote clients.
+     * 
+     * @param username the username
+     * @param client the client callback reference
+     * @param features comma-separated features the client supports, or null
+     * @param resumeToken the token from the client's last session, or null to join afresh
+     * @param lastSequence sequence number of the last default room message the client received
+     * @return the session, with the token for the next reconnect
+     * @throws RemoteException if the username is already in use
+     * @throws IllegalArgumentException if the username is invalid
+     */
+    public ChatSession openSession(String username, ChatClient client, String features,
+            String resumeToken, long lastSequence) throws RemoteException {
+        validateUsername(username);
+        String name = username.trim();
+        long start = System.nanoTime();
+        
+        boolean resumed = resumeToken != null && sessions.redeem(name, resumeToken);
+        if (resumed) {
+            Chatter previous = connectedClients.get(name);
+            if (previous != null) {
+                // The old connection has not been found dead yet; this one replaces it
+                removeMember(previous);
+            }
+        }
+        ChatSession session = register(name, client, features, resumed ? Math.max(0, lastSequence) : -1);
+        metrics.recordJoin(System.nanoTime() - start);
+        return session;
+    }
+    
+    /**
+     * Looks up a client's callback in the client's RMI registry, on the
+     * default registry port unless the host names another.
+     * 
+     * @param hostname the client's registry host, optionally as {@code host:port}
+     * @param clientServiceName the name the callback is bound under
+     * @return the callback
+     * @throws Exception if the registry cannot be reached or nothing is bound
+     */
+    private static ChatClient lookupClient(String hostname, String clientServiceName) throws Exception {
+        // The client's registry, not this server's, so chat.registry.port does not apply
+        String clientUrl = "rmi://" + hostname + "/" + clientServiceName;
+        return (ChatClient) Naming.lookup(clientUrl);
+    }
+    
+    /**
+     * Adds an already-resolved client to the chat and announces it.
+     * Used by in-process clients that need no registry; remote clients go
+     * through {@link #join(String[])}, which looks up the callback first.
+     * 
+     * @param username the username
+     * @param client the client callback reference
+     * @throws RemoteException if the username is already in use
+     * @throws IllegalArgumentException if the username is invalid
+     */
+    public void addClient(String username, ChatClient client) throws RemoteException {
+        addClient(username, client, null);
+    }
+    
+    /**
+     * Adds an already-resolved client that offers optional features, as
+     * {@link #join(String[])} does for remote clients.
+     * 
+     * @param username the username
+     * @param client the client callback reference
+     * @param features comma-separated features the client supports, or null
+     * @throws RemoteException if the username is already in use
+     * @throws IllegalArgumentException if the username is invalid
+     */
+    public void addClient(String username, ChatClient client, String features) throws RemoteException {
+        validateUsername(username);
+        long start = System.nanoTime();
+        register(username, client, features, -1);
+        metrics.recordJoin(System.nanoTime() - start);
+    }
+    
+    /**
+     * Adds a client to the lobby, sends it the user list and recent history,
+     * and announces it. A resuming client is sent only the messages it
+     * missed and is not announced.
+     * 
+     * @param username the validated username
+     * @param client the client callback reference
+     * @param features comma-separated features the client supports, or null
+     * @param resumeAfter sequence number of the last message a resuming
+     *                    client received, or -1 for a new session
+     * @return the client's session, with its resume token
+     * @throws RemoteException if the username is already in use
+     */
+    private ChatSession register(String username, ChatClient client, String features, long resumeAfter)
+            throws RemoteException {
+        ClusterNode clusterNode = cluster;
+        String remoteNode = clusterNode == null ? null : clusterNode.remoteNodeOf(username);
+        if (remoteNode != null) {
+            LOGGER.warning("Attempted to join with username in use on node '" + remoteNode + "': " + username);
+            throw new RemoteException("Username '" + username + "' is already in use");
+        }
+        
+        // Add client to connected list; a concurrent join may have taken the name
+        Chatter newChatter = new Chatter(username, client, deliveryExecutor, this::deliveryFailed);
+        newChatter.getDeliveryQueue().setDeliveryLatency(metrics.getDeliveryLatency());
+        // Set before the history replay so the replay can be compressed
+        newChatter.getDeliveryQueue().setCompression(
+            ChatConstants.COMPRESSION_ENABLED && MessageCompression.isOffered(features));
+        String token;
+        long firstSequence;
+        DeferredDeliveries deferred = new DeferredDeliveries();
+        synchronized (membershipLock) {
+            boolean added;
+            if (resumeAfter < 0) {
+                firstSequence = lobby.addMember(newChatter, ChatConstants.HISTORY_REPLAY_ON_JOIN, deferred);
+                added = firstSequence >= 0;
+            } else {
+                firstSequence = resumeAfter + 1;
+                added = lobby.resumeMember(newChatter, resumeAfter, deferred);
+            }
+            if (!added) {
+                LOGGER.warning("Attempted to join with duplicate username: " + username);
+                throw new RemoteException("Username '" + username + "' is already in use");
+            }
+            // Issued under the lock so a removal cannot start the resume window first
+            token = sessions.issue(newChatter.getName());
+            if (heartbeatMonitor != null) {
+                heartbeatMonitor.register(newChatter);
+            }
+            
+            // The new client gets the full list, everyone else just the new name
+            long version = ++membershipVersion;
+            String[] members = connectedClients.getNames();
+            deferred.offer(newChatter, UserListUpdate.snapshot(version, members));
+            deferred.offerToAll(connectedClients.snapshot(),
+                UserListUpdate.joined(version, new String[] {newChatter.getName()}, members), newChatter);
+        }
+        // Clients with full queues wait here, without holding up other joins and leaves
+        for (Chatter overflowed : deferred.deliver()) {
+            evict(overflowed);
+        }
+        if (newChatter.getDeliveryQueue().isClosed()) {
+            throw new RemoteException("User '" + username + "' was removed while joining");
+        }
+        
+        if (clusterNode != null) {
+            clusterNode.publishJoin(newChatter.getName());
+        }
+        ChatSession session = new ChatSession(token, resumeAfter >= 0, firstSequence);
+        if (resumeAfter >= 0) {
+            LOGGER.info("User '" + username + "' resumed its session after message " + resumeAfter);
+            return session;
+        }
+        
+        LOGGER.info("User '" + username + "' joined the chat");
+        // Notify all clients
+        broadcastToRoom(lobby, ChatMessage.server(null, username + " has joined the chat!"));
+        return session;
+    }
+    
     @Override
     public void leaveChat(String userName) throws RemoteException {
         if (userName == null || userName.trim().isEmpty()) {
@@ -121,27 +426,11 @@ public class Chat extends UnicastRemoteObject implements Chattable {
         }
         
         String trimmedName = userName.trim();
-        boolean removed = false;
-        
-        synchronized (connectedClients) {
-            Iterator<Chatter> iterator = connectedClients.iterator();
-            while (iterator.hasNext()) {
-                Chatter chatter = iterator.next();
-                if (chatter.getName().equals(trimmedName)) {
-                    iterator.remove();
-                    removed = true;
-                    break;
-                }
-            }
-        }
+        Chatter leaving = connectedClients.get(trimmedName);
         
-        if (removed) {
+        if (leaving != null && removeMember(leaving)) {
+            sessions.discard(trimmedName);
             LOGGER.info("User '" + trimmedName + "' left the chat");
-            
-            // Update remaining clients' user lists
-            if (!connectedClients.isEmpty()) {
-                updateAllUserLists();
-            }
         } else {
             LOGGER.warning("Attempted to remove non-existent user: " + trimmedName);
         }
@@ -160,13 +449,329 @@ public class Chat extends UnicastRemoteObject implements Chattable {
         String sanitizedUsername = MessageFormatter.sanitizeInput(userName);
         String sanitizedMessage = MessageFormatter.sanitizeInput(chatMessage);
         
-        // Format message with timestamp
-        String formattedMessage = MessageFormatter.formatChatMessage(sanitizedUsername, sanitizedMessage);
+        long start = System.nanoTime();
         LOGGER.fine("Broadcasting message from " + sanitizedUsername);
-        broadcastMessage(formattedMessage);
+        broadcastToRoom(lobby, ChatMessage.chat(sanitizedUsername, null, sanitizedMessage));
+        metrics.recordChatMessage(System.nanoTime() - start);
+    }
+    
+    @Override
+    public void updateRoomChat(String userName, String roomName, String chatMessage) throws RemoteException {
+        if (userName == null || userName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        if (chatMessage == null || chatMessage.trim().isEmpty()) {
+            throw new IllegalArgumentException("Chat message cannot be null or empty");
+        }
+        
+        String owner = remoteOwnerOf(roomName);
+        if (owner != null) {
+            cluster.updateRoomChatAt(owner, userName.trim(), roomName.trim(), chatMessage);
+            return;
+        }
+        sendToRoom(requireRoom(roomName), userName, chatMessage);
+    }
+    
+    /**
+     * Sends a member's message to a room hosted here.
+     * 
+     * @param room the room
+     * @param userName the username of the sender, who must be a member
+     * @param chatMessage the message content
+     * @throws RemoteException if the sender is not a member
+     */
+    private void sendToRoom(Room room, String userName, String chatMessage) throws RemoteException {
+        String sanitizedUsername = MessageFormatter.sanitizeInput(userName);
+        if (!room.hasMember(sanitizedUsername)) {
+            throw new RemoteException("User '" + sanitizedUsername + "' is not in room '" + room.getName() + "'");
+        }
+        
+        long start = System.nanoTime();
+        LOGGER.fine("Broadcasting message from " + sanitizedUsername + " to " + room.getName());
+        broadcastToRoom(room, ChatMessage.chat(sanitizedUsername, room.getName(),
+            MessageFormatter.sanitizeInput(chatMessage)));
+        metrics.recordChatMessage(System.nanoTime() - start);
+    }
+    
+    @Override
+    public long joinRoom(String userName, String roomName) throws RemoteException {
+        Chatter chatter = requireConnected(userName);
+        if (roomName == null || !MessageFormatter.isValidRoomName(roomName)) {
+            throw new IllegalArgumentException(
+                "Invalid room name. Room names must be 3-20 characters and contain only letters, numbers, underscores, and hyphens.");
+        }
+        
+        String name = roomName.trim();
+        String owner = remoteOwnerOf(name);
+        if (owner != null) {
+            // The owner hands the room's messages back here for this client
+            long firstSequence = cluster.joinRoomAt(owner, chatter.getName(), name);
+            chatter.getRoomNames().add(roomKey(name));
+            return firstSequence;
+        }
+        return addToRoom(chatter, name);
+    }
+    
+    /**
+     * Adds a client to a room hosted here, creating the room if needed,
+     * replays its recent messages and tells its members.
+     * 
+     * @param chatter the client, connected here or to another cluster node
+     * @param name the valid, trimmed room name
+     * @return sequence number of the first message of the room the client
+     *         is sent, or 0 if it was already a member
+     * @throws RemoteException if another cluster node hosts the room
+     */
+    private long addToRoom(Chatter chatter, String name) throws RemoteException {
+        requireHostedHere(name);
+        String key = roomKey(name);
+        long[] firstSequence = {-1};
+        DeferredDeliveries deferred = new DeferredDeliveries();
+        Room room = rooms.compute(key, (k, existing) -> {
+            Room target = existing != null ? existing : new Room(name);
+            firstSequence[0] = target.addMember(chatter, ChatConstants.HISTORY_REPLAY_ON_JOIN, deferred);
+            return target;
+        });
+        boolean added = firstSequence[0] >= 0;
+        
+        if (added && room != lobby) {
+            chatter.getRoomNames().add(key);
+        }
+        // A full queue waits for the replay here, outside the map's lock
+        for (Chatter overflowed : deferred.deliver()) {
+            evict(overflowed);
+        }
+        if (added && room != lobby && !chatter.getDeliveryQueue().isClosed()) {
+            LOGGER.info("User '" + chatter.getName() + "' joined room '" + room.getName() + "'");
+            broadcastToRoom(room, ChatMessage.server(room.getName(), chatter.getName() + " has joined the room"));
+        }
+        return added ? firstSequence[0] : 0;
+    }
+    
+    @Override
+    public void leaveRoom(String userName, String roomName) throws RemoteException {
+        Chatter chatter = requireConnected(userName);
+        String owner = remoteOwnerOf(roomName);
+        if (owner != null) {
+            cluster.leaveRoomAt(owner, chatter.getName(), roomName.trim());
+            chatter.getRoomNames().remove(roomKey(roomName));
+            LOGGER.info("User '" + chatter.getName() + "' left room '" + roomName.trim() + "' on node '" + owner + "'");
+            return;
+        }
+        Room room = requireRoom(roomName);
+        if (room == lobby) {
+            throw new IllegalArgumentException("Cannot leave the default room");
+        }
+        
+        if (removeFromRoom(chatter, room)) {
+            LOGGER.info("User '" + chatter.getName() + "' left room '" + room.getName() + "'");
+        }
+    }
+    
+    @Override
+    public String[] listRooms() throws RemoteException {
+        String[] names = rooms.values().stream().map(Room::getName).toArray(String[]::new);
+        Arrays.sort(names, String.CASE_INSENSITIVE_ORDER);
+        return names;
+    }
+    
+    @Override
+    public String locateRoom(String roomName) throws RemoteException {
+        String owner = remoteOwnerOf(roomName);
+        return owner == null ? null : cluster.addressOf(owner);
+    }
+    
+    /**
+     * Finds the cluster node that hosts a named room, if not this server.
+     * 
+     * @param roomName the room name (case-insensitive)
+     * @return the owning node id, or null if this server hosts the room
+     * @throws IllegalArgumentException if roomName is null or empty
+     */
+    private String remoteOwnerOf(String roomName) {
+        if (roomName == null || roomName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Room name cannot be null or empty");
+        }
+        ClusterNode clusterNode = cluster;
+        if (clusterNode == null || roomKey(roomName).equals(roomKey(lobby.getName()))) {
+            return null;
+        }
+        String owner = clusterNode.ownerOf(roomName);
+        return owner.equals(clusterNode.getNodeId()) ? null : owner;
+    }
+    
+    @Override
+    public String[] getRoomMembers(String roomName) throws RemoteException {
+        String owner = remoteOwnerOf(roomName);
+        return owner != null ? cluster.getRoomMembersAt(owner, roomName.trim()) : getHostedRoomMembers(roomName);
+    }
+    
+    @Override
+    public HistoryPage fetchHistory(String userName, String roomName, long beforeSeq, int limit)
+            throws RemoteException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("History limit must be positive");
+        }
+        Chatter chatter = requireConnected(userName);
+        String owner = remoteOwnerOf(roomName);
+        HistoryPage page = owner != null
+            ? cluster.fetchHistoryAt(owner, chatter.getName(), roomName.trim(), beforeSeq, limit)
+            : readHistory(chatter, requireRoom(roomName), beforeSeq, limit);
+        return chatter.getDeliveryQueue().isCompression() ? page.compressedOnWire() : page;
+    }
+    
+    /**
+     * Reads a page of a room's history for one of its members.
+     * 
+     * @param chatter the member
+     * @param room the room, hosted here
+     * @param beforeSeq only messages numbered below this; 0 or less for the newest
+     * @param limit the maximum number of messages; larger requests are capped
+     * @return the page, oldest message first
+     * @throws RemoteException if the client is not a member
+     */
+    private HistoryPage readHistory(Chatter chatter, Room room, long beforeSeq, int limit) throws RemoteException {
+        requireMember(chatter, room);
+        return room.getHistory(beforeSeq > 0 ? beforeSeq : Long.MAX_VALUE,
+            Math.min(limit, ChatConstants.MAX_HISTORY_PAGE));
+    }
+    
+    @Override
+    public HistoryPage resend(String userName, String roomName, long fromSeq) throws RemoteException {
+        if (fromSeq <= 0) {
+            throw new IllegalArgumentException("Sequence number must be positive");
+        }
+        Chatter chatter = requireConnected(userName);
+        String owner = remoteOwnerOf(roomName);
+        HistoryPage page = owner != null
+            ? cluster.resendAt(owner, chatter.getName(), roomName.trim(), fromSeq)
+            : readFrom(chatter, requireRoom(roomName), fromSeq);
+        return chatter.getDeliveryQueue().isCompression() ? page.compressedOnWire() : page;
+    }
+    
+    /**
+     * Reads a room's messages from a sequence number on, for one of its members.
+     * 
+     * @param chatter the member
+     * @param room the room, hosted here
+     * @param fromSeq the first sequence number wanted
+     * @return the page, oldest message first
+     * @throws RemoteException if the client is not a member
+     */
+    private HistoryPage readFrom(Chatter chatter, Room room, long fromSeq) throws RemoteException {
+        requireMember(chatter, room);
+        metrics.recordResend();
+        return room.getHistoryFrom(fromSeq, ChatConstants.MAX_HISTORY_PAGE);
+    }
+    
+    /**
+     * Checks that a client is a member of a room.
+     * 
+     * @param chatter the client
+     * @param room the room
+     * @throws RemoteException if it is not
+     */
+    private static void requireMember(Chatter chatter, Room room) throws RemoteException {
+        if (!room.hasMember(chatter.getName())) {
+            throw new RemoteException("User '" + chatter.getName() + "' is not in room '" + room.getName() + "'");
+        }
     }
     
     @Override
+    public void sendPrivateMessage(String senderName, String[] recipientNames, String message)
+            throws RemoteException {
+        if (senderName == null || senderName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Sender name cannot be null or empty");
+        }
+        if (recipientNames == null || recipientNames.length == 0) {
+            throw new IllegalArgumentException("Recipient names cannot be null or empty");
+        }
+        if (message == null || message.trim().isEmpty()) {
+            throw new IllegalArgumentException("Private message cannot be null or empty");
+        }
+        
+        // Recipients are shown the sender as the server names it, so it must be someone connected here
+        Chatter sender = requireConnected(senderName);
+        
+        long start = System.nanoTime();
+        String sanitizedMessage = MessageFormatter.sanitizeInput(message);
+        ChatMessage privateMessage = ChatMessage.privateMessage(sender.getName(), sanitizedMessage);
+        
+        List<Chatter> recipients = new ArrayList<>(recipientNames.length);
+        List<String> offline = new ArrayList<>();
+        for (String recipientName : recipientNames) {
+            Chatter recipient = recipientName == null ? null : connectedClients.get(recipientName);
+            if (recipient != null) {
+                recipients.add(recipient);
+            } else {
+                offline.add(recipientName);
+            }
+        }
+        
+        record(privateMessage, recipientChannel(recipients));
+        deliverPrivately(recipients, privateMessage);
+        ClusterNode clusterNode = cluster;
+        if (clusterNode != null && !offline.isEmpty()) {
+            offline = clusterNode.forwardPrivateMessage(sender.getName(), offline, sanitizedMessage);
+        }
+        metrics.recordPrivateMessage(System.nanoTime() - start);
+        
+        // Let the sender know who missed the message
+        if (!offline.isEmpty()) {
+            LOGGER.fine("Private message recipients not connected: " + offline);
+            deliverPrivately(List.of(sender), ChatMessage.server(null,
+                "Not delivered to " + String.join(", ", offline) + " (not online)"));
+        }
+    }
+    
+    /**
+     * Delivers a private message that another cluster node forwarded for
+     * recipients connected here.
+     * 
+     * @param senderName the username of the sender, connected to the other node
+     * @param recipientNames usernames of the recipients (case-insensitive)
+     * @param message the private message content
+     * @return the recipients not connected here
+     * @throws IllegalArgumentException if any argument is null or empty
+     */
+    String[] deliverForwardedPrivateMessage(String senderName, String[] recipientNames, String message) {
+        if (senderName == null || senderName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Sender name cannot be null or empty");
+        }
+        if (recipientNames == null || recipientNames.length == 0) {
+            throw new IllegalArgumentException("Recipient names cannot be null or empty");
+        }
+        if (message == null || message.trim().isEmpty()) {
+            throw new IllegalArgumentException("Private message cannot be null or empty");
+        }
+        
+        long start = System.nanoTime();
+        ChatMessage privateMessage = ChatMessage.privateMessage(
+            MessageFormatter.sanitizeInput(senderName), MessageFormatter.sanitizeInput(message));
+        List<Chatter> recipients = new ArrayList<>(recipientNames.length);
+        List<String> offline = new ArrayList<>();
+        for (String recipientName : recipientNames) {
+            Chatter recipient = recipientName == null ? null : connectedClients.get(recipientName);
+            if (recipient != null) {
+                recipients.add(recipient);
+            } else {
+                offline.add(recipientName);
+            }
+        }
+        
+        record(privateMessage, recipientChannel(recipients));
+        deliverPrivately(recipients, privateMessage);
+        metrics.recordPrivateMessage(System.nanoTime() - start);
+        return offline.toArray(new String[0]);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * Recipients are resolved against the current user list order, which
+     * may have changed since the client displayed it.
+     */
+    @Override
+    @Deprecated
     public void sendPM(int[] recipientIndices, String privateMessage) throws RemoteException {
         if (recipientIndices == null || recipientIndices.length == 0) {
             throw new IllegalArgumentException("Recipient indices cannot be null or empty");
@@ -176,92 +781,297 @@ public class Chat extends UnicastRemoteObject implements Chattable {
         }
         
         // Sanitize the private message
+        long start = System.nanoTime();
         String sanitizedMessage = MessageFormatter.sanitizeInput(privateMessage);
         
-        synchronized (connectedClients) {
-            for (int index : recipientIndices) {
-                if (index < 0 || index >= connectedClients.size()) {
-                    LOGGER.warning("Invalid recipient index: " + index);
-                    continue;
-                }
-                
-                try {
-                    Chatter recipient = connectedClients.get(index);
-                    recipient.getClient().messageFromServer(sanitizedMessage);
-                    LOGGER.fine("Sent private message to: " + recipient.getName());
-                } catch (RemoteException e) {
-                    LOGGER.log(Level.WARNING, "Failed to send PM to index " + index, e);
-                    // Continue sending to other recipients
-                }
+        Chatter[] snapshot = connectedClients.snapshot();
+        List<Chatter> recipients = new ArrayList<>(recipientIndices.length);
+        for (int index : recipientIndices) {
+            if (index < 0 || index >= snapshot.length) {
+                LOGGER.warning("Invalid recipient index: " + index);
+                continue;
             }
+            recipients.add(snapshot[index]);
         }
+        
+        ChatMessage message = ChatMessage.privateMessage(null, sanitizedMessage);
+        record(message, recipientChannel(recipients));
+        deliverPrivately(recipients, message);
+        metrics.recordPrivateMessage(System.nanoTime() - start);
     }
     
     /**
-     * Broadcasts a message to all connected clients.
+     * Queues a private message for each recipient and evicts any client
+     * whose queue rejects it.
      * 
-     * @param message the message to broadcast
+     * @param recipients the clients to deliver to
+     * @param message the message
      */
-    private void broadcastMessage(String message) {
-        List<Chatter> clientsToRemove = new ArrayList<>();
+    private void deliverPrivately(List<Chatter> recipients, ChatMessage message) {
+        DeliveryQueue.Delivery delivery = new DeliveryQueue.MessageDelivery(message);
+        List<Chatter> overflowed = new ArrayList<>();
         
-        synchronized (connectedClients) {
-            for (Chatter chatter : connectedClients) {
-                try {
-                    chatter.getClient().messageFromServer(message);
-                } catch (RemoteException e) {
-                    LOGGER.log(Level.WARNING, "Failed to send message to " + chatter.getName() + 
-                              " - removing from list", e);
-                    clientsToRemove.add(chatter);
-                }
+        for (Chatter recipient : recipients) {
+            if (recipient.deliver(delivery)) {
+                LOGGER.fine("Queued private message for: " + recipient.getName());
+            } else {
+                overflowed.add(recipient);
             }
-            
-            // Remove disconnected clients
-            connectedClients.removeAll(clientsToRemove);
         }
         
-        // Update user lists if clients were removed
-        if (!clientsToRemove.isEmpty() && !connectedClients.isEmpty()) {
-            updateAllUserLists();
+        for (Chatter chatter : overflowed) {
+            evict(chatter);
+        }
+    }
+    
+    /**
+     * Logs a message, adds it to the room's history and queues it for every member.
+     * 
+     * @param room the room to broadcast to
+     * @param message the message
+     */
+    private void broadcastToRoom(Room room, ChatMessage message) {
+        record(message, room.getName());
+        for (Chatter chatter : room.publish(message)) {
+            if (room != lobby) {
+                room.removeMember(chatter);
+            }
+            evict(chatter);
         }
     }
     
     /**
-     * Updates the user list for all connected clients.
+     * Removes a client from a named room, dropping the room once it is empty,
+     * and tells the remaining members.
+     * 
+     * @param chatter the client leaving
+     * @param room the room to leave
+     * @return true if the client was a member
      */
-    private void updateAllUserLists() {
-        String[] currentUsers = getUserList();
+    private boolean removeFromRoom(Chatter chatter, Room room) {
+        String key = roomKey(room.getName());
+        boolean[] removed = {false};
+        rooms.computeIfPresent(key, (k, existing) -> {
+            removed[0] = existing.removeMember(chatter);
+            return existing.isEmpty() ? null : existing;
+        });
+        chatter.getRoomNames().remove(key);
         
-        synchronized (connectedClients) {
-            List<Chatter> clientsToRemove = new ArrayList<>();
-            
-            for (Chatter chatter : connectedClients) {
-                try {
-                    chatter.getClient().updateUserList(currentUsers);
-                } catch (RemoteException e) {
-                    LOGGER.log(Level.WARNING, "Failed to update user list for " + chatter.getName(), e);
-                    clientsToRemove.add(chatter);
-                }
+        if (removed[0] && !room.isEmpty()) {
+            broadcastToRoom(room, ChatMessage.server(room.getName(), chatter.getName() + " has left the room"));
+        }
+        return removed[0];
+    }
+    
+    /**
+     * Looks up a connected client.
+     * 
+     * @param userName the username
+     * @return the client
+     * @throws RemoteException if the user is not connected
+     */
+    private Chatter requireConnected(String userName) throws RemoteException {
+        if (userName == null || userName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        Chatter chatter = connectedClients.get(userName);
+        if (chatter == null) {
+            throw new RemoteException("User '" + userName.trim() + "' is not connected");
+        }
+        return chatter;
+    }
+    
+    /**
+     * Looks up an existing room.
+     * 
+     * @param roomName the room name (case-insensitive)
+     * @return the room
+     * @throws RemoteException if no such room exists
+     */
+    private Room requireRoom(String roomName) throws RemoteException {
+        if (roomName == null || roomName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Room name cannot be null or empty");
+        }
+        Room room = rooms.get(roomKey(roomName));
+        if (room == null) {
+            requireHostedHere(roomName);
+            throw new RemoteException("Room '" + roomName.trim() + "' does not exist");
+        }
+        return room;
+    }
+    
+    /**
+     * Checks that this server hosts a named room.
+     * 
+     * @param roomName the room name
+     * @throws RemoteException if another cluster node hosts the room
+     */
+    private void requireHostedHere(String roomName) throws RemoteException {
+        String location = locateRoom(roomName);
+        if (location != null) {
+            throw new RemoteException("Room '" + roomName.trim() + "' is hosted by the server at " + location);
+        }
+    }
+    
+    private static String roomKey(String roomName) {
+        return roomName.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    private static String userKey(String userName) {
+        return userName.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Fills the default room's history with its latest logged messages.
+     * Named rooms are dropped once empty, so only the default room's history
+     * outlives the members who saw it.
+     * 
+     * @param log the message log
+     */
+    private void restoreLobbyHistory(MessageLog log) {
+        try {
+            List<ChatMessage> messages = new ArrayList<>();
+            for (MessageLog.Record record : log.readRecent(lobby.getName(), ChatConstants.ROOM_HISTORY_CAPACITY)) {
+                ChatMessage.Kind kind = record.getKind() == MessageLog.Kind.SERVER
+                    ? ChatMessage.Kind.SERVER : ChatMessage.Kind.CHAT;
+                messages.add(new ChatMessage(0, record.getTimestamp(), kind, record.getSender(), null,
+                    record.getText()));
             }
-            
-            // Remove disconnected clients
-            connectedClients.removeAll(clientsToRemove);
+            lobby.restoreHistory(messages);
+            LOGGER.info("Restored " + messages.size() + " messages of history from the message log");
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to restore history from the message log", e);
         }
     }
     
     /**
-     * Gets an array of all currently connected usernames.
+     * Appends an event to the message log, if persistence is enabled.
+     * The log record carries its own time.
      * 
-     * @return array of usernames
+     * @param message the message
+     * @param channel the room name or private message recipients
      */
-    private String[] getUserList() {
-        synchronized (connectedClients) {
-            String[] userList = new String[connectedClients.size()];
-            for (int i = 0; i < connectedClients.size(); i++) {
-                userList[i] = connectedClients.get(i).getName();
+    private void record(ChatMessage message, String channel) {
+        if (messageLog == null) {
+            return;
+        }
+        MessageLog.Kind kind;
+        switch (message.getKind()) {
+            case SERVER:
+                kind = MessageLog.Kind.SERVER;
+                break;
+            case PRIVATE:
+                kind = MessageLog.Kind.PRIVATE;
+                break;
+            default:
+                kind = MessageLog.Kind.CHAT;
+        }
+        messageLog.append(kind, channel, message.getSender(), message.getText());
+    }
+    
+    /**
+     * Describes the recipients of a private message for the message log.
+     * 
+     * @param recipients the recipients
+     * @return the recipient names prefixed with '@'
+     */
+    private static String recipientChannel(List<Chatter> recipients) {
+        StringBuilder channel = new StringBuilder();
+        for (Chatter recipient : recipients) {
+            if (channel.length() > 0) {
+                channel.append(',');
             }
-            return userList;
+            channel.append('@').append(recipient.getName());
         }
+        return channel.toString();
+    }
+    
+    @Override
+    public void requestUserList(String userName) throws RemoteException {
+        if (userName == null || userName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        
+        Chatter chatter = connectedClients.get(userName);
+        if (chatter == null) {
+            throw new RemoteException("User '" + userName.trim() + "' is not connected");
+        }
+        
+        // Queued under the lock so it keeps its place among the deltas, unless that would wait
+        DeferredDeliveries deferred = new DeferredDeliveries();
+        synchronized (membershipLock) {
+            deferred.offer(chatter, UserListUpdate.snapshot(membershipVersion, connectedClients.getNames()));
+        }
+        for (Chatter overflowed : deferred.deliver()) {
+            evict(overflowed);
+        }
+    }
+    
+    /**
+     * Removes a client and sends the remaining clients a user list delta.
+     * 
+     * @param chatter the client to remove
+     * @return true if the client was connected
+     */
+    private boolean removeMember(Chatter chatter) {
+        DeferredDeliveries deferred = new DeferredDeliveries();
+        synchronized (membershipLock) {
+            chatter.getDeliveryQueue().close();
+            if (!connectedClients.remove(chatter)) {
+                return false;
+            }
+            sessions.disconnected(chatter.getName());
+            if (heartbeatMonitor != null) {
+                heartbeatMonitor.unregister(chatter);
+            }
+            long version = ++membershipVersion;
+            deferred.offerToAll(connectedClients.snapshot(), UserListUpdate.left(version,
+                new String[] {chatter.getName()}, connectedClients.getNames()), null);
+            ClusterNode clusterNode = cluster;
+            if (clusterNode != null) {
+                clusterNode.publishLeave(chatter.getName());
+            }
+        }
+        
+        // Leaving rooms tells their members, so it is done outside the lock
+        for (String key : chatter.getRoomNames().toArray(new String[0])) {
+            Room room = rooms.get(key);
+            if (room != null) {
+                removeFromRoom(chatter, room);
+            }
+        }
+        for (Chatter overflowed : deferred.deliver()) {
+            evict(overflowed);
+        }
+        return true;
+    }
+    
+    /**
+     * Removes a client whose delivery failed or overflowed and tells the
+     * remaining clients. Safe to call more than once for the same client.
+     * 
+     * @param chatter the client to remove
+     */
+    private void evict(Chatter chatter) {
+        if (chatter.getClient() instanceof RemoteMemberClient) {
+            dropRemoteMember(chatter);
+            return;
+        }
+        if (removeMember(chatter)) {
+            metrics.recordEviction();
+            LOGGER.warning("Removed unresponsive client " + chatter.getName() + 
+                          " (dropped " + chatter.getDeliveryQueue().getDroppedCount() + " deliveries)");
+        }
+    }
+    
+    /**
+     * Handles a callback that failed with a RemoteException.
+     * 
+     * @param chatter the client whose delivery failed
+     */
+    private void deliveryFailed(Chatter chatter) {
+        metrics.recordDeliveryFailure();
+        evict(chatter);
     }
     
     /**
@@ -271,9 +1081,22 @@ public class Chat extends UnicastRemoteObject implements Chattable {
      * @return true if the user is connected, false otherwise
      */
     private boolean isUserConnected(String username) {
-        synchronized (connectedClients) {
-            return connectedClients.stream()
-                    .anyMatch(chatter -> chatter.getName().equalsIgnoreCase(username));
+        return connectedClients.contains(username);
+    }
+    
+    /**
+     * Validates a username.
+     * 
+     * @param username the username to validate
+     * @throws IllegalArgumentException if validation fails
+     */
+    private void validateUsername(String username) {
+        if (username == null || username.trim().isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        if (!MessageFormatter.isValidUsername(username)) {
+            throw new IllegalArgumentException(
+                "Invalid username format. Username must be 3-20 characters and contain only letters, numbers, underscores, and hyphens.");
         }
     }
     
@@ -290,16 +1113,7 @@ public class Chat extends UnicastRemoteObject implements Chattable {
         if (clientDetails.length < 3) {
             throw new IllegalArgumentException("Client details must contain at least 3 elements");
         }
-        if (clientDetails[0] == null || clientDetails[0].trim().isEmpty()) {
-            throw new IllegalArgumentException("Username cannot be null or empty");
-        }
-        
-        // Validate username format
-        String username = clientDetails[0].trim();
-        if (!MessageFormatter.isValidUsername(username)) {
-            throw new IllegalArgumentException(
-                "Invalid username format. Username must be 3-20 characters and contain only letters, numbers, underscores, and hyphens.");
-        }
+        validateUsername(clientDetails[0]);
         
         if (clientDetails[1] == null || clientDetails[1].trim().isEmpty()) {
             throw new IllegalArgumentException("Hostname cannot be null or empty");
@@ -309,6 +1123,273 @@ public class Chat extends UnicastRemoteObject implements Chattable {
         }
     }
     
+    /**
+     * Validates the details of a client that passes its callback directly.
+     * 
+     * @param clientDetails the client details to validate
+     * @param client the client's callback
+     * @throws IllegalArgumentException if validation fails
+     */
+    private void validateCallbackDetails(String[] clientDetails, ChatClient client) {
+        if (clientDetails == null || clientDetails.length < 1) {
+            throw new IllegalArgumentException("Client details must contain a username");
+        }
+        if (client == null) {
+            throw new IllegalArgumentException("Client callback cannot be null");
+        }
+        validateUsername(clientDetails[0]);
+    }
+    
+    /**
+     * Adds a user connected to another cluster node to a room hosted here.
+     * 
+     * @param nodeId the id of the user's node
+     * @param userName the username
+     * @param roomName the room name
+     * @return as {@link #joinRoom(String, String)}
+     * @throws RemoteException if this server does not host the room
+     * @throws IllegalArgumentException if a name is invalid or the room is the default room
+     */
+    long joinRoomFrom(String nodeId, String userName, String roomName) throws RemoteException {
+        if (userName == null || userName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        if (roomName == null || !MessageFormatter.isValidRoomName(roomName)) {
+            throw new IllegalArgumentException(
+                "Invalid room name. Room names must be 3-20 characters and contain only letters, numbers, underscores, and hyphens.");
+        }
+        if (roomKey(roomName).equals(roomKey(lobby.getName()))) {
+            throw new IllegalArgumentException("Each server has its own default room");
+        }
+        ClusterNode clusterNode = cluster;
+        if (clusterNode == null) {
+            throw new RemoteException("This server is not part of a cluster");
+        }
+        
+        String name = userName.trim();
+        String key = userKey(name);
+        Chatter member = remoteMembers.get(key);
+        if (member != null && (!homeNodeOf(member).equals(nodeId) || member.getDeliveryQueue().isClosed())) {
+            // The user has moved to another node since
+            dropRemoteMember(member);
+            member = null;
+        }
+        if (member == null) {
+            Chatter created = new Chatter(name, new RemoteMemberClient(clusterNode, nodeId, name),
+                deliveryExecutor, this::deliveryFailed);
+            member = remoteMembers.putIfAbsent(key, created);
+            if (member == null) {
+                member = created;
+            }
+        }
+        return addToRoom(member, roomName.trim());
+    }
+    
+    /**
+     * Removes a user connected to another cluster node from a room hosted
+     * here, forgetting the user once it is in no room here.
+     * 
+     * @param nodeId the id of the user's node
+     * @param userName the username
+     * @param roomName the room name
+     * @throws RemoteException if the user is in no room here or the room does not exist
+     */
+    void leaveRoomFrom(String nodeId, String userName, String roomName) throws RemoteException {
+        Chatter member = requireRemoteMember(nodeId, userName);
+        Room room = requireRoom(roomName);
+        if (room != lobby && removeFromRoom(member, room)) {
+            LOGGER.info("User '" + member.getName() + "' on node '" + nodeId + "' left room '" + room.getName() + "'");
+        }
+        if (member.getRoomNames().isEmpty()) {
+            dropRemoteMember(member);
+        }
+    }
+    
+    /**
+     * Sends a message from a user connected to another cluster node to a room hosted here.
+     * 
+     * @param nodeId the id of the sender's node
+     * @param userName the username of the sender, who must be a member
+     * @param roomName the room name
+     * @param chatMessage the message content
+     * @throws RemoteException if the room does not exist or the sender is not a member
+     * @throws IllegalArgumentException if the message is null or empty
+     */
+    void updateRoomChatFrom(String nodeId, String userName, String roomName, String chatMessage)
+            throws RemoteException {
+        if (chatMessage == null || chatMessage.trim().isEmpty()) {
+            throw new IllegalArgumentException("Chat message cannot be null or empty");
+        }
+        Chatter member = requireRemoteMember(nodeId, userName);
+        sendToRoom(requireRoom(roomName), member.getName(), chatMessage);
+    }
+    
+    /**
+     * Lists the members of a room hosted here.
+     * 
+     * @param roomName the room name
+     * @return member usernames in join order
+     * @throws RemoteException if the room does not exist or is hosted elsewhere
+     */
+    String[] getHostedRoomMembers(String roomName) throws RemoteException {
+        return requireRoom(roomName).getMemberNames();
+    }
+    
+    /**
+     * Reads a page of a hosted room's history for a member on another cluster node.
+     * 
+     * @param nodeId the id of the member's node
+     * @param userName the member's username
+     * @param roomName the room name
+     * @param beforeSeq only messages numbered below this; 0 or less for the newest
+     * @param limit the maximum number of messages
+     * @return the page, oldest message first
+     * @throws RemoteException if the room does not exist or the user is not a member
+     */
+    HistoryPage fetchHistoryFrom(String nodeId, String userName, String roomName, long beforeSeq, int limit)
+            throws RemoteException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("History limit must be positive");
+        }
+        return readHistory(requireRemoteMember(nodeId, userName), requireRoom(roomName), beforeSeq, limit);
+    }
+    
+    /**
+     * Reads a hosted room's messages again for a member on another cluster node.
+     * 
+     * @param nodeId the id of the member's node
+     * @param userName the member's username
+     * @param roomName the room name
+     * @param fromSeq the first sequence number wanted
+     * @return the page, oldest message first
+     * @throws RemoteException if the room does not exist or the user is not a member
+     */
+    HistoryPage resendFrom(String nodeId, String userName, String roomName, long fromSeq) throws RemoteException {
+        if (fromSeq <= 0) {
+            throw new IllegalArgumentException("Sequence number must be positive");
+        }
+        return readFrom(requireRemoteMember(nodeId, userName), requireRoom(roomName), fromSeq);
+    }
+    
+    /**
+     * Queues messages of a room hosted on another cluster node for a client
+     * connected here, evicting the client if its queue rejects them.
+     * 
+     * @param userName the client's username
+     * @param encodedBatch the messages in {@link MessageBatch} encoding
+     * @return false if the client is not connected here, has left the room
+     *         or was evicted, so the hosting node should drop it
+     * @throws IllegalArgumentException if the batch is malformed
+     */
+    boolean deliverRoomMessages(String userName, byte[] encodedBatch) {
+        Chatter chatter = userName == null ? null : connectedClients.get(userName);
+        if (chatter == null) {
+            return false;
+        }
+        MessageBatch messages = MessageBatch.decode(encodedBatch);
+        if (messages.isEmpty()) {
+            return true;
+        }
+        String room = messages.get(0).getRoom();
+        if (room == null || !chatter.getRoomNames().contains(roomKey(room))) {
+            return false;
+        }
+        if (chatter.deliver(new DeliveryQueue.BatchDelivery(messages))) {
+            return true;
+        }
+        evict(chatter);
+        return false;
+    }
+    
+    /**
+     * Forgets a user connected to another cluster node that left it,
+     * removing it from every room hosted here.
+     * 
+     * @param nodeId the id of the node the user left
+     * @param userName the username
+     */
+    void dropRemoteMember(String nodeId, String userName) {
+        Chatter member = remoteMembers.get(userKey(userName));
+        if (member != null && homeNodeOf(member).equals(nodeId)) {
+            dropRemoteMember(member);
+        }
+    }
+    
+    /**
+     * Forgets every user connected to a cluster node that restarted or
+     * cannot be reached, removing them from the rooms hosted here.
+     * 
+     * @param nodeId the node id
+     */
+    void dropRemoteMembers(String nodeId) {
+        for (Chatter member : remoteMembers.values()) {
+            if (homeNodeOf(member).equals(nodeId)) {
+                dropRemoteMember(member);
+            }
+        }
+    }
+    
+    /**
+     * Stops delivering to a member on another cluster node and removes it
+     * from its rooms here. Safe to call more than once.
+     * 
+     * @param member the member
+     */
+    private void dropRemoteMember(Chatter member) {
+        member.getDeliveryQueue().close();
+        if (!remoteMembers.remove(userKey(member.getName()), member)) {
+            return;
+        }
+        for (String key : member.getRoomNames().toArray(new String[0])) {
+            Room room = rooms.get(key);
+            if (room != null) {
+                removeFromRoom(member, room);
+            }
+        }
+        LOGGER.info("Dropped room member '" + member.getName() + "' of node '" + homeNodeOf(member) + "'");
+    }
+    
+    /**
+     * Looks up a member of rooms hosted here that is connected to another cluster node.
+     * 
+     * @param nodeId the id of the member's node
+     * @param userName the username
+     * @return the member
+     * @throws RemoteException if the user is in no room here
+     */
+    private Chatter requireRemoteMember(String nodeId, String userName) throws RemoteException {
+        if (userName == null || userName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        Chatter member = remoteMembers.get(userKey(userName));
+        if (member == null || !homeNodeOf(member).equals(nodeId)) {
+            throw new RemoteException("User '" + userName.trim() + "' is in no room on this server");
+        }
+        return member;
+    }
+    
+    private static String homeNodeOf(Chatter member) {
+        return ((RemoteMemberClient) member.getClient()).getNodeId();
+    }
+    
+    /**
+     * Makes this server a node of a cluster. Set before clients join.
+     * 
+     * @param cluster this server's cluster membership
+     */
+    void setCluster(ClusterNode cluster) {
+        this.cluster = cluster;
+    }
+    
+    /**
+     * Gets the names of the clients connected to this server.
+     * 
+     * @return the usernames in join order
+     */
+    String[] getLocalUserNames() {
+        return connectedClients.getNames();
+    }
+    
     /**
      * Gets the number of currently connected clients.
      * 
@@ -317,4 +1398,120 @@ public class Chat extends UnicastRemoteObject implements Chattable {
     public int getConnectedClientCount() {
         return connectedClients.size();
     }
+    
+    /**
+     * Gets the server's counters and latency histograms.
+     * 
+     * @return the metrics
+     */
+    public ChatMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Removes a client if the username still belongs to the given callback,
+     * for transports that notice a disconnect before the server does.
+     * 
+     * @param username the username
+     * @param client the callback the username was registered with
+     * @return true if the client was removed
+     */
+    public boolean disconnectClient(String username, ChatClient client) {
+        Chatter chatter = connectedClients.get(username);
+        if (chatter == null || chatter.getClient() != client) {
+            return false;
+        }
+        return removeMember(chatter);
+    }
+    
+    /**
+     * Stops the server's background work. Called when the server shuts down.
+     */
+    public void shutdown() {
+        if (heartbeatMonitor != null) {
+            heartbeatMonitor.stop();
+        }
+    }
+    
+    /**
+     * Gets the number of clients that have missed a heartbeat and not answered since.
+     * 
+     * @return the suspect count, or 0 if heartbeats are disabled
+     */
+    public int getSuspectClientCount() {
+        return heartbeatMonitor == null ? 0 : heartbeatMonitor.getSuspectCount();
+    }
+    
+    /**
+     * Gets the number of clients whose delivery is degraded because their
+     * callbacks are slow.
+     * 
+     * @return the degraded client count
+     */
+    public int getDegradedClientCount() {
+        int count = 0;
+        for (Chatter chatter : connectedClients.snapshot()) {
+            if (chatter.getDeliveryQueue().getCircuitBreaker().isOpen()) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Sets the overflow policy for a connected client's delivery queue.
+     * 
+     * @param username the client's username
+     * @param policy the overflow policy to apply
+     * @return true if the client was found
+     */
+    public boolean setOverflowPolicy(String username, DeliveryQueue.OverflowPolicy policy) {
+        Chatter chatter = connectedClients.get(username);
+        if (chatter == null) {
+            return false;
+        }
+        chatter.getDeliveryQueue().setOverflowPolicy(policy);
+        return true;
+    }
+    
+    /**
+     * Gets the total number of deliveries waiting across all clients.
+     * 
+     * @return the summed queue depth
+     */
+    public long getPendingDeliveryCount() {
+        long depth = 0;
+        for (Chatter chatter : connectedClients.snapshot()) {
+            depth += chatter.getDeliveryQueue().getDepth();
+        }
+        return depth;
+    }
+    
+    /**
+     * Gets the total number of deliveries dropped on overflow across all clients.
+     * 
+     * @return the summed drop count
+     */
+    public long getDroppedDeliveryCount() {
+        long dropped = 0;
+        for (Chatter chatter : connectedClients.snapshot()) {
+            dropped += chatter.getDeliveryQueue().getDroppedCount();
+        }
+        return dropped;
+    }
+    
+    /**
+     * Creates daemon threads for delivery workers.
+     */
+    private static final class DeliveryThreadFactory implements ThreadFactory {
+        
+        private final AtomicInteger threadCount = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "chat-delivery-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -10,12 +10,15 @@ public final class ChatConstants {
         // Utility class - prevent instantiation
     }
     
-    /** Default RMI registry port */
-    public static final int RMI_REGISTRY_PORT = 1099;
+    /** RMI registry port; give each server its own to run several on one machine */
+    public static final int RMI_REGISTRY_PORT = Integer.getInteger("chat.registry.port", 1099);
     
     /** Server service name in RMI registry */
     public static final String SERVER_SERVICE_NAME = "Chat";
     
+    /** Cluster peer link name in RMI registry */
+    public static final String PEER_SERVICE_NAME = "ChatPeer";
+    
     /** Client service name prefix */
     public static final String CLIENT_SERVICE_PREFIX = "ClientListenService_";
     
@@ -27,5 +30,148 @@ public final class ChatConstants {
     
     /** Capacity increment for client list */
     public static final int CLIENT_LIST_CAPACITY_INCREMENT = 1;
+    
+    /** Maximum number of pending deliveries per client */
+    public static final int DELIVERY_QUEUE_CAPACITY =
+        Integer.getInteger("chat.delivery.queueCapacity", 1024);
+    
+    /** Overflow policy applied to new clients' delivery queues */
+    public static final DeliveryQueue.OverflowPolicy DEFAULT_OVERFLOW_POLICY =
+        DeliveryQueue.OverflowPolicy.valueOf(
+            System.getProperty("chat.delivery.overflowPolicy", "DROP_OLDEST"));
+    
+    /** How long the BLOCK overflow policy waits for room, in milliseconds */
+    public static final long DELIVERY_BLOCK_TIMEOUT_MS =
+        Long.getLong("chat.delivery.blockTimeoutMs", 500);
+    
+    /** Maximum number of chat messages sent to a client in one batch call */
+    public static final int DELIVERY_BATCH_SIZE =
+        Integer.getInteger("chat.delivery.batchSize", 64);
+    
+    /** How long a partial batch waits for more messages, in milliseconds */
+    public static final long DELIVERY_FLUSH_WINDOW_MS =
+        Long.getLong("chat.delivery.flushWindowMs", 5);
+    
+    /** Whether delivery workers and heartbeat pings run on virtual threads */
+    public static final boolean DELIVERY_VIRTUAL_THREADS =
+        Boolean.parseBoolean(System.getProperty("chat.delivery.virtualThreads", "true"));
+    
+    /** Most remote calls in flight to one client at once: its delivery worker and a heartbeat ping */
+    public static final int DELIVERY_MAX_CALLS_PER_CLIENT =
+        Integer.getInteger("chat.delivery.maxCallsPerClient", 2);
+    
+    /** Room every client joins on connect; plain chat messages go here */
+    public static final String DEFAULT_ROOM = "Lobby";
+    
+    /** Directory for the durable message log; empty disables logging */
+    public static final String MESSAGE_LOG_DIR = System.getProperty("chat.log.dir", "chat-log");
+    
+    /** Size of each message log segment file, in bytes */
+    public static final int MESSAGE_LOG_SEGMENT_BYTES =
+        Integer.getInteger("chat.log.segmentBytes", 64 * 1024 * 1024);
+    
+    /** Total size of closed segments kept, in bytes */
+    public static final long MESSAGE_LOG_RETENTION_BYTES =
+        Long.getLong("chat.log.retentionBytes", 1024L * 1024 * 1024);
+    
+    /** Age after which closed segments are deleted, in hours */
+    public static final long MESSAGE_LOG_RETENTION_HOURS = Long.getLong("chat.log.retentionHours", 7 * 24);
+    
+    /** Interval between forced writes of the message log to disk, in milliseconds */
+    public static final long MESSAGE_LOG_FLUSH_MS = Long.getLong("chat.log.flushMs", 50);
+    
+    /** Number of recent messages kept in memory per room */
+    public static final int ROOM_HISTORY_CAPACITY = Integer.getInteger("chat.history.capacity", 256);
+    
+    /** Number of recent messages sent to a client when it joins a room */
+    public static final int HISTORY_REPLAY_ON_JOIN = Integer.getInteger("chat.history.replayOnJoin", 50);
+    
+    /** Largest page of history returned by a single fetch */
+    public static final int MAX_HISTORY_PAGE = 200;
+    
+    /** How often each client's liveness is checked, in milliseconds; 0 disables heartbeats */
+    public static final long HEARTBEAT_INTERVAL_MS = Long.getLong("chat.heartbeat.intervalMs", 5000);
+    
+    /** How long a heartbeat ping may take before it counts as missed, in milliseconds */
+    public static final long HEARTBEAT_TIMEOUT_MS = Long.getLong("chat.heartbeat.timeoutMs", 2000);
+    
+    /** Consecutive missed heartbeats before a client is evicted */
+    public static final int HEARTBEAT_MAX_MISSED = Integer.getInteger("chat.heartbeat.maxMissed", 3);
+    
+    /**
+     * Deadline for each server-to-client callback, in milliseconds; 0 keeps
+     * the RMI default of no deadline. Applied through
+     * {@code sun.rmi.transport.tcp.responseTimeout} when the server starts.
+     */
+    public static final long CALLBACK_TIMEOUT_MS = Long.getLong("chat.callback.timeoutMs", 10_000);
+    
+    /** Callbacks taking at least this long count as slow, in milliseconds */
+    public static final long SLOW_CALL_MS = Long.getLong("chat.breaker.slowCallMs", 500);
+    
+    /** Consecutive slow or timed-out callbacks that switch a client to degraded delivery */
+    public static final int BREAKER_TRIP_THRESHOLD = Integer.getInteger("chat.breaker.tripAfter", 3);
+    
+    /** Consecutive fast callbacks that return a degraded client to normal delivery */
+    public static final int BREAKER_RESET_THRESHOLD = Integer.getInteger("chat.breaker.resetAfter", 5);
+    
+    /**
+     * Consecutive timed-out callbacks after which a client is disconnected.
+     * Must be greater than {@link #BREAKER_TRIP_THRESHOLD}, so a client that
+     * times out is degraded before it is dropped.
+     */
+    public static final int BREAKER_MAX_TIMEOUTS = Integer.getInteger("chat.breaker.maxTimeouts", 6);
+    
+    /** Interval between deliveries to a degraded client, in milliseconds */
+    public static final long DEGRADED_INTERVAL_MS = Long.getLong("chat.breaker.degradedIntervalMs", 1000);
+    
+    /** Largest batch sent to a degraded client in one call */
+    public static final int DEGRADED_BATCH_SIZE = Integer.getInteger("chat.breaker.degradedBatchSize", 256);
+    
+    /** Transport clients use to reach the server: "rmi" (default) or "nio" */
+    public static final String TRANSPORT = System.getProperty("chat.transport", "rmi");
+    
+    /** TCP port of the NIO transport */
+    public static final int NIO_PORT = Integer.getInteger("chat.nio.port", 1100);
+    
+    /** Unsent bytes queued on an NIO connection before callbacks wait */
+    public static final int NIO_OUTBOUND_LIMIT_BYTES =
+        Integer.getInteger("chat.nio.outboundLimitBytes", 1024 * 1024);
+    
+    /** How long an NIO client waits for the reply to a request, in milliseconds */
+    public static final long NIO_CALL_TIMEOUT_MS = Long.getLong("chat.nio.callTimeoutMs", 30_000);
+    
+    /** Whether the server compresses large batches for clients that offer compression */
+    public static final boolean COMPRESSION_ENABLED =
+        Boolean.parseBoolean(System.getProperty("chat.compression.enabled", "true"));
+    
+    /** Smallest encoded batch that is compressed, in bytes */
+    public static final int COMPRESSION_THRESHOLD_BYTES =
+        Integer.getInteger("chat.compression.thresholdBytes", 1024);
+    
+    /** Deflate level, from 1 (fastest) to 9 (smallest) */
+    public static final int COMPRESSION_LEVEL = Integer.getInteger("chat.compression.level", 6);
+    
+    /** This server's id in a cluster, or empty to run on its own */
+    public static final String CLUSTER_NODE_ID = System.getProperty("chat.cluster.nodeId", "");
+    
+    /** Cluster members, including this server, as id=host:registryPort,... */
+    public static final String CLUSTER_NODES = System.getProperty("chat.cluster.nodes", "");
+    
+    /** Points each cluster node takes on the room hash ring */
+    public static final int CLUSTER_VIRTUAL_NODES = Integer.getInteger("chat.cluster.virtualNodes", 128);
+    
+    /** How long a dropped client can resume its session, in milliseconds */
+    public static final long SESSION_RESUME_WINDOW_MS = Long.getLong("chat.session.resumeWindowMs", 120_000);
+    
+    /** Longest a client waits before its first reconnect attempt, doubled after each failure */
+    public static final long RECONNECT_BASE_DELAY_MS = Long.getLong("chat.reconnect.baseDelayMs", 500);
+    
+    /** Longest a client waits between reconnect attempts, in milliseconds */
+    public static final long RECONNECT_MAX_DELAY_MS = Long.getLong("chat.reconnect.maxDelayMs", 30_000);
+    
+    /** Silence from the server after which a client checks it is still connected, in milliseconds */
+    public static final long CONNECTION_CHECK_MS = Long.getLong("chat.reconnect.checkMs", 15_000);
+    
+    /** How long a client waits for a missing message before asking for it again, in milliseconds */
+    public static final long GAP_TIMEOUT_MS = Long.getLong("chat.client.gapTimeoutMs", 500);
 }
-
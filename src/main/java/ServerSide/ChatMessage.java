@@ -0,0 +1,239 @@
+package ServerSide;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * A chat message as sent to clients: the raw text plus the fields a client
+ * needs to display, sort or search it. Clients do their own formatting.
+ *
+ * <p>The text is encoded to UTF-8 once, when the message is created, and
+ * those bytes are reused for every recipient. Sender and room names are
+ * interned, so a client holds one copy of each name however many messages
+ * it keeps. On the wire a message uses the {@link MessageBatch} encoding;
+ * messages sent together should be sent as a batch, which writes each name
+ * only once.
+ *
+ * @author Refactored
+ */
+public final class ChatMessage implements Externalizable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * What a message is.
+     */
+    public enum Kind {
+        /** A message from a user to a room */
+        CHAT,
+        /** A server notice such as a join or leave */
+        SERVER,
+        /** A private message */
+        PRIVATE
+    }
+
+    private long sequence;
+    private long timestamp;
+    private Kind kind;
+    private String sender;
+    private String room;
+    private byte[] payload;
+    /** Decoded text, cached on first use */
+    private transient String text;
+
+    /**
+     * Creates an empty message for deserialization only.
+     */
+    public ChatMessage() {
+        // Required by Externalizable
+    }
+
+    /**
+     * Creates a message.
+     *
+     * @param sequence position in the room's history, or 0 if not part of one
+     * @param timestamp when the server accepted the message, in epoch milliseconds
+     * @param kind what the message is
+     * @param sender the sender's username, or null for server notices
+     * @param room the room name, or null for the default room and private messages
+     * @param text the message text
+     */
+    public ChatMessage(long sequence, long timestamp, Kind kind, String sender, String room, String text) {
+        if (kind == null) {
+            throw new IllegalArgumentException("Kind cannot be null");
+        }
+        if (text == null) {
+            throw new IllegalArgumentException("Text cannot be null");
+        }
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.kind = kind;
+        this.sender = intern(sender);
+        this.room = intern(room);
+        this.payload = text.getBytes(StandardCharsets.UTF_8);
+        this.text = text;
+    }
+
+    /**
+     * Creates a message from already encoded text and interned names.
+     */
+    ChatMessage(long sequence, long timestamp, Kind kind, String sender, String room, byte[] payload) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.kind = kind;
+        this.sender = sender;
+        this.room = room;
+        this.payload = payload;
+    }
+
+    /**
+     * Creates a user's chat message, timestamped now.
+     *
+     * @param sender the sender's username
+     * @param room the room name, or null for the default room
+     * @param text the message text
+     * @return the message, not yet numbered
+     */
+    public static ChatMessage chat(String sender, String room, String text) {
+        return new ChatMessage(0, System.currentTimeMillis(), Kind.CHAT, sender, room, text);
+    }
+
+    /**
+     * Creates a server notice, timestamped now.
+     *
+     * @param room the room name, or null for the default room or a notice to one client
+     * @param text the notice text
+     * @return the message, not yet numbered
+     */
+    public static ChatMessage server(String room, String text) {
+        return new ChatMessage(0, System.currentTimeMillis(), Kind.SERVER, null, room, text);
+    }
+
+    /**
+     * Creates a private message, timestamped now.
+     *
+     * @param sender the sender's username, or null if unknown
+     * @param text the message text
+     * @return the message
+     */
+    public static ChatMessage privateMessage(String sender, String text) {
+        return new ChatMessage(0, System.currentTimeMillis(), Kind.PRIVATE, sender, null, text);
+    }
+
+    /**
+     * Gets a copy of this message numbered for a room's history.
+     * The encoded text is shared, not copied.
+     *
+     * @param sequence the sequence number
+     * @return the numbered message
+     */
+    public ChatMessage withSequence(long sequence) {
+        ChatMessage numbered = new ChatMessage(sequence, timestamp, kind, sender, room, payload);
+        numbered.text = text;
+        return numbered;
+    }
+
+    /**
+     * Gets the message's position in its room's history.
+     *
+     * @return the sequence number, or 0 if the message is not part of a history
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets when the server accepted the message.
+     *
+     * @return the time in epoch milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Gets what the message is.
+     *
+     * @return the kind
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Gets the sender.
+     *
+     * @return the sender's username, or null for server notices
+     */
+    public String getSender() {
+        return sender;
+    }
+
+    /**
+     * Gets the room the message was sent to.
+     *
+     * @return the room name, or null for the default room and private messages
+     */
+    public String getRoom() {
+        return room;
+    }
+
+    /**
+     * Gets the message text.
+     *
+     * @return the text
+     */
+    public String getText() {
+        String decoded = text;
+        if (decoded == null) {
+            decoded = new String(payload, StandardCharsets.UTF_8);
+            text = decoded;
+        }
+        return decoded;
+    }
+
+    /**
+     * Gets the UTF-8 encoded text. Callers must not modify the array.
+     *
+     * @return the encoded text
+     */
+    byte[] getPayload() {
+        return payload;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        new MessageBatch(List.of(this)).writeExternal(out);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        MessageBatch batch = new MessageBatch();
+        batch.readExternal(in);
+        if (batch.size() != 1) {
+            throw new StreamCorruptedException("Expected one message, found " + batch.size());
+        }
+        ChatMessage decoded = batch.get(0);
+        sequence = decoded.sequence;
+        timestamp = decoded.timestamp;
+        kind = decoded.kind;
+        sender = decoded.sender;
+        room = decoded.room;
+        payload = decoded.payload;
+    }
+
+    private static String intern(String name) {
+        return name == null ? null : name.intern();
+    }
+
+    @Override
+    public String toString() {
+        return "ChatMessage{seq=" + sequence + ", kind=" + kind + ", sender=" + sender
+            + ", room=" + room + ", text='" + getText() + "'}";
+    }
+}
@@ -0,0 +1,251 @@
+package ServerSide;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for the chat server, published as an
+ * MBean and available as a text snapshot. Recording only increments
+ * preallocated counters, so it is safe to call on every message.
+ * 
+ * @author Refactored
+ */
+public class ChatMetrics implements ChatMetricsMBean {
+    
+    private static final Logger LOGGER = Logger.getLogger(ChatMetrics.class.getName());
+    
+    /** Name the server's metrics are registered under */
+    public static final String OBJECT_NAME = "ServerSide:type=ChatMetrics";
+    
+    private final LatencyHistogram joinLatency = new LatencyHistogram("join");
+    private final LatencyHistogram chatLatency = new LatencyHistogram("updateChat");
+    private final LatencyHistogram privateMessageLatency = new LatencyHistogram("sendPrivateMessage");
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram("delivery");
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder deliveryFailureCount = new LongAdder();
+    private final LongAdder resendCount = new LongAdder();
+    private final IntSupplier connectedClients;
+    private final LongSupplier pendingDeliveries;
+    private final IntSupplier suspectClients;
+    private final IntSupplier degradedClients;
+    
+    /**
+     * Creates the metrics for a server.
+     * 
+     * @param connectedClients reads the current number of connected clients
+     * @param pendingDeliveries reads the current number of queued deliveries
+     * @param suspectClients reads the current number of clients missing heartbeats
+     * @param degradedClients reads the current number of clients in degraded delivery
+     */
+    public ChatMetrics(IntSupplier connectedClients, LongSupplier pendingDeliveries,
+                       IntSupplier suspectClients, IntSupplier degradedClients) {
+        this.connectedClients = connectedClients;
+        this.pendingDeliveries = pendingDeliveries;
+        this.suspectClients = suspectClients;
+        this.degradedClients = degradedClients;
+    }
+    
+    /**
+     * Registers these metrics with the platform MBean server.
+     * 
+     * @return true if registered
+     */
+    public boolean register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+            LOGGER.info("Chat metrics registered as " + OBJECT_NAME);
+            return true;
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Failed to register chat metrics", e);
+            return false;
+        }
+    }
+    
+    /**
+     * Records a completed join.
+     * 
+     * @param nanos the time taken
+     */
+    public void recordJoin(long nanos) {
+        joinLatency.record(nanos);
+    }
+    
+    /**
+     * Records a chat message fanned out to a room.
+     * 
+     * @param nanos the time taken
+     */
+    public void recordChatMessage(long nanos) {
+        chatLatency.record(nanos);
+    }
+    
+    /**
+     * Records a private message send.
+     * 
+     * @param nanos the time taken
+     */
+    public void recordPrivateMessage(long nanos) {
+        privateMessageLatency.record(nanos);
+    }
+    
+    /**
+     * Records a callback that failed with a RemoteException.
+     */
+    public void recordDeliveryFailure() {
+        deliveryFailureCount.increment();
+    }
+    
+    /**
+     * Records a client removed after a failed or overflowing delivery.
+     */
+    public void recordEviction() {
+        evictionCount.increment();
+    }
+    
+    /**
+     * Records a client asking for messages again after finding a gap.
+     */
+    public void recordResend() {
+        resendCount.increment();
+    }
+    
+    /**
+     * Gets the histogram of client callback times, for delivery queues to record into.
+     * 
+     * @return the delivery histogram
+     */
+    public LatencyHistogram getDeliveryLatency() {
+        return deliveryLatency;
+    }
+    
+    @Override
+    public int getConnectedClients() {
+        return connectedClients.getAsInt();
+    }
+    
+    @Override
+    public long getPendingDeliveries() {
+        return pendingDeliveries.getAsLong();
+    }
+    
+    @Override
+    public int getSuspectClients() {
+        return suspectClients.getAsInt();
+    }
+    
+    @Override
+    public int getDegradedClients() {
+        return degradedClients.getAsInt();
+    }
+    
+    @Override
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+    
+    @Override
+    public long getDeliveryFailureCount() {
+        return deliveryFailureCount.sum();
+    }
+    
+    @Override
+    public long getResendCount() {
+        return resendCount.sum();
+    }
+    
+    @Override
+    public long getJoinCount() {
+        return joinLatency.getCount();
+    }
+    
+    @Override
+    public long getJoinP99Micros() {
+        return micros(joinLatency.getPercentileNanos(99));
+    }
+    
+    @Override
+    public long getChatMessageCount() {
+        return chatLatency.getCount();
+    }
+    
+    @Override
+    public long getChatP50Micros() {
+        return micros(chatLatency.getPercentileNanos(50));
+    }
+    
+    @Override
+    public long getChatP99Micros() {
+        return micros(chatLatency.getPercentileNanos(99));
+    }
+    
+    @Override
+    public long getPrivateMessageCount() {
+        return privateMessageLatency.getCount();
+    }
+    
+    @Override
+    public long getPrivateMessageP99Micros() {
+        return micros(privateMessageLatency.getPercentileNanos(99));
+    }
+    
+    @Override
+    public long getDeliveryCount() {
+        return deliveryLatency.getCount();
+    }
+    
+    @Override
+    public long getDeliveryP50Micros() {
+        return micros(deliveryLatency.getPercentileNanos(50));
+    }
+    
+    @Override
+    public long getDeliveryP99Micros() {
+        return micros(deliveryLatency.getPercentileNanos(99));
+    }
+    
+    @Override
+    public long getDeliveryMaxMicros() {
+        return micros(deliveryLatency.getMaxNanos());
+    }
+    
+    @Override
+    public String dumpSnapshot() {
+        StringBuilder snapshot = new StringBuilder();
+        snapshot.append("connectedClients=").append(getConnectedClients())
+                .append(" pendingDeliveries=").append(getPendingDeliveries())
+                .append(" suspectClients=").append(getSuspectClients())
+                .append(" degradedClients=").append(getDegradedClients())
+                .append(" evictions=").append(getEvictionCount())
+                .append(" deliveryFailures=").append(getDeliveryFailureCount())
+                .append(" resends=").append(getResendCount()).append('\n');
+        for (LatencyHistogram histogram : new LatencyHistogram[] {
+                joinLatency, chatLatency, privateMessageLatency, deliveryLatency}) {
+            snapshot.append(histogram.summary()).append('\n');
+        }
+        return snapshot.toString();
+    }
+    
+    @Override
+    public void reset() {
+        joinLatency.reset();
+        chatLatency.reset();
+        privateMessageLatency.reset();
+        deliveryLatency.reset();
+        evictionCount.reset();
+        deliveryFailureCount.reset();
+        resendCount.reset();
+    }
+    
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
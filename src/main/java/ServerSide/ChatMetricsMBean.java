@@ -0,0 +1,76 @@
+package ServerSide;
+
+/**
+ * JMX management interface for {@link ChatMetrics}.
+ * Durations are reported in microseconds.
+ * 
+ * @author Refactored
+ */
+public interface ChatMetricsMBean {
+    
+    /** @return the number of connected clients */
+    int getConnectedClients();
+    
+    /** @return the number of deliveries waiting across all clients */
+    long getPendingDeliveries();
+    
+    /** @return the number of clients that have missed a heartbeat and not answered since */
+    int getSuspectClients();
+    
+    /** @return the number of clients in degraded delivery because their callbacks are slow */
+    int getDegradedClients();
+    
+    /** @return the number of clients removed after a failed or overflowing delivery */
+    long getEvictionCount();
+    
+    /** @return the number of callbacks that failed with a RemoteException */
+    long getDeliveryFailureCount();
+    
+    /** @return the number of times clients asked for missed messages again */
+    long getResendCount();
+    
+    /** @return the number of completed joins */
+    long getJoinCount();
+    
+    /** @return the 99th percentile join time */
+    long getJoinP99Micros();
+    
+    /** @return the number of chat messages broadcast */
+    long getChatMessageCount();
+    
+    /** @return the median time to fan a chat message out to delivery queues */
+    long getChatP50Micros();
+    
+    /** @return the 99th percentile time to fan a chat message out to delivery queues */
+    long getChatP99Micros();
+    
+    /** @return the number of private messages sent */
+    long getPrivateMessageCount();
+    
+    /** @return the 99th percentile private message send time */
+    long getPrivateMessageP99Micros();
+    
+    /** @return the number of client callbacks made */
+    long getDeliveryCount();
+    
+    /** @return the median client callback time */
+    long getDeliveryP50Micros();
+    
+    /** @return the 99th percentile client callback time */
+    long getDeliveryP99Micros();
+    
+    /** @return the slowest client callback time */
+    long getDeliveryMaxMicros();
+    
+    /**
+     * Formats all metrics as text.
+     * 
+     * @return a multi-line snapshot
+     */
+    String dumpSnapshot();
+    
+    /**
+     * Clears all counters and histograms.
+     */
+    void reset();
+}
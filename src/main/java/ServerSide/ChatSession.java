@@ -0,0 +1,67 @@
+package ServerSide;
+
+import java.io.Serializable;
+
+/**
+ * The session a client holds after joining. Its resume token lets the
+ * client rejoin under the same name after losing its connection and be
+ * sent only the messages it missed; see
+ * {@link Chattable#joinSession(String[], String, long)}.
+ *
+ * @author Refactored
+ */
+public class ChatSession implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String resumeToken;
+    private final boolean resumed;
+    private final long firstSequence;
+
+    /**
+     * Creates a session.
+     *
+     * @param resumeToken the token to present on the next reconnect
+     * @param resumed whether an earlier session was resumed
+     * @param firstSequence sequence number of the first default room message
+     *                      the session is sent
+     */
+    public ChatSession(String resumeToken, boolean resumed, long firstSequence) {
+        this.resumeToken = resumeToken;
+        this.resumed = resumed;
+        this.firstSequence = firstSequence;
+    }
+
+    /**
+     * Gets the token to present on the next reconnect. Each token can be
+     * used once; resuming issues a new one.
+     *
+     * @return the resume token
+     */
+    public String getResumeToken() {
+        return resumeToken;
+    }
+
+    /**
+     * Checks whether an earlier session was resumed. If not, the client
+     * joined afresh, for example because the server restarted, and message
+     * sequence numbers it saw before no longer apply.
+     *
+     * @return true if resumed
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * Gets the sequence number of the first default room message the
+     * session is sent: the oldest one replayed on joining, or for a resumed
+     * session the one after the last the client received. Messages may
+     * arrive out of order, so this is where the client's order starts.
+     *
+     * @return the sequence number
+     */
+    public long getFirstSequence() {
+        return firstSequence;
+    }
+}
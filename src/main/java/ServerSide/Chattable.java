@@ -1,5 +1,6 @@
 package ServerSide;
 
+import ClientSide.ChatClient;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 
@@ -13,13 +14,73 @@ public interface Chattable extends Remote {
     
     /**
      * Registers a new client to the chat server.
+     * Optional features the client supports are offered as a comma-separated
+     * list; the server uses those it also supports. Currently the only
+     * feature is {@link MessageCompression#DEFLATE}.
      * 
-     * @param clientDetails Array containing: [0] username, [1] hostname, [2] client service name
+     * @param clientDetails Array containing: [0] username, [1] hostname of the client's
+     *        registry, as {@code host:port} if it is not on the default port,
+     *        [2] client service name, and optionally [3] offered features
      * @throws RemoteException if a remote communication error occurs
      * @throws IllegalArgumentException if clientDetails is null or invalid
      */
     void join(String[] clientDetails) throws RemoteException;
     
+    /**
+     * Registers a new client that passes its callback directly, so the
+     * server needs no lookup in the client's registry and the client needs
+     * no registry at all.
+     * 
+     * @param clientDetails Array containing: [0] username, and optionally [3] offered
+     *        features; other elements are not used
+     * @param client the client's exported callback
+     * @throws RemoteException if a remote communication error occurs or the username is in use
+     * @throws IllegalArgumentException if clientDetails is invalid or client is null
+     */
+    void join(String[] clientDetails, ChatClient client) throws RemoteException;
+    
+    /**
+     * Registers a client as {@link #join(String[])} does, or resumes the
+     * session of a client that lost its connection. A client presenting
+     * the resume token from its last session, while the server still holds
+     * it, rejoins under the same name without a join announcement and is
+     * sent only the default room messages numbered after
+     * {@code lastSequence}; if the old connection is still registered, the
+     * new one replaces it. Otherwise the client joins afresh.
+     * 
+     * @param clientDetails as for {@link #join(String[])}
+     * @param resumeToken the token from the client's last session, or null to join afresh
+     * @param lastSequence sequence number of the last default room message the client received
+     * @return the session, with the token for the next reconnect
+     * @throws RemoteException if a remote communication error occurs or the username is in use
+     * @throws IllegalArgumentException if clientDetails is null or invalid
+     */
+    ChatSession joinSession(String[] clientDetails, String resumeToken, long lastSequence) throws RemoteException;
+    
+    /**
+     * Registers a client or resumes its session, as
+     * {@link #joinSession(String[], String, long)} does, with the callback
+     * passed directly as in {@link #join(String[], ChatClient)}.
+     * 
+     * @param clientDetails as for {@link #join(String[], ChatClient)}
+     * @param client the client's exported callback
+     * @param resumeToken the token from the client's last session, or null to join afresh
+     * @param lastSequence sequence number of the last default room message the client received
+     * @return the session, with the token for the next reconnect
+     * @throws RemoteException if a remote communication error occurs or the username is in use
+     * @throws IllegalArgumentException if clientDetails is invalid or client is null
+     */
+    ChatSession joinSession(String[] clientDetails, ChatClient client, String resumeToken, long lastSequence)
+        throws RemoteException;
+    
+    /**
+     * Does nothing. Lets a client check cheaply that a cached reference to
+     * the server still works.
+     * 
+     * @throws RemoteException if the server cannot be reached
+     */
+    void ping() throws RemoteException;
+    
     /**
      * Broadcasts a chat message to all connected clients.
      * 
@@ -30,6 +91,104 @@ public interface Chattable extends Remote {
      */
     void updateChat(String userName, String chatMessage) throws RemoteException;
     
+    /**
+     * Broadcasts a chat message to the members of a room.
+     * 
+     * @param userName the username of the sender, who must be a member
+     * @param roomName the room name (case-insensitive)
+     * @param chatMessage the message content
+     * @throws RemoteException if a remote communication error occurs, the room
+     *         does not exist, or the sender is not a member
+     * @throws IllegalArgumentException if any argument is null or empty
+     */
+    void updateRoomChat(String userName, String roomName, String chatMessage) throws RemoteException;
+    
+    /**
+     * Adds a client to a room, creating the room if it does not exist.
+     * 
+     * @param userName the username of the connected client
+     * @param roomName the room name; same format rules as usernames
+     * @return sequence number of the first message of the room the client is
+     *         sent, replayed or new, or 0 if it was already a member
+     * @throws RemoteException if a remote communication error occurs or the user is not connected
+     * @throws IllegalArgumentException if userName is empty or roomName is invalid
+     */
+    long joinRoom(String userName, String roomName) throws RemoteException;
+    
+    /**
+     * Removes a client from a room. Empty rooms are discarded.
+     * 
+     * @param userName the username of the connected client
+     * @param roomName the room name (case-insensitive)
+     * @throws RemoteException if a remote communication error occurs, the user
+     *         is not connected, or the room does not exist
+     * @throws IllegalArgumentException if the room is the default room
+     */
+    void leaveRoom(String userName, String roomName) throws RemoteException;
+    
+    /**
+     * Lists the rooms that currently exist on this server, including the default room.
+     * 
+     * @return room names in case-insensitive order
+     * @throws RemoteException if a remote communication error occurs
+     */
+    String[] listRooms() throws RemoteException;
+    
+    /**
+     * Finds the server that hosts a room. In a cluster each named room is
+     * hosted by one server, and the others pass requests for it on to that one.
+     * 
+     * @param roomName the room name (case-insensitive)
+     * @return the RMI registry address of the hosting server as host:port,
+     *         or null if this server hosts the room
+     * @throws RemoteException if a remote communication error occurs
+     * @throws IllegalArgumentException if roomName is null or empty
+     */
+    String locateRoom(String roomName) throws RemoteException;
+    
+    /**
+     * Lists the members of a room.
+     * 
+     * @param roomName the room name (case-insensitive)
+     * @return member usernames in join order
+     * @throws RemoteException if a remote communication error occurs or the room does not exist
+     */
+    String[] getRoomMembers(String roomName) throws RemoteException;
+    
+    /**
+     * Fetches a page of a room's recent messages, for scrolling back past
+     * what was replayed on join. Only the most recent messages are kept.
+     * 
+     * @param userName the username of the requesting client, who must be a member
+     * @param roomName the room name (case-insensitive)
+     * @param beforeSeq only messages numbered below this are returned; 0 or
+     *                  less for the newest messages
+     * @param limit the maximum number of messages; larger requests are capped
+     * @return the page, oldest message first; pass its oldest sequence number
+     *         as {@code beforeSeq} to fetch the previous page
+     * @throws RemoteException if a remote communication error occurs, the room
+     *         does not exist, or the user is not a member
+     * @throws IllegalArgumentException if a name is empty or limit is not positive
+     */
+    HistoryPage fetchHistory(String userName, String roomName, long beforeSeq, int limit) throws RemoteException;
+    
+    /**
+     * Sends a room's messages again from a sequence number on, for a client
+     * that found a gap in what it received. Only the most recent messages
+     * are kept, so the page may start after {@code fromSeq}.
+     * 
+     * @param userName the username of the requesting client, who must be a member
+     * @param roomName the room name (case-insensitive)
+     * @param fromSeq the first sequence number wanted
+     * @return the page, oldest message first, holding at most
+     *         {@link ChatConstants#MAX_HISTORY_PAGE} messages; ask again from
+     *         after its newest message for more
+     * @throws RemoteException if a remote communication error occurs, the room
+     *         does not exist, or the user is not a member
+     * @throws IllegalArgumentException if a name is empty or fromSeq is not positive
+     */
+    HistoryPage resend(String userName, String roomName, long fromSeq) throws RemoteException;
+    
     /**
      * Removes a client from the chat server.
      * 
@@ -39,6 +198,19 @@ public interface Chattable extends Remote {
      */
     void leaveChat(String userName) throws RemoteException;
     
+    /**
+     * Sends a private message to the named clients.
+     * The server formats the message; recipients who are not connected are
+     * reported back to the sender.
+     * 
+     * @param senderName the username of the sender, who must be connected to this server
+     * @param recipientNames usernames of the recipients (case-insensitive)
+     * @param message the private message content
+     * @throws RemoteException if the sender is not connected, or a remote communication error occurs
+     * @throws IllegalArgumentException if any argument is null or empty
+     */
+    void sendPrivateMessage(String senderName, String[] recipientNames, String message) throws RemoteException;
+    
     /**
      * Sends a private message to selected clients.
      * 
@@ -46,6 +218,19 @@ public interface Chattable extends Remote {
      * @param privateMessage the private message content
      * @throws RemoteException if a remote communication error occurs
      * @throws IllegalArgumentException if recipientIndices is null or empty, or privateMessage is null
+     * @deprecated indices go stale as users join and leave; use
+     *             {@link #sendPrivateMessage(String, String[], String)}
      */
+    @Deprecated
     void sendPM(int[] recipientIndices, String privateMessage) throws RemoteException;
+    
+    /**
+     * Asks the server to send a full user list snapshot to a client,
+     * typically after it detects a gap in user list versions.
+     * 
+     * @param userName the username of the requesting client
+     * @throws RemoteException if a remote communication error occurs or the user is not connected
+     * @throws IllegalArgumentException if userName is null or empty
+     */
+    void requestUserList(String userName) throws RemoteException;
 }
@@ -1,10 +1,16 @@
 package ServerSide;
 
 import ClientSide.ChatClient;
+import java.rmi.RemoteException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  * Represents a connected user in the chat system.
- * Encapsulates the user's name and their remote client reference.
+ * Encapsulates the user's name, their remote client reference and
+ * the outbound queue that delivers callbacks to that client.
  * 
  * @author Refactored
  */
@@ -12,15 +18,20 @@ public class Chatter {
     
     private final String name;
     private final ChatClient client;
+    private final DeliveryQueue deliveryQueue;
+    private final Set<String> roomNames = ConcurrentHashMap.newKeySet();
     
     /**
      * Constructs a new Chatter instance.
      * 
      * @param name the username (must not be null or empty)
      * @param client the remote client reference (must not be null)
+     * @param deliveryExecutor the executor running this client's delivery worker
+     * @param onDeliveryFailure invoked with this chatter when a callback fails
      * @throws IllegalArgumentException if name is null/empty or client is null
      */
-    public Chatter(String name, ChatClient client) {
+    public Chatter(String name, ChatClient client, Executor deliveryExecutor,
+                   Consumer<Chatter> onDeliveryFailure) {
         if (name == null || name.trim().isEmpty()) {
             throw new IllegalArgumentException("Name cannot be null or empty");
         }
@@ -29,6 +40,9 @@ public class Chatter {
         }
         this.name = name.trim();
         this.client = client;
+        this.deliveryQueue = new DeliveryQueue(this.name, client,
+            ChatConstants.DELIVERY_QUEUE_CAPACITY, deliveryExecutor,
+            (RemoteException e) -> onDeliveryFailure.accept(this));
     }
     
     /**
@@ -49,6 +63,45 @@ public class Chatter {
         return client;
     }
     
+    /**
+     * Gets the outbound delivery queue for this client.
+     * 
+     * @return the delivery queue
+     */
+    public DeliveryQueue getDeliveryQueue() {
+        return deliveryQueue;
+    }
+    
+    /**
+     * Gets the names of the rooms this client has joined, other than the default room.
+     * 
+     * @return a live view of the room names
+     */
+    public Set<String> getRoomNames() {
+        return roomNames;
+    }
+    
+    /**
+     * Queues a callback for asynchronous delivery to this client.
+     * 
+     * @param delivery the callback to deliver
+     * @return false if the client should be disconnected
+     */
+    public boolean deliver(DeliveryQueue.Delivery delivery) {
+        return deliveryQueue.enqueue(delivery);
+    }
+    
+    /**
+     * Queues a callback only if that needs no waiting, for callers holding a lock.
+     * 
+     * @param delivery the callback to deliver
+     * @return false if not queued; deliver it later with {@link #deliver}
+     * @see DeferredDeliveries
+     */
+    public boolean offer(DeliveryQueue.Delivery delivery) {
+        return deliveryQueue.offer(delivery);
+    }
+    
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
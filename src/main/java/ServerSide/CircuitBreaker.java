@@ -0,0 +1,139 @@
+package ServerSide;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks how a client's callbacks perform and decides when to switch it
+ * into degraded delivery. Consecutive slow or timed-out calls open the
+ * breaker; consecutive fast calls close it again. Too many consecutive
+ * timeouts mean the client should be given up on.
+ *
+ * <p>Calls are recorded by the client's delivery worker, one at a time;
+ * the state may be read from any thread.
+ *
+ * @author Refactored
+ */
+public class CircuitBreaker {
+
+    /**
+     * Delivery mode chosen by the breaker.
+     */
+    public enum State {
+        /** Normal delivery */
+        CLOSED,
+        /** Degraded delivery: large batches at a fixed low frequency */
+        OPEN
+    }
+
+    private final long slowCallNanos;
+    private final int tripThreshold;
+    private final int resetThreshold;
+    private final int maxTimeouts;
+
+    private volatile State state = State.CLOSED;
+    private int consecutiveSlow = 0;
+    private int consecutiveFast = 0;
+    private int consecutiveTimeouts = 0;
+
+    /**
+     * Creates a closed breaker.
+     *
+     * @param slowCallMillis calls taking at least this long count as slow
+     * @param tripThreshold consecutive slow calls that open the breaker
+     * @param resetThreshold consecutive fast calls that close it again
+     * @param maxTimeouts consecutive timeouts after which the client is given up on;
+     *                    more than tripThreshold, so a client is degraded before it is dropped
+     * @throws IllegalArgumentException if a threshold is below 1 or maxTimeouts
+     *         does not exceed tripThreshold
+     */
+    public CircuitBreaker(long slowCallMillis, int tripThreshold, int resetThreshold, int maxTimeouts) {
+        if (tripThreshold < 1 || resetThreshold < 1 || maxTimeouts < 1) {
+            throw new IllegalArgumentException("Breaker thresholds must be at least 1");
+        }
+        if (maxTimeouts <= tripThreshold) {
+            throw new IllegalArgumentException("Breaker maxTimeouts (" + maxTimeouts
+                + ") must be greater than tripAfter (" + tripThreshold + ")");
+        }
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.tripThreshold = tripThreshold;
+        this.resetThreshold = resetThreshold;
+        this.maxTimeouts = maxTimeouts;
+    }
+
+    /**
+     * Creates a breaker configured by the {@code chat.breaker.*} system properties.
+     *
+     * @return the breaker
+     */
+    public static CircuitBreaker withDefaults() {
+        return new CircuitBreaker(ChatConstants.SLOW_CALL_MS, ChatConstants.BREAKER_TRIP_THRESHOLD,
+            ChatConstants.BREAKER_RESET_THRESHOLD, ChatConstants.BREAKER_MAX_TIMEOUTS);
+    }
+
+    /**
+     * Records a completed call.
+     *
+     * @param nanos how long the call took
+     * @return true if this call changed the state
+     */
+    public boolean recordCall(long nanos) {
+        consecutiveTimeouts = 0;
+        if (nanos >= slowCallNanos) {
+            return recordSlow();
+        }
+        consecutiveSlow = 0;
+        if (state == State.OPEN && ++consecutiveFast >= resetThreshold) {
+            state = State.CLOSED;
+            consecutiveFast = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records a call that hit the callback deadline.
+     *
+     * @return true if this call changed the state
+     */
+    public boolean recordTimeout() {
+        consecutiveTimeouts++;
+        return recordSlow();
+    }
+
+    private boolean recordSlow() {
+        consecutiveFast = 0;
+        if (state == State.CLOSED && ++consecutiveSlow >= tripThreshold) {
+            state = State.OPEN;
+            consecutiveSlow = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the client has timed out too many times in a row to keep.
+     *
+     * @return true if the client should be disconnected
+     */
+    public boolean shouldGiveUp() {
+        return consecutiveTimeouts >= maxTimeouts;
+    }
+
+    /**
+     * Gets the current state.
+     *
+     * @return the state
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Checks if delivery is degraded.
+     *
+     * @return true if the breaker is open
+     */
+    public boolean isOpen() {
+        return state == State.OPEN;
+    }
+}
@@ -0,0 +1,136 @@
+package ServerSide;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of connected clients.
+ * Keeps an immutable snapshot array for iteration and a case-insensitive
+ * index by username. Reads never lock; membership changes are serialized
+ * and publish a fresh snapshot, so broadcasts never contend with joins.
+ *
+ * @author Refactored
+ */
+public class ClientRegistry {
+
+    private static final Chatter[] EMPTY = new Chatter[0];
+
+    /** Index keyed by lower-cased username */
+    private final ConcurrentHashMap<String, Chatter> byName = new ConcurrentHashMap<>();
+
+    /** Current members in join order; replaced, never mutated */
+    private volatile Chatter[] snapshot = EMPTY;
+
+    /**
+     * Adds a client if its username is not already taken.
+     *
+     * @param chatter the client to add
+     * @return true if added, false if the username is in use
+     */
+    public synchronized boolean add(Chatter chatter) {
+        if (byName.putIfAbsent(key(chatter.getName()), chatter) != null) {
+            return false;
+        }
+        Chatter[] current = snapshot;
+        Chatter[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = chatter;
+        snapshot = updated;
+        return true;
+    }
+
+    /**
+     * Removes this exact client instance, leaving any newer client that
+     * has since taken the same username in place.
+     *
+     * @param chatter the client to remove
+     * @return true if it was registered
+     */
+    public synchronized boolean remove(Chatter chatter) {
+        if (!byName.remove(key(chatter.getName()), chatter)) {
+            return false;
+        }
+        Chatter[] current = snapshot;
+        int index = indexOf(current, chatter);
+        Chatter[] updated = new Chatter[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        snapshot = updated;
+        return true;
+    }
+
+    /**
+     * Looks up a client by username.
+     *
+     * @param username the username (case-insensitive)
+     * @return the client, or null if not connected
+     */
+    public Chatter get(String username) {
+        return byName.get(key(username));
+    }
+
+    /**
+     * Checks if a username is connected.
+     *
+     * @param username the username (case-insensitive)
+     * @return true if connected
+     */
+    public boolean contains(String username) {
+        return byName.containsKey(key(username));
+    }
+
+    /**
+     * Gets the current members in join order.
+     * The returned array is shared and must not be modified.
+     *
+     * @return the member snapshot
+     */
+    public Chatter[] snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Gets the usernames of the current members in join order.
+     *
+     * @return array of usernames
+     */
+    public String[] getNames() {
+        Chatter[] current = snapshot;
+        String[] names = new String[current.length];
+        for (int i = 0; i < current.length; i++) {
+            names[i] = current[i].getName();
+        }
+        return names;
+    }
+
+    /**
+     * Gets the number of members.
+     *
+     * @return the member count
+     */
+    public int size() {
+        return snapshot.length;
+    }
+
+    /**
+     * Checks if there are no members.
+     *
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return snapshot.length == 0;
+    }
+
+    private static int indexOf(Chatter[] chatters, Chatter chatter) {
+        for (int i = 0; i < chatters.length; i++) {
+            if (chatters[i] == chatter) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Index and snapshot out of sync for " + chatter);
+    }
+
+    private static String key(String username) {
+        return username.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,552 @@
+package ServerSide;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One server's membership in a chat cluster. Named rooms are divided
+ * between the nodes by a {@link ConsistentHashRing} over the node ids, and
+ * each node hosts only the rooms it owns. A client stays connected to one
+ * node, which passes its requests for rooms hosted elsewhere on to the
+ * owner; the owner keeps the client as a member whose messages it hands
+ * back to the client's node, and drops it when that node says the client
+ * left or cannot be reached. The default room is not divided: every node
+ * has its own, holding the users connected to it.
+ *
+ * <p>Nodes keep each other informed over their {@link ClusterPeer} links.
+ * Joins and leaves are sent to every other node, in order per node and
+ * without waiting, so each node knows which node every user is on; that
+ * lets a private message reach a user on another node and keeps usernames
+ * unique across the cluster, on a best-effort basis: a join is only checked
+ * against what has already arrived, so two nodes can accept the same name
+ * at the same moment. A node that cannot be reached is skipped and its
+ * users forgotten until it is reached again, when they are listed afresh.
+ * A node that starts tells the others to forget its users from before.
+ *
+ * @author Refactored
+ */
+public class ClusterNode extends UnicastRemoteObject implements ClusterPeer {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(ClusterNode.class.getName());
+
+    private final Chat chat;
+    private final String nodeId;
+    /** Registry address of every node, keyed by node id */
+    private final Map<String, String> addresses;
+    private final ConsistentHashRing ring;
+
+    /** Node each user connected elsewhere is on, keyed by lower-cased username */
+    private final ConcurrentHashMap<String, String> remoteUsers = new ConcurrentHashMap<>();
+
+    /** Cached links to the other nodes; dropped when a call fails */
+    private final ConcurrentHashMap<String, ClusterPeer> peers = new ConcurrentHashMap<>();
+
+    /** One thread per other node, so its presence events arrive in order */
+    private final Map<String, ExecutorService> forwarders = new LinkedHashMap<>();
+
+    /**
+     * Creates this node's membership, exporting its peer link.
+     *
+     * @param chat the server this node runs
+     * @param nodeId this node's id, which must be one of the members
+     * @param members cluster members as {@code id=host:port,...}, where
+     *                port is the member's RMI registry port
+     * @param virtualNodes points each node takes on the hash ring
+     * @throws RemoteException if the peer link cannot be exported
+     * @throws IllegalArgumentException if the members cannot be parsed or do not include nodeId
+     */
+    public ClusterNode(Chat chat, String nodeId, String members, int virtualNodes) throws RemoteException {
+        super();
+        this.chat = chat;
+        this.nodeId = nodeId;
+        this.addresses = parseMembers(members);
+        if (!addresses.containsKey(nodeId)) {
+            throw new IllegalArgumentException("Cluster members do not include this node '" + nodeId + "'");
+        }
+        this.ring = new ConsistentHashRing(addresses.keySet(), virtualNodes);
+        for (String id : addresses.keySet()) {
+            if (!id.equals(nodeId)) {
+                forwarders.put(id, Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "chat-peer-" + id);
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+            }
+        }
+    }
+
+    /**
+     * Parses a member list.
+     *
+     * @param members members as {@code id=host:port,...}
+     * @return registry address by node id, in the order given
+     * @throws IllegalArgumentException if an entry is malformed or an id repeats
+     */
+    static Map<String, String> parseMembers(String members) {
+        if (members == null || members.trim().isEmpty()) {
+            throw new IllegalArgumentException("Cluster members cannot be empty");
+        }
+        Map<String, String> parsed = new LinkedHashMap<>();
+        for (String entry : members.split(",")) {
+            int equals = entry.indexOf('=');
+            int colon = entry.lastIndexOf(':');
+            if (equals <= 0 || colon <= equals + 1) {
+                throw new IllegalArgumentException("Cluster member must be id=host:port: " + entry.trim());
+            }
+            String id = entry.substring(0, equals).trim();
+            String address = entry.substring(equals + 1).trim();
+            try {
+                Integer.parseInt(entry.substring(colon + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid port in cluster member: " + entry.trim());
+            }
+            if (parsed.put(id, address) != null) {
+                throw new IllegalArgumentException("Duplicate cluster member id: " + id);
+            }
+        }
+        return Collections.unmodifiableMap(parsed);
+    }
+
+    /**
+     * Learns who is already connected to the other nodes and tells them
+     * this node has started. Nodes that are not running yet are skipped;
+     * they announce their users as they join.
+     */
+    public void start() {
+        for (String id : forwarders.keySet()) {
+            try {
+                peer(id).nodeStarted(nodeId);
+            } catch (RemoteException | NotBoundException e) {
+                forget(id);
+                LOGGER.info("Cluster node '" + id + "' is not reachable yet");
+            }
+        }
+        LOGGER.info("Cluster node '" + nodeId + "' started with " + addresses.size() + " nodes and "
+            + remoteUsers.size() + " remote users");
+    }
+
+    /**
+     * Stops forwarding events and unexports the peer link.
+     */
+    public void close() {
+        for (ExecutorService forwarder : forwarders.values()) {
+            forwarder.shutdown();
+        }
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (RemoteException e) {
+            // Already unexported
+        }
+    }
+
+    /**
+     * Gets this node's id.
+     *
+     * @return the node id
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Finds the node that serves a named room.
+     *
+     * @param roomName the room name (case-insensitive)
+     * @return the owning node id
+     */
+    public String ownerOf(String roomName) {
+        return ring.nodeFor(roomName.trim().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Gets a node's registry address.
+     *
+     * @param id the node id
+     * @return the address as host:port
+     */
+    public String addressOf(String id) {
+        return addresses.get(id);
+    }
+
+    /**
+     * Finds the node a user connected elsewhere is on.
+     *
+     * @param userName the username (case-insensitive)
+     * @return the node id, or null if the user is not known to be on another node
+     */
+    public String remoteNodeOf(String userName) {
+        return remoteUsers.get(userKey(userName));
+    }
+
+    /**
+     * Tells the other nodes that a user connected here.
+     *
+     * @param userName the username
+     */
+    void publishJoin(String userName) {
+        forEachPeer(peer -> peer.userJoined(nodeId, userName));
+    }
+
+    /**
+     * Tells the other nodes that a user left this node.
+     *
+     * @param userName the username
+     */
+    void publishLeave(String userName) {
+        forEachPeer(peer -> peer.userLeft(nodeId, userName));
+    }
+
+    /**
+     * Joins a user connected here to a room hosted by another node.
+     *
+     * @param ownerId the id of the node hosting the room
+     * @param userName the username
+     * @param roomName the room name
+     * @return as {@link Chattable#joinRoom(String, String)}
+     * @throws RemoteException if the node cannot be reached or refuses
+     */
+    long joinRoomAt(String ownerId, String userName, String roomName) throws RemoteException {
+        return callOwner(ownerId, peer -> peer.joinRoom(nodeId, userName, roomName));
+    }
+
+    /**
+     * Removes a user connected here from a room hosted by another node.
+     *
+     * @param ownerId the id of the node hosting the room
+     * @param userName the username
+     * @param roomName the room name
+     * @throws RemoteException if the node cannot be reached or refuses
+     */
+    void leaveRoomAt(String ownerId, String userName, String roomName) throws RemoteException {
+        callOwner(ownerId, peer -> {
+            peer.leaveRoom(nodeId, userName, roomName);
+            return null;
+        });
+    }
+
+    /**
+     * Sends a message to a room hosted by another node.
+     *
+     * @param ownerId the id of the node hosting the room
+     * @param userName the username of the sender
+     * @param roomName the room name
+     * @param message the message content
+     * @throws RemoteException if the node cannot be reached or refuses
+     */
+    void updateRoomChatAt(String ownerId, String userName, String roomName, String message)
+            throws RemoteException {
+        callOwner(ownerId, peer -> {
+            peer.updateRoomChat(nodeId, userName, roomName, message);
+            return null;
+        });
+    }
+
+    /**
+     * Lists the members of a room hosted by another node.
+     *
+     * @param ownerId the id of the node hosting the room
+     * @param roomName the room name
+     * @return member usernames in join order
+     * @throws RemoteException if the node cannot be reached or refuses
+     */
+    String[] getRoomMembersAt(String ownerId, String roomName) throws RemoteException {
+        return callOwner(ownerId, peer -> peer.getRoomMembers(roomName));
+    }
+
+    /**
+     * Fetches a page of history from a room hosted by another node.
+     *
+     * @param ownerId the id of the node hosting the room
+     * @param userName the username of a member connected here
+     * @param roomName the room name
+     * @param beforeSeq only messages numbered below this; 0 or less for the newest
+     * @param limit the maximum number of messages
+     * @return the page, oldest message first
+     * @throws RemoteException if the node cannot be reached or refuses
+     */
+    HistoryPage fetchHistoryAt(String ownerId, String userName, String roomName, long beforeSeq, int limit)
+            throws RemoteException {
+        return callOwner(ownerId, peer -> peer.fetchHistory(nodeId, userName, roomName, beforeSeq, limit));
+    }
+
+    /**
+     * Asks a room hosted by another node to send its messages again.
+     *
+     * @param ownerId the id of the node hosting the room
+     * @param userName the username of a member connected here
+     * @param roomName the room name
+     * @param fromSeq the first sequence number wanted
+     * @return the page, oldest message first
+     * @throws RemoteException if the node cannot be reached or refuses
+     */
+    HistoryPage resendAt(String ownerId, String userName, String roomName, long fromSeq)
+            throws RemoteException {
+        return callOwner(ownerId, peer -> peer.resend(nodeId, userName, roomName, fromSeq));
+    }
+
+    /**
+     * Hands messages of a room hosted here to the node a member is connected to.
+     *
+     * @param memberNodeId the id of the member's node
+     * @param userName the member's username
+     * @param encodedBatch the messages in {@link MessageBatch} encoding
+     * @throws RemoteException if the node cannot be reached or no longer has the member
+     */
+    void deliverToMember(String memberNodeId, String userName, byte[] encodedBatch) throws RemoteException {
+        boolean delivered;
+        try {
+            delivered = peer(memberNodeId).deliverRoomMessages(userName, encodedBatch);
+        } catch (RemoteException | NotBoundException e) {
+            forget(memberNodeId);
+            throw new RemoteException("Cluster node '" + memberNodeId + "' is not reachable", e);
+        }
+        if (!delivered) {
+            throw new RemoteException("User '" + userName + "' left cluster node '" + memberNodeId + "'");
+        }
+    }
+
+    /**
+     * Hands a private message to the nodes its remote recipients are on.
+     * Waits for each node, so the caller can report who missed it.
+     *
+     * @param senderName the sanitized sender name
+     * @param recipientNames recipients not connected to this node
+     * @param message the private message content
+     * @return the recipients the message did not reach
+     */
+    List<String> forwardPrivateMessage(String senderName, List<String> recipientNames, String message) {
+        Map<String, List<String>> byNode = new LinkedHashMap<>();
+        List<String> missed = new ArrayList<>();
+        for (String recipientName : recipientNames) {
+            String id = recipientName == null ? null : remoteNodeOf(recipientName);
+            if (id != null) {
+                byNode.computeIfAbsent(id, k -> new ArrayList<>()).add(recipientName);
+            } else {
+                missed.add(recipientName);
+            }
+        }
+
+        for (Map.Entry<String, List<String>> entry : byNode.entrySet()) {
+            String id = entry.getKey();
+            List<String> names = entry.getValue();
+            try {
+                String[] notThere = peer(id).deliverPrivateMessage(senderName, names.toArray(new String[0]), message);
+                for (String name : notThere) {
+                    // The node no longer has the user; a leave was missed
+                    remoteUsers.remove(userKey(name), id);
+                    missed.add(name);
+                }
+            } catch (RemoteException | NotBoundException e) {
+                forget(id);
+                LOGGER.log(Level.WARNING, "Could not forward private message to node '" + id + "'", e);
+                missed.addAll(names);
+            }
+        }
+        return missed;
+    }
+
+    @Override
+    public void userJoined(String fromNodeId, String userName) throws RemoteException {
+        if (userName != null && addresses.containsKey(fromNodeId) && !fromNodeId.equals(nodeId)) {
+            remoteUsers.put(userKey(userName), fromNodeId);
+        }
+    }
+
+    @Override
+    public void userLeft(String fromNodeId, String userName) throws RemoteException {
+        if (userName != null) {
+            remoteUsers.remove(userKey(userName), fromNodeId);
+            chat.dropRemoteMember(fromNodeId, userName);
+        }
+    }
+
+    @Override
+    public long joinRoom(String fromNodeId, String userName, String roomName) throws RemoteException {
+        requireMember(fromNodeId);
+        return chat.joinRoomFrom(fromNodeId, userName, roomName);
+    }
+
+    @Override
+    public void leaveRoom(String fromNodeId, String userName, String roomName) throws RemoteException {
+        chat.leaveRoomFrom(fromNodeId, userName, roomName);
+    }
+
+    @Override
+    public void updateRoomChat(String fromNodeId, String userName, String roomName, String message)
+            throws RemoteException {
+        chat.updateRoomChatFrom(fromNodeId, userName, roomName, message);
+    }
+
+    @Override
+    public String[] getRoomMembers(String roomName) throws RemoteException {
+        return chat.getHostedRoomMembers(roomName);
+    }
+
+    @Override
+    public HistoryPage fetchHistory(String fromNodeId, String userName, String roomName, long beforeSeq,
+            int limit) throws RemoteException {
+        return chat.fetchHistoryFrom(fromNodeId, userName, roomName, beforeSeq, limit);
+    }
+
+    @Override
+    public HistoryPage resend(String fromNodeId, String userName, String roomName, long fromSeq)
+            throws RemoteException {
+        return chat.resendFrom(fromNodeId, userName, roomName, fromSeq);
+    }
+
+    @Override
+    public boolean deliverRoomMessages(String userName, byte[] encodedBatch) throws RemoteException {
+        return chat.deliverRoomMessages(userName, encodedBatch);
+    }
+
+    @Override
+    public void nodeStarted(String fromNodeId) throws RemoteException {
+        if (addresses.containsKey(fromNodeId) && !fromNodeId.equals(nodeId)) {
+            // Its link was exported anew too
+            forget(fromNodeId);
+            LOGGER.info("Cluster node '" + fromNodeId + "' started");
+        }
+    }
+
+    @Override
+    public String[] deliverPrivateMessage(String senderName, String[] recipientNames, String message)
+            throws RemoteException {
+        return chat.deliverForwardedPrivateMessage(senderName, recipientNames, message);
+    }
+
+    @Override
+    public String[] getLocalUsers() throws RemoteException {
+        return chat.getLocalUserNames();
+    }
+
+    /**
+     * Queues a call to every other node on that node's forwarder.
+     *
+     * @param call the call to make
+     */
+    private void forEachPeer(PeerCall call) {
+        for (Map.Entry<String, ExecutorService> entry : forwarders.entrySet()) {
+            String id = entry.getKey();
+            try {
+                entry.getValue().execute(() -> {
+                    try {
+                        call.invoke(peer(id));
+                    } catch (RemoteException | NotBoundException e) {
+                        forget(id);
+                        LOGGER.log(Level.FINE, "Cluster node '" + id + "' missed an update", e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Closing
+            }
+        }
+    }
+
+    /**
+     * Drops the link to a node that could not be reached, and the users it
+     * had, since they may have left without this node hearing of it.
+     *
+     * @param id the node id
+     */
+    private void forget(String id) {
+        peers.remove(id);
+        remoteUsers.values().removeIf(id::equals);
+        chat.dropRemoteMembers(id);
+    }
+
+    /**
+     * Checks that a node id names another member of the cluster.
+     *
+     * @param id the node id
+     * @throws IllegalArgumentException if it does not
+     */
+    private void requireMember(String id) {
+        if (id == null || !addresses.containsKey(id) || id.equals(nodeId)) {
+            throw new IllegalArgumentException("Unknown cluster node '" + id + "'");
+        }
+    }
+
+    /**
+     * Makes a call to the node hosting a room. A node that cannot be
+     * reached is forgotten; one that refuses the request passes its reason on.
+     *
+     * @param <T> the call's result type
+     * @param id the node id
+     * @param call the call to make
+     * @return the call's result
+     * @throws RemoteException if the node cannot be reached or refuses
+     */
+    private <T> T callOwner(String id, OwnerCall<T> call) throws RemoteException {
+        try {
+            return call.invoke(peer(id));
+        } catch (ServerException e) {
+            // Reached the node, which refused
+            throw e.getCause() instanceof RemoteException ? (RemoteException) e.getCause() : e;
+        } catch (RemoteException | NotBoundException e) {
+            forget(id);
+            throw new RemoteException("Cluster node '" + id + "' is not reachable", e);
+        }
+    }
+
+    /**
+     * Gets the link to another node, looking it up in that node's registry
+     * and listing its users on first use or after it was forgotten.
+     *
+     * @param id the node id
+     * @return the link
+     * @throws RemoteException if the node cannot be reached
+     * @throws NotBoundException if the node has not bound its link yet
+     */
+    private ClusterPeer peer(String id) throws RemoteException, NotBoundException {
+        ClusterPeer peer = peers.get(id);
+        if (peer == null) {
+            String address = addresses.get(id);
+            int colon = address.lastIndexOf(':');
+            peer = (ClusterPeer) LocateRegistry.getRegistry(address.substring(0, colon),
+                Integer.parseInt(address.substring(colon + 1))).lookup(ChatConstants.PEER_SERVICE_NAME);
+            for (String userName : peer.getLocalUsers()) {
+                remoteUsers.put(userKey(userName), id);
+            }
+            peers.put(id, peer);
+        }
+        return peer;
+    }
+
+    private static String userKey(String userName) {
+        return userName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * One remote call to another node.
+     */
+    @FunctionalInterface
+    private interface PeerCall {
+        void invoke(ClusterPeer peer) throws RemoteException;
+    }
+
+    /**
+     * One remote call to the node hosting a room, with a result.
+     *
+     * @param <T> the result type
+     */
+    @FunctionalInterface
+    private interface OwnerCall<T> {
+        T invoke(ClusterPeer peer) throws RemoteException;
+    }
+}
@@ -0,0 +1,153 @@
+package ServerSide;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Remote interface between the nodes of a chat cluster. Each node binds
+ * one under {@link ChatConstants#PEER_SERVICE_NAME} in its registry and
+ * uses the others' to tell them who is connected where, to hand over
+ * private messages for users connected elsewhere, and to pass on requests
+ * for rooms hosted elsewhere. A room's messages come back to the node its
+ * member is connected to through {@link #deliverRoomMessages}.
+ *
+ * @author Refactored
+ */
+public interface ClusterPeer extends Remote {
+
+    /**
+     * Tells this node that a user connected to another node.
+     *
+     * @param nodeId the id of the node the user connected to
+     * @param userName the username
+     * @throws RemoteException if a remote communication error occurs
+     */
+    void userJoined(String nodeId, String userName) throws RemoteException;
+
+    /**
+     * Tells this node that a user left another node.
+     *
+     * @param nodeId the id of the node the user left
+     * @param userName the username
+     * @throws RemoteException if a remote communication error occurs
+     */
+    void userLeft(String nodeId, String userName) throws RemoteException;
+
+    /**
+     * Delivers a private message to users connected to this node.
+     *
+     * @param senderName the username of the sender, connected to another node
+     * @param recipientNames usernames of the recipients (case-insensitive)
+     * @param message the private message content
+     * @return the recipients not connected to this node
+     * @throws RemoteException if a remote communication error occurs
+     * @throws IllegalArgumentException if any argument is null or empty
+     */
+    String[] deliverPrivateMessage(String senderName, String[] recipientNames, String message)
+        throws RemoteException;
+
+    /**
+     * Adds a user connected to another node to a room hosted here.
+     *
+     * @param nodeId the id of the node the user is connected to
+     * @param userName the username
+     * @param roomName the room name; same format rules as usernames
+     * @return as {@link Chattable#joinRoom(String, String)}
+     * @throws RemoteException if a remote communication error occurs or
+     *         this node does not host the room
+     * @throws IllegalArgumentException if roomName is invalid
+     */
+    long joinRoom(String nodeId, String userName, String roomName) throws RemoteException;
+
+    /**
+     * Removes a user connected to another node from a room hosted here.
+     *
+     * @param nodeId the id of the node the user is connected to
+     * @param userName the username
+     * @param roomName the room name (case-insensitive)
+     * @throws RemoteException if a remote communication error occurs, the
+     *         room does not exist, or the user is in no room here
+     */
+    void leaveRoom(String nodeId, String userName, String roomName) throws RemoteException;
+
+    /**
+     * Sends a message from a user connected to another node to a room hosted here.
+     *
+     * @param nodeId the id of the node the sender is connected to
+     * @param userName the username of the sender, who must be a member
+     * @param roomName the room name (case-insensitive)
+     * @param message the message content
+     * @throws RemoteException if a remote communication error occurs, the
+     *         room does not exist, or the sender is not a member
+     * @throws IllegalArgumentException if any argument is null or empty
+     */
+    void updateRoomChat(String nodeId, String userName, String roomName, String message)
+        throws RemoteException;
+
+    /**
+     * Lists the members of a room hosted here.
+     *
+     * @param roomName the room name (case-insensitive)
+     * @return member usernames in join order
+     * @throws RemoteException if a remote communication error occurs or the room does not exist
+     */
+    String[] getRoomMembers(String roomName) throws RemoteException;
+
+    /**
+     * Fetches a page of a room's history for a member connected to another node.
+     *
+     * @param nodeId the id of the node the member is connected to
+     * @param userName the member's username
+     * @param roomName the room name (case-insensitive)
+     * @param beforeSeq as {@link Chattable#fetchHistory(String, String, long, int)}
+     * @param limit the maximum number of messages
+     * @return the page, oldest message first
+     * @throws RemoteException if a remote communication error occurs, the
+     *         room does not exist, or the user is not a member
+     */
+    HistoryPage fetchHistory(String nodeId, String userName, String roomName, long beforeSeq, int limit)
+        throws RemoteException;
+
+    /**
+     * Sends a room's messages again for a member connected to another node.
+     *
+     * @param nodeId the id of the node the member is connected to
+     * @param userName the member's username
+     * @param roomName the room name (case-insensitive)
+     * @param fromSeq the first sequence number wanted
+     * @return the page, oldest message first
+     * @throws RemoteException if a remote communication error occurs, the
+     *         room does not exist, or the user is not a member
+     */
+    HistoryPage resend(String nodeId, String userName, String roomName, long fromSeq) throws RemoteException;
+
+    /**
+     * Queues messages of a room hosted on another node for a member
+     * connected to this node.
+     *
+     * @param userName the member's username
+     * @param encodedBatch the messages in {@link MessageBatch} encoding
+     * @return false if the user is no longer connected here or in the
+     *         room, so the hosting node should drop the member
+     * @throws RemoteException if a remote communication error occurs
+     */
+    boolean deliverRoomMessages(String userName, byte[] encodedBatch) throws RemoteException;
+
+    /**
+     * Tells this node that another node has just started, so it has no
+     * users and anything known about its users before is stale.
+     *
+     * @param nodeId the id of the node that started
+     * @throws RemoteException if a remote communication error occurs
+     */
+    void nodeStarted(String nodeId) throws RemoteException;
+
+    /**
+     * Lists the users connected to this node, for a node that has just
+     * started or has reached this one again.
+     *
+     * @return the usernames
+     * @throws RemoteException if a remote communication error occurs
+     */
+    String[] getLocalUsers() throws RemoteException;
+}
@@ -0,0 +1,90 @@
+package ServerSide;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assigns keys to nodes by consistent hashing. Each node is placed at many
+ * points on a 64-bit ring and a key belongs to the first node point at or
+ * after the key's hash, so keys spread evenly and adding or removing a node
+ * only moves the keys next to its points. Every node that builds a ring
+ * from the same node ids assigns every key the same way.
+ *
+ * <p>The ring is immutable and safe to share between threads.
+ *
+ * @author Refactored
+ */
+public final class ConsistentHashRing {
+
+    private final TreeMap<Long, String> points = new TreeMap<>();
+    private final List<String> nodeIds;
+
+    /**
+     * Builds a ring.
+     *
+     * @param nodeIds the node ids; order does not matter
+     * @param virtualNodes points placed on the ring per node
+     * @throws IllegalArgumentException if there are no nodes or virtualNodes is not positive
+     */
+    public ConsistentHashRing(Collection<String> nodeIds, int virtualNodes) {
+        if (nodeIds == null || nodeIds.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one node");
+        }
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("Virtual nodes must be positive");
+        }
+        for (String nodeId : nodeIds) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // On the rare collision the smaller id wins, so every ring agrees
+                points.merge(hash(nodeId + "#" + i), nodeId, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+        this.nodeIds = Collections.unmodifiableList(new ArrayList<>(nodeIds));
+    }
+
+    /**
+     * Finds the node a key belongs to.
+     *
+     * @param key the key
+     * @return the owning node id
+     */
+    public String nodeFor(String key) {
+        Map.Entry<Long, String> point = points.ceilingEntry(hash(key));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    /**
+     * Gets the nodes on the ring.
+     *
+     * @return the node ids, in the order given
+     */
+    public List<String> getNodeIds() {
+        return nodeIds;
+    }
+
+    /**
+     * Hashes a string with 64-bit FNV-1a followed by a finalizing mix, so
+     * similar keys such as "room1" and "room2" land far apart.
+     *
+     * @param value the string
+     * @return the hash
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,90 @@
+package ServerSide;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Deliveries made while holding a lock. Each is queued at once if the
+ * client's queue has room; otherwise it is set aside and queued by
+ * {@link #deliver()} after the lock is released, where a BLOCK overflow
+ * policy may wait for room without stalling everyone else behind the lock.
+ * Once a client has a delivery set aside, its later ones are set aside too,
+ * so each client still receives them in order.
+ *
+ * <p>Not thread-safe; use one instance per locked section. Nothing is
+ * allocated until a delivery is set aside, so it is cheap on every message.
+ *
+ * @author Refactored
+ */
+public final class DeferredDeliveries {
+
+    private List<Chatter> recipients;
+    private List<DeliveryQueue.Delivery> deliveries;
+    /** Clients with a delivery set aside, or null while there are none */
+    private Set<Chatter> waiting;
+
+    /**
+     * Queues a delivery for a client, or sets it aside if that would wait.
+     *
+     * @param chatter the client
+     * @param delivery the callback to deliver
+     */
+    public void offer(Chatter chatter, DeliveryQueue.Delivery delivery) {
+        if ((waiting == null || !waiting.contains(chatter)) && chatter.offer(delivery)) {
+            return;
+        }
+        if (waiting == null) {
+            waiting = Collections.newSetFromMap(new IdentityHashMap<>());
+            recipients = new ArrayList<>();
+            deliveries = new ArrayList<>();
+        }
+        waiting.add(chatter);
+        recipients.add(chatter);
+        deliveries.add(delivery);
+    }
+
+    /**
+     * Queues a delivery for several clients, setting it aside for those
+     * whose queue is full.
+     *
+     * @param chatters the clients
+     * @param delivery the callback to deliver
+     * @param excluded a client to skip, or null
+     */
+    public void offerToAll(Chatter[] chatters, DeliveryQueue.Delivery delivery, Chatter excluded) {
+        for (Chatter chatter : chatters) {
+            if (chatter != excluded) {
+                offer(chatter, delivery);
+            }
+        }
+    }
+
+    /**
+     * Queues the deliveries set aside, in the order they were offered,
+     * waiting for room as each client's overflow policy allows. Call
+     * without holding any lock.
+     *
+     * @return clients whose queue rejected a delivery and should be evicted
+     */
+    public List<Chatter> deliver() {
+        if (waiting == null) {
+            return List.of();
+        }
+        List<Chatter> overflowed = new ArrayList<>();
+        for (int i = 0; i < recipients.size(); i++) {
+            Chatter chatter = recipients.get(i);
+            // After a rejection the client is evicted, so its later deliveries are skipped
+            if (waiting.contains(chatter) && !chatter.deliver(deliveries.get(i))) {
+                waiting.remove(chatter);
+                overflowed.add(chatter);
+            }
+        }
+        recipients = null;
+        deliveries = null;
+        waiting = null;
+        return overflowed;
+    }
+}
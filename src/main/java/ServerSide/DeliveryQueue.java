@@ -0,0 +1,736 @@
+package ServerSide;
+
+import ClientSide.ChatClient;
+import java.net.SocketTimeoutException;
+import java.rmi.RemoteException;
+import java.rmi.UnmarshalException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded outbound queue for a single connected client.
+ * Server callbacks are enqueued here and delivered in order by a worker
+ * running on the shared delivery executor, so a slow client only delays itself.
+ * Consecutive chat messages are coalesced into a single batch call, flushed
+ * when the batch is full or the flush window has passed.
+ * A client whose calls are repeatedly slow or time out trips its circuit
+ * breaker into degraded delivery: the worker sends one large batch, releases
+ * its thread, and returns after the degraded interval.
+ * Every remote call to the client, including heartbeat pings made
+ * elsewhere, holds one of the client's call permits, which bounds how many
+ * calls and threads a single client can tie up.
+ *
+ * @author Refactored
+ */
+public class DeliveryQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(DeliveryQueue.class.getName());
+
+    /**
+     * What to do when the queue is full and another delivery arrives.
+     */
+    public enum OverflowPolicy {
+        /** Discard the oldest pending delivery to make room */
+        DROP_OLDEST,
+        /** Reject the delivery and disconnect the client */
+        DISCONNECT,
+        /** Wait up to the block timeout for room, then disconnect the client */
+        BLOCK
+    }
+
+    /**
+     * A single callback to perform against a client.
+     */
+    @FunctionalInterface
+    public interface Delivery {
+
+        /**
+         * Performs the callback.
+         *
+         * @param client the remote client to deliver to
+         * @throws RemoteException if a remote communication error occurs
+         */
+        void deliverTo(ChatClient client) throws RemoteException;
+
+        /**
+         * Performs the callback using only the methods of the original
+         * ChatClient interface, for clients built before it was extended.
+         *
+         * @param client the remote client to deliver to
+         * @throws RemoteException if a remote communication error occurs
+         */
+        default void deliverToLegacy(ChatClient client) throws RemoteException {
+            deliverTo(client);
+        }
+    }
+
+    /**
+     * A chat message delivery that may be coalesced with its neighbours.
+     * One delivery is shared by every recipient of a message, so it is
+     * encoded or formatted once for all of them.
+     */
+    public static final class MessageDelivery implements Delivery {
+
+        private final ChatMessage message;
+        private final MessageBatch batch;
+        /** Formatted for legacy clients on first use */
+        private volatile String formatted;
+
+        /**
+         * Creates a message delivery.
+         *
+         * @param message the message
+         */
+        public MessageDelivery(ChatMessage message) {
+            this.message = message;
+            this.batch = new MessageBatch(List.of(message));
+        }
+
+        /**
+         * Gets the message.
+         *
+         * @return the message
+         */
+        public ChatMessage getMessage() {
+            return message;
+        }
+
+        /**
+         * Gets the message as a batch of one, shared by every recipient.
+         *
+         * @return the batch
+         */
+        public MessageBatch getBatch() {
+            return batch;
+        }
+
+        @Override
+        public void deliverTo(ChatClient client) throws RemoteException {
+            client.receiveEncoded(batch.encoded());
+        }
+
+        @Override
+        public void deliverToLegacy(ChatClient client) throws RemoteException {
+            String text = formatted;
+            if (text == null) {
+                text = MessageFormatter.format(message);
+                formatted = text;
+            }
+            client.messageFromServer(text);
+        }
+    }
+
+    /**
+     * Several messages sent together in one call, such as history replayed
+     * to a client that just joined. Never coalesced with other deliveries.
+     */
+    public static final class BatchDelivery implements Delivery {
+
+        private final MessageBatch messages;
+
+        /**
+         * Creates a batch delivery.
+         *
+         * @param messages the messages, oldest first
+         */
+        public BatchDelivery(MessageBatch messages) {
+            this.messages = messages;
+        }
+
+        /**
+         * Gets the messages.
+         *
+         * @return the messages, oldest first
+         */
+        public MessageBatch getMessages() {
+            return messages;
+        }
+
+        @Override
+        public void deliverTo(ChatClient client) throws RemoteException {
+            client.receiveEncoded(messages.encoded());
+        }
+
+        @Override
+        public void deliverToLegacy(ChatClient client) throws RemoteException {
+            for (ChatMessage message : messages) {
+                client.messageFromServer(MessageFormatter.format(message));
+            }
+        }
+    }
+
+    private final String name;
+    private final ChatClient client;
+    private final BlockingQueue<Delivery> pending;
+    private final Executor executor;
+    private final Consumer<RemoteException> failureHandler;
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final LongAdder enqueuedCount = new LongAdder();
+    private final LongAdder deliveredCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+    private final CircuitBreaker breaker = CircuitBreaker.withDefaults();
+    private final Semaphore callPermits = new Semaphore(ChatConstants.DELIVERY_MAX_CALLS_PER_CLIENT);
+
+    /**
+     * A delivery taken from the queue but not yet sent. Only the worker
+     * writes it; enqueuing threads read it to decide whether to start one.
+     */
+    private volatile Delivery carried;
+
+    private volatile OverflowPolicy overflowPolicy;
+    private volatile long blockTimeoutMillis;
+    private volatile boolean closed = false;
+    private volatile boolean legacyClient = false;
+    private volatile boolean compression = false;
+    private volatile int maxBatchSize;
+    private volatile long flushWindowNanos;
+    private volatile LatencyHistogram deliveryLatency;
+
+    /**
+     * Creates a new delivery queue.
+     *
+     * @param name the owning username, used for logging
+     * @param client the remote client to deliver to
+     * @param capacity the maximum number of pending deliveries
+     * @param executor the executor that runs the delivery worker
+     * @param failureHandler invoked once if a delivery fails with a RemoteException
+     */
+    public DeliveryQueue(String name, ChatClient client, int capacity, Executor executor,
+                         Consumer<RemoteException> failureHandler) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.name = name;
+        this.client = client;
+        this.pending = new ArrayBlockingQueue<>(capacity);
+        this.executor = executor;
+        this.failureHandler = failureHandler;
+        this.overflowPolicy = ChatConstants.DEFAULT_OVERFLOW_POLICY;
+        this.blockTimeoutMillis = ChatConstants.DELIVERY_BLOCK_TIMEOUT_MS;
+        this.maxBatchSize = ChatConstants.DELIVERY_BATCH_SIZE;
+        this.flushWindowNanos = TimeUnit.MILLISECONDS.toNanos(ChatConstants.DELIVERY_FLUSH_WINDOW_MS);
+    }
+
+    /**
+     * Enqueues a delivery and returns immediately.
+     *
+     * @param delivery the callback to deliver
+     * @return false if the client should be disconnected (queue closed,
+     *         full under DISCONNECT, or still full after the BLOCK timeout)
+     */
+    public boolean enqueue(Delivery delivery) {
+        if (closed) {
+            return false;
+        }
+
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                while (!pending.offer(delivery)) {
+                    if (pending.poll() != null) {
+                        droppedCount.increment();
+                    }
+                }
+                break;
+            case DISCONNECT:
+                if (!pending.offer(delivery)) {
+                    droppedCount.increment();
+                    return false;
+                }
+                break;
+            case BLOCK:
+                try {
+                    if (!pending.offer(delivery, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        droppedCount.increment();
+                        return false;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    droppedCount.increment();
+                    return false;
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown overflow policy: " + overflowPolicy);
+        }
+
+        enqueuedCount.increment();
+        scheduleDrain();
+        return true;
+    }
+
+    /**
+     * Enqueues a delivery only if that needs no waiting, for callers
+     * holding a lock. A delivery that is not accepted is not counted as
+     * dropped; pass it to {@link #enqueue(Delivery)} once the lock is released.
+     *
+     * @param delivery the callback to deliver
+     * @return true if queued; false if the queue is closed, or full under
+     *         a policy other than DROP_OLDEST
+     */
+    public boolean offer(Delivery delivery) {
+        if (closed) {
+            return false;
+        }
+        if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+            return enqueue(delivery);
+        }
+        if (!pending.offer(delivery)) {
+            return false;
+        }
+        enqueuedCount.increment();
+        scheduleDrain();
+        return true;
+    }
+
+    /**
+     * Starts the delivery worker if work is pending and none is running.
+     */
+    private void scheduleDrain() {
+        if (!closed && (carried != null || !pending.isEmpty()) && draining.compareAndSet(false, true)) {
+            if (!breaker.isOpen()) {
+                executor.execute(this::drain);
+                return;
+            }
+            try {
+                CompletableFuture.delayedExecutor(ChatConstants.DEGRADED_INTERVAL_MS,
+                    TimeUnit.MILLISECONDS, executor).execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+            }
+        }
+    }
+
+    /**
+     * Delivers pending callbacks in order until the queue is empty, or
+     * after a single batch while the client is degraded.
+     */
+    private void drain() {
+        try {
+            // Cheap to wait for on a virtual thread; otherwise held at most a ping timeout
+            callPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            draining.set(false);
+            return;
+        }
+        try {
+            while (!closed) {
+                Delivery delivery = carried != null ? carried : pending.poll();
+                carried = null;
+                if (delivery == null) {
+                    break;
+                }
+                boolean degraded = breaker.isOpen();
+                // Messages lost if this call fails
+                int attempted = 1;
+                try {
+                    if (delivery instanceof MessageDelivery && (degraded || !legacyClient)) {
+                        MessageDelivery first = (MessageDelivery) delivery;
+                        List<ChatMessage> batch = new ArrayList<>();
+                        batch.add(first.getMessage());
+                        carried = degraded
+                            ? collectBatch(batch, Math.max(maxBatchSize, ChatConstants.DEGRADED_BATCH_SIZE), 0)
+                            : collectBatch(batch, maxBatchSize, flushWindowNanos);
+                        attempted = batch.size();
+                        // A lone message reuses the encoding shared with its other recipients
+                        deliverBatch(batch.size() == 1 ? first.getBatch() : new MessageBatch(batch));
+                    } else if (delivery instanceof BatchDelivery) {
+                        MessageBatch messages = ((BatchDelivery) delivery).getMessages();
+                        attempted = Math.max(1, messages.size());
+                        deliverBatch(messages);
+                    } else {
+                        deliverSingle(delivery);
+                    }
+                } catch (RemoteException e) {
+                    if (!isTimeout(e)) {
+                        LOGGER.log(Level.WARNING, "Delivery to " + name + " failed", e);
+                        close();
+                        failureHandler.accept(e);
+                        return;
+                    }
+                    // The deadline passed; the client may or may not have processed the call
+                    droppedCount.add(attempted);
+                    if (breaker.recordTimeout()) {
+                        logBreakerChange();
+                    }
+                    if (breaker.shouldGiveUp()) {
+                        LOGGER.warning("Delivery to " + name + " timed out repeatedly");
+                        close();
+                        failureHandler.accept(e);
+                        return;
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Unexpected error delivering to " + name, e);
+                    droppedCount.add(attempted);
+                }
+                if (breaker.isOpen()) {
+                    // Release the thread; the rest goes in a later, larger batch
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            callPermits.release();
+            draining.set(false);
+        }
+        // A delivery may have arrived after the last poll but before the flag was cleared
+        scheduleDrain();
+    }
+
+    /**
+     * Adds following messages to a batch until it is full, the flush window
+     * has passed, or a delivery that is not a message is reached.
+     *
+     * @param batch the batch, already holding its first message
+     * @param batchSize the largest batch to collect
+     * @param windowNanos how long to wait for more messages
+     * @return a non-message delivery taken from the queue, to be delivered next, or null
+     * @throws InterruptedException if interrupted while waiting for more messages
+     */
+    private Delivery collectBatch(List<ChatMessage> batch, int batchSize, long windowNanos)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < batchSize) {
+            Delivery next = pending.poll();
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || closed) {
+                    break;
+                }
+                next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+            }
+            if (!(next instanceof MessageDelivery)) {
+                return next;
+            }
+            batch.add(((MessageDelivery) next).getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Performs one callback, switching the client to legacy delivery if it
+     * does not implement the method used.
+     *
+     * @param delivery the callback to deliver
+     * @throws RemoteException if a remote communication error occurs
+     */
+    private void deliverSingle(Delivery delivery) throws RemoteException {
+        if (!legacyClient) {
+            try {
+                long start = System.nanoTime();
+                delivery.deliverTo(client);
+                recordLatency(start);
+                deliveredCount.increment();
+                return;
+            } catch (RemoteException e) {
+                if (!isUnsupportedMethod(e)) {
+                    throw e;
+                }
+                markLegacy();
+            }
+        }
+        long start = System.nanoTime();
+        delivery.deliverToLegacy(client);
+        recordLatency(start);
+        deliveredCount.increment();
+    }
+
+    /**
+     * Sends a batch in one call, compressed if the client offered compression
+     * and the batch is large enough, falling back to one preformatted string
+     * per message for clients that do not implement the message envelope.
+     *
+     * @param batch the messages to send, oldest first
+     * @throws RemoteException if a remote communication error occurs
+     */
+    private void deliverBatch(MessageBatch batch) throws RemoteException {
+        if (!legacyClient) {
+            try {
+                byte[] deflated = compression ? batch.compressed() : null;
+                long start = System.nanoTime();
+                if (deflated != null) {
+                    client.receiveCompressed(deflated);
+                } else {
+                    client.receiveEncoded(batch.encoded());
+                }
+                recordLatency(start);
+                deliveredCount.add(batch.size());
+                if (batch.size() > 1) {
+                    batchCount.increment();
+                }
+                return;
+            } catch (RemoteException e) {
+                if (!isUnsupportedMethod(e)) {
+                    throw e;
+                }
+                markLegacy();
+            }
+        }
+        for (ChatMessage message : batch) {
+            long start = System.nanoTime();
+            client.messageFromServer(MessageFormatter.format(message));
+            recordLatency(start);
+            deliveredCount.increment();
+        }
+    }
+
+    /**
+     * Records the duration of a completed remote call for the circuit
+     * breaker and, if timing is enabled, the latency histogram.
+     *
+     * @param startNanos when the call started
+     */
+    private void recordLatency(long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        LatencyHistogram histogram = deliveryLatency;
+        if (histogram != null) {
+            histogram.record(elapsed);
+        }
+        if (breaker.recordCall(elapsed)) {
+            logBreakerChange();
+        }
+    }
+
+    private void logBreakerChange() {
+        if (breaker.isOpen()) {
+            LOGGER.warning("Client " + name + " is slow; switching to degraded delivery every "
+                + ChatConstants.DEGRADED_INTERVAL_MS + " ms");
+        } else {
+            LOGGER.info("Client " + name + " recovered; resuming normal delivery");
+        }
+    }
+
+    /**
+     * Records that the client only implements the original ChatClient methods.
+     */
+    private void markLegacy() {
+        LOGGER.info("Client " + name + " predates extended callbacks; using legacy delivery");
+        legacyClient = true;
+    }
+
+    /**
+     * Checks if a remote call failed because the client's remote object
+     * predates the method being called.
+     *
+     * @param e the exception thrown by the call
+     * @return true if the method is not implemented by the client
+     */
+    static boolean isUnsupportedMethod(RemoteException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof UnmarshalException && cause.getMessage() != null
+                    && cause.getMessage().contains("unrecognized method hash")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a remote call failed because it passed the callback deadline
+     * set by {@code sun.rmi.transport.tcp.responseTimeout}.
+     *
+     * @param e the exception thrown by the call
+     * @return true if the call timed out
+     */
+    static boolean isTimeout(RemoteException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stops delivery and discards anything still pending.
+     */
+    public void close() {
+        closed = true;
+        pending.clear();
+    }
+
+    /**
+     * Checks if the queue has been closed.
+     *
+     * @return true if closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Gets the overflow policy.
+     *
+     * @return the current overflow policy
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Sets the overflow policy.
+     *
+     * @param overflowPolicy the new overflow policy (must not be null)
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy cannot be null");
+        }
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Sets how long BLOCK waits for room before giving up.
+     *
+     * @param blockTimeoutMillis the timeout in milliseconds
+     */
+    public void setBlockTimeoutMillis(long blockTimeoutMillis) {
+        if (blockTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Block timeout cannot be negative");
+        }
+        this.blockTimeoutMillis = blockTimeoutMillis;
+    }
+
+    /**
+     * Sets the largest number of messages sent in one batch call.
+     *
+     * @param maxBatchSize the batch size limit; 1 disables batching
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Sets how long a partial batch waits for more messages before it is flushed.
+     *
+     * @param flushWindowMillis the flush window in milliseconds; 0 flushes immediately
+     */
+    public void setFlushWindowMillis(long flushWindowMillis) {
+        if (flushWindowMillis < 0) {
+            throw new IllegalArgumentException("Flush window cannot be negative");
+        }
+        this.flushWindowNanos = TimeUnit.MILLISECONDS.toNanos(flushWindowMillis);
+    }
+
+    /**
+     * Sets the histogram that records how long each remote call takes.
+     *
+     * @param deliveryLatency the histogram, or null to stop timing
+     */
+    public void setDeliveryLatency(LatencyHistogram deliveryLatency) {
+        this.deliveryLatency = deliveryLatency;
+    }
+
+    /**
+     * Sets whether large batches are sent compressed. Only enable this for
+     * a client that offered compression when it joined.
+     *
+     * @param compression true to compress batches above the threshold
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Checks if large batches are sent compressed.
+     *
+     * @return true if the client receives compressed batches
+     */
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * Gets the permits bounding how many remote calls to this client may be
+     * in flight at once. The delivery worker holds one while it drains.
+     *
+     * @return the permits
+     */
+    public Semaphore getCallPermits() {
+        return callPermits;
+    }
+
+    /**
+     * Gets the breaker that decides when this client's delivery is degraded.
+     *
+     * @return the circuit breaker
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    /**
+     * Checks if the client only implements the original ChatClient methods.
+     *
+     * @return true once a newer callback has been found to be unsupported
+     */
+    public boolean isLegacyClient() {
+        return legacyClient;
+    }
+
+    /**
+     * Gets the number of deliveries waiting to be sent.
+     *
+     * @return the current queue depth
+     */
+    public int getDepth() {
+        return pending.size();
+    }
+
+    /**
+     * Gets the number of deliveries accepted into the queue.
+     *
+     * @return the enqueued count
+     */
+    public long getEnqueuedCount() {
+        return enqueuedCount.sum();
+    }
+
+    /**
+     * Gets the number of deliveries completed successfully.
+     *
+     * @return the delivered count
+     */
+    public long getDeliveredCount() {
+        return deliveredCount.sum();
+    }
+
+    /**
+     * Gets the number of deliveries dropped or rejected on overflow, plus
+     * the messages of calls that timed out or failed unexpectedly.
+     *
+     * @return the dropped count
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Gets the number of batch calls made.
+     *
+     * @return the batch count
+     */
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+}
@@ -0,0 +1,395 @@
+package ServerSide;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary frame format used by the NIO transport.
+ * A frame is {@code int length, byte opcode, payload}, where the length
+ * counts the opcode and payload. Requests and their replies start the
+ * payload with an {@code int} call id; callbacks have none. Strings are an
+ * {@code int} UTF-8 byte count (-1 for null) followed by the bytes; arrays
+ * and lists are an {@code int} element count (-1 for null) followed by the
+ * elements. Chat messages are a byte that is 1 if they are compressed,
+ * then an {@code int} byte count and their {@link MessageBatch} encoding,
+ * compressed or not.
+ *
+ * @author Refactored
+ */
+public final class Frames {
+
+    /** Size of the length prefix */
+    public static final int LENGTH_SIZE = 4;
+
+    /** Largest frame accepted, including the opcode */
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    // Requests, client to server
+    public static final byte JOIN = 1;
+    public static final byte UPDATE_CHAT = 2;
+    public static final byte UPDATE_ROOM_CHAT = 3;
+    public static final byte JOIN_ROOM = 4;
+    public static final byte LEAVE_ROOM = 5;
+    public static final byte LIST_ROOMS = 6;
+    public static final byte GET_ROOM_MEMBERS = 7;
+    public static final byte FETCH_HISTORY = 8;
+    public static final byte LEAVE_CHAT = 9;
+    public static final byte SEND_PRIVATE_MESSAGE = 10;
+    public static final byte SEND_PM = 11;
+    public static final byte REQUEST_USER_LIST = 12;
+    public static final byte LOCATE_ROOM = 13;
+    public static final byte JOIN_SESSION = 14;
+    public static final byte PING = 15;
+    public static final byte RESEND = 16;
+
+    // Replies, server to client
+    public static final byte RESULT = 64;
+    public static final byte REMOTE_ERROR = 65;
+    public static final byte ARGUMENT_ERROR = 66;
+
+    // Callbacks, server to client
+    public static final byte MESSAGE = 96;
+    public static final byte USER_LIST = 98;
+    public static final byte USER_LIST_SNAPSHOT = 99;
+    public static final byte USER_LIST_DELTA = 100;
+    public static final byte CHAT_MESSAGES = 101;
+    public static final byte CHAT_MESSAGES_COMPRESSED = 102;
+
+    private Frames() {
+        // Utility class - prevent instantiation
+    }
+
+    /**
+     * Builds one frame. The length prefix is filled in by {@link #toBuffer()}.
+     */
+    public static final class Writer {
+
+        private byte[] bytes;
+        private int position;
+
+        /**
+         * Starts a frame.
+         *
+         * @param opcode the frame type
+         */
+        public Writer(byte opcode) {
+            this.bytes = new byte[64];
+            this.position = LENGTH_SIZE;
+            bytes[position++] = opcode;
+        }
+
+        /**
+         * Starts a request or reply frame.
+         *
+         * @param opcode the frame type
+         * @param callId the id matching a reply to its request
+         */
+        public Writer(byte opcode, int callId) {
+            this(opcode);
+            writeInt(callId);
+        }
+
+        /**
+         * Appends one byte.
+         *
+         * @param value the value
+         * @return this writer
+         */
+        public Writer writeByte(int value) {
+            ensure(1);
+            bytes[position++] = (byte) value;
+            return this;
+        }
+
+        /**
+         * Appends a 4-byte integer.
+         *
+         * @param value the value
+         * @return this writer
+         */
+        public Writer writeInt(int value) {
+            ensure(4);
+            bytes[position++] = (byte) (value >>> 24);
+            bytes[position++] = (byte) (value >>> 16);
+            bytes[position++] = (byte) (value >>> 8);
+            bytes[position++] = (byte) value;
+            return this;
+        }
+
+        /**
+         * Appends an 8-byte integer.
+         *
+         * @param value the value
+         * @return this writer
+         */
+        public Writer writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            return writeInt((int) value);
+        }
+
+        /**
+         * Appends a length-prefixed UTF-8 string.
+         *
+         * @param value the string, or null
+         * @return this writer
+         */
+        public Writer writeString(String value) {
+            if (value == null) {
+                return writeInt(-1);
+            }
+            return writeBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Appends a length-prefixed byte array.
+         *
+         * @param value the bytes
+         * @return this writer
+         */
+        public Writer writeBytes(byte[] value) {
+            writeInt(value.length);
+            ensure(value.length);
+            System.arraycopy(value, 0, bytes, position, value.length);
+            position += value.length;
+            return this;
+        }
+
+        /**
+         * Appends a count-prefixed array of strings.
+         *
+         * @param values the strings, or null
+         * @return this writer
+         */
+        public Writer writeStrings(String[] values) {
+            return writeStrings(values == null ? null : Arrays.asList(values));
+        }
+
+        /**
+         * Appends a count-prefixed list of strings.
+         *
+         * @param values the strings, or null
+         * @return this writer
+         */
+        public Writer writeStrings(List<String> values) {
+            if (values == null) {
+                return writeInt(-1);
+            }
+            writeInt(values.size());
+            for (String value : values) {
+                writeString(value);
+            }
+            return this;
+        }
+
+        /**
+         * Appends a count-prefixed array of integers.
+         *
+         * @param values the integers, or null
+         * @return this writer
+         */
+        public Writer writeInts(int[] values) {
+            if (values == null) {
+                return writeInt(-1);
+            }
+            writeInt(values.length);
+            for (int value : values) {
+                writeInt(value);
+            }
+            return this;
+        }
+
+        /**
+         * Appends a length-prefixed {@link MessageBatch} encoding of chat
+         * messages, reusing a batch's cached encoding and compressing a
+         * batch made by {@link MessageBatch#compressedOnWire()}.
+         *
+         * @param messages the messages
+         * @return this writer
+         */
+        public Writer writeMessages(List<ChatMessage> messages) {
+            if (!(messages instanceof MessageBatch)) {
+                return writeByte(0).writeBytes(MessageBatch.encode(messages));
+            }
+            MessageBatch batch = (MessageBatch) messages;
+            byte[] deflated = batch.wireCompressed();
+            return deflated != null
+                ? writeByte(1).writeBytes(deflated)
+                : writeByte(0).writeBytes(batch.encoded());
+        }
+
+        /**
+         * Finishes the frame.
+         *
+         * @return a buffer holding the whole frame, ready to write
+         */
+        public ByteBuffer toBuffer() {
+            int length = position - LENGTH_SIZE;
+            if (length > MAX_FRAME_SIZE) {
+                throw new IllegalArgumentException("Frame of " + length + " bytes exceeds the maximum");
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, position);
+            buffer.putInt(0, length);
+            return buffer;
+        }
+
+        private void ensure(int extra) {
+            if (position + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + extra));
+            }
+        }
+    }
+
+    /**
+     * Reads the fields of one frame's payload, after the opcode.
+     */
+    public static final class Reader {
+
+        private final ByteBuffer payload;
+
+        /**
+         * Wraps a payload.
+         *
+         * @param payload the bytes after the opcode
+         */
+        public Reader(ByteBuffer payload) {
+            this.payload = payload;
+        }
+
+        /**
+         * Reads one byte.
+         *
+         * @return the value, from 0 to 255
+         */
+        public int readByte() {
+            return payload.get() & 0xFF;
+        }
+
+        /**
+         * Checks whether any fields are left, for fields added to a frame
+         * after older peers were built.
+         *
+         * @return true if the payload has unread bytes
+         */
+        public boolean hasRemaining() {
+            return payload.hasRemaining();
+        }
+
+        /**
+         * Reads a 4-byte integer.
+         *
+         * @return the value
+         */
+        public int readInt() {
+            return payload.getInt();
+        }
+
+        /**
+         * Reads an 8-byte integer.
+         *
+         * @return the value
+         */
+        public long readLong() {
+            return payload.getLong();
+        }
+
+        /**
+         * Reads a length-prefixed UTF-8 string.
+         *
+         * @return the string, or null
+         */
+        public String readString() {
+            int length = payload.getInt();
+            if (length < 0) {
+                return null;
+            }
+            checkRemaining(length);
+            String value = new String(payload.array(), payload.arrayOffset() + payload.position(),
+                length, StandardCharsets.UTF_8);
+            payload.position(payload.position() + length);
+            return value;
+        }
+
+        /**
+         * Reads a count-prefixed array of strings.
+         *
+         * @return the strings, or null
+         */
+        public String[] readStrings() {
+            List<String> values = readStringList();
+            return values == null ? null : values.toArray(new String[0]);
+        }
+
+        /**
+         * Reads a count-prefixed list of strings.
+         *
+         * @return the strings, or null
+         */
+        public List<String> readStringList() {
+            int count = payload.getInt();
+            if (count < 0) {
+                return null;
+            }
+            // Every element takes at least its length prefix
+            checkRemaining(count * 4L);
+            List<String> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                values.add(readString());
+            }
+            return values;
+        }
+
+        /**
+         * Reads a count-prefixed array of integers.
+         *
+         * @return the integers, or null
+         */
+        public int[] readInts() {
+            int count = payload.getInt();
+            if (count < 0) {
+                return null;
+            }
+            checkRemaining(count * 4L);
+            int[] values = new int[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = payload.getInt();
+            }
+            return values;
+        }
+
+        /**
+         * Reads a length-prefixed {@link MessageBatch} encoding of chat messages.
+         *
+         * @return the messages
+         */
+        public MessageBatch readMessages() {
+            boolean compressed = readByte() != 0;
+            byte[] bytes = readBytes();
+            return compressed ? MessageBatch.decodeCompressed(bytes) : MessageBatch.decode(bytes);
+        }
+
+        /**
+         * Reads a length-prefixed byte array.
+         *
+         * @return the bytes
+         */
+        public byte[] readBytes() {
+            int length = payload.getInt();
+            if (length < 0) {
+                throw new IllegalArgumentException("Invalid byte array length " + length);
+            }
+            checkRemaining(length);
+            byte[] value = new byte[length];
+            payload.get(value);
+            return value;
+        }
+
+        private void checkRemaining(long needed) {
+            if (needed > payload.remaining()) {
+                throw new IllegalArgumentException("Truncated frame");
+            }
+        }
+    }
+}
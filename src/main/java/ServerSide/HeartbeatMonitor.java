@@ -0,0 +1,275 @@
+package ServerSide;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Detects dead clients by pinging them, so they are removed before their
+ * deliveries pile up waiting on network timeouts.
+ * Clients are spread over the slots of a timer wheel; each tick visits one
+ * slot, so every client is checked once per interval without a burst of
+ * pings. A client that received a delivery since its last check is known to
+ * be alive and is not pinged. A ping that has not returned within the
+ * timeout is a miss: one miss marks the client suspect, and after the
+ * configured number of misses it is evicted. A ping that fails outright
+ * evicts immediately, matching how failed deliveries are handled.
+ *
+ * @author Refactored
+ */
+public class HeartbeatMonitor {
+
+    private static final Logger LOGGER = Logger.getLogger(HeartbeatMonitor.class.getName());
+
+    /** Number of slots in the timer wheel */
+    private static final int WHEEL_SIZE = 16;
+
+    /**
+     * Liveness state for one client. Only the tick thread updates the miss
+     * count and suspect flag; ping workers only clear the in-flight flag.
+     */
+    private static final class Peer {
+
+        private final Chatter chatter;
+        private volatile boolean inFlight = false;
+        private volatile long sentAtNanos;
+        private volatile boolean suspect = false;
+        private long lastDelivered;
+        private int missed = 0;
+
+        private Peer(Chatter chatter) {
+            this.chatter = chatter;
+            this.lastDelivered = chatter.getDeliveryQueue().getDeliveredCount();
+        }
+    }
+
+    private final List<Set<Peer>> wheel;
+    /**
+     * Monitored clients. Chatters are equal by name, so a resumed session
+     * shares its key with the one it replaced; removals check the instance.
+     */
+    private final ConcurrentHashMap<Chatter, Peer> peers = new ConcurrentHashMap<>();
+    private final Executor pingExecutor;
+    private final Consumer<Chatter> onDead;
+    private final long intervalMillis;
+    private final long timeoutNanos;
+    private final int maxMissed;
+    private final ScheduledExecutorService ticker;
+    private int currentSlot = 0;
+
+    /**
+     * Creates and starts a monitor.
+     *
+     * @param intervalMillis how often each client is checked
+     * @param timeoutMillis how long a ping may take before it counts as missed
+     * @param maxMissed consecutive misses before a client is evicted
+     * @param pingExecutor runs the ping calls, which may block
+     * @param onDead invoked with a client that should be evicted
+     */
+    public HeartbeatMonitor(long intervalMillis, long timeoutMillis, int maxMissed,
+                            Executor pingExecutor, Consumer<Chatter> onDead) {
+        if (intervalMillis <= 0 || timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Heartbeat interval and timeout must be positive");
+        }
+        if (maxMissed < 1) {
+            throw new IllegalArgumentException("Max missed heartbeats must be at least 1");
+        }
+        this.intervalMillis = intervalMillis;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.maxMissed = maxMissed;
+        this.pingExecutor = pingExecutor;
+        this.onDead = onDead;
+        this.wheel = new ArrayList<>(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(ConcurrentHashMap.newKeySet());
+        }
+
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tickMicros = Math.max(1, TimeUnit.MILLISECONDS.toMicros(intervalMillis) / WHEEL_SIZE);
+        ticker.scheduleAtFixedRate(this::tick, tickMicros, tickMicros, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Starts monitoring a client.
+     *
+     * @param chatter the client
+     */
+    public void register(Chatter chatter) {
+        Peer peer = new Peer(chatter);
+        Peer replaced = peers.put(chatter, peer);
+        if (replaced != null) {
+            // An earlier session under the same name that was not unregistered yet
+            wheel.get(slotOf(chatter)).remove(replaced);
+        }
+        wheel.get(slotOf(chatter)).add(peer);
+    }
+
+    /**
+     * Stops monitoring a client. A newer session under the same name keeps
+     * being monitored.
+     *
+     * @param chatter the client
+     */
+    public void unregister(Chatter chatter) {
+        Peer peer = peers.get(chatter);
+        if (peer != null && peer.chatter == chatter) {
+            remove(peer);
+        }
+    }
+
+    /**
+     * Checks if a client has missed a heartbeat and not answered since.
+     *
+     * @param chatter the client
+     * @return true if suspect
+     */
+    public boolean isSuspect(Chatter chatter) {
+        Peer peer = peers.get(chatter);
+        return peer != null && peer.chatter == chatter && peer.suspect;
+    }
+
+    /**
+     * Gets the number of clients currently suspected dead.
+     *
+     * @return the suspect count
+     */
+    public int getSuspectCount() {
+        int count = 0;
+        for (Peer peer : peers.values()) {
+            if (peer.suspect) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the interval at which each client is checked.
+     *
+     * @return the interval in milliseconds
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Stops the ticker. Pings already in flight are left to finish.
+     */
+    public void stop() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Checks the clients in the next wheel slot.
+     */
+    private void tick() {
+        try {
+            Set<Peer> slot = wheel.get(currentSlot);
+            currentSlot = (currentSlot + 1) % WHEEL_SIZE;
+            for (Peer peer : slot) {
+                check(peer);
+            }
+        } catch (RuntimeException e) {
+            // An exception would cancel the schedule
+            LOGGER.log(Level.WARNING, "Heartbeat tick failed", e);
+        }
+    }
+
+    private void check(Peer peer) {
+        long delivered = peer.chatter.getDeliveryQueue().getDeliveredCount();
+        if (delivered != peer.lastDelivered) {
+            // A delivery completed since the last check, so the client is alive
+            peer.lastDelivered = delivered;
+            markAlive(peer);
+            return;
+        }
+
+        if (peer.inFlight) {
+            if (System.nanoTime() - peer.sentAtNanos < timeoutNanos) {
+                return;
+            }
+            peer.missed++;
+            if (peer.missed >= maxMissed) {
+                LOGGER.warning("Client " + peer.chatter.getName() + " missed " + peer.missed
+                    + " heartbeats; evicting");
+                evict(peer);
+            } else if (!peer.suspect) {
+                peer.suspect = true;
+                LOGGER.info("Client " + peer.chatter.getName() + " is not answering heartbeats");
+            }
+            return;
+        }
+
+        // The previous ping, if any, has returned
+        markAlive(peer);
+        ping(peer);
+    }
+
+    private void markAlive(Peer peer) {
+        if (peer.suspect) {
+            LOGGER.info("Client " + peer.chatter.getName() + " is answering again");
+        }
+        peer.missed = 0;
+        peer.suspect = false;
+    }
+
+    private void ping(Peer peer) {
+        Semaphore permits = peer.chatter.getDeliveryQueue().getCallPermits();
+        if (!permits.tryAcquire()) {
+            // The client already has as many calls in flight as it may; check again next round
+            return;
+        }
+        peer.sentAtNanos = System.nanoTime();
+        peer.inFlight = true;
+        try {
+            pingExecutor.execute(() -> {
+                try {
+                    peer.chatter.getClient().ping();
+                } catch (RemoteException e) {
+                    if (!DeliveryQueue.isUnsupportedMethod(e)) {
+                        LOGGER.log(Level.FINE, "Heartbeat to " + peer.chatter.getName() + " failed", e);
+                        evict(peer);
+                        return;
+                    }
+                    // A client without ping() still answered the call
+                } finally {
+                    permits.release();
+                }
+                peer.inFlight = false;
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            peer.inFlight = false;
+        }
+    }
+
+    private void evict(Peer peer) {
+        remove(peer);
+        onDead.accept(peer.chatter);
+    }
+
+    private void remove(Peer peer) {
+        if (peers.remove(peer.chatter, peer)) {
+            wheel.get(slotOf(peer.chatter)).remove(peer);
+        }
+    }
+
+    private static int slotOf(Chatter chatter) {
+        return Math.floorMod(chatter.hashCode(), WHEEL_SIZE);
+    }
+}
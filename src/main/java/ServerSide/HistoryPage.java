@@ -0,0 +1,81 @@
+package ServerSide;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A page of room history returned to a client.
+ *
+ * @author Refactored
+ */
+public class HistoryPage implements Serializable {
+
+    private static final long serialVersionUID = 2L;
+
+    private final String roomName;
+    private final long oldestSequence;
+    private final List<ChatMessage> messages;
+
+    /**
+     * Creates a history page.
+     *
+     * @param roomName the room the messages belong to
+     * @param oldestSequence sequence number of the first message, or 0 if empty
+     * @param messages the messages, oldest first
+     */
+    public HistoryPage(String roomName, long oldestSequence, List<ChatMessage> messages) {
+        this.roomName = roomName;
+        this.oldestSequence = oldestSequence;
+        this.messages = messages;
+    }
+
+    /**
+     * Gets the room name.
+     *
+     * @return the room name
+     */
+    public String getRoomName() {
+        return roomName;
+    }
+
+    /**
+     * Gets the sequence number of the first message on this page.
+     * Pass it as {@code beforeSeq} to fetch the preceding page.
+     *
+     * @return the oldest sequence number, or 0 if the page is empty
+     */
+    public long getOldestSequence() {
+        return oldestSequence;
+    }
+
+    /**
+     * Gets the messages.
+     *
+     * @return the messages, oldest first
+     */
+    public List<ChatMessage> getMessages() {
+        return messages;
+    }
+
+    /**
+     * Gets a copy of this page whose messages are sent compressed when
+     * worth it, for a client that offered compression.
+     *
+     * @return the copy
+     */
+    public HistoryPage compressedOnWire() {
+        MessageBatch batch = messages instanceof MessageBatch
+            ? (MessageBatch) messages
+            : new MessageBatch(messages);
+        return new HistoryPage(roomName, oldestSequence, batch.compressedOnWire());
+    }
+
+    /**
+     * Checks if the page has no messages.
+     *
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+}
@@ -0,0 +1,381 @@
+package ServerSide;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of chat messages with a compact binary encoding, used
+ * wherever messages cross the wire. Numbers are variable-length, each
+ * timestamp is stored as the difference from the previous one, and sender
+ * and room names are written once per batch and then referred to by a
+ * small id, so a batch of messages from a few senders carries little more
+ * than the message text.
+ *
+ * <p>Encoding: {@code varint count}, then per message {@code varint sequence,
+ * zigzag varint timestamp delta, byte kind, name sender, name room,
+ * varint length, UTF-8 text}. A name is a varint: 0 for null, an id already
+ * seen in this batch, or the next unused id followed by {@code varint length}
+ * and the UTF-8 name.
+ *
+ * <p>A batch encodes itself at most once, the first time it is sent, and
+ * reuses the bytes afterwards, so one batch handed to many recipients costs
+ * one encoding; each recipient is sent the same array. Its
+ * {@link MessageCompression compressed} form is likewise made at most once.
+ *
+ * <p>Serialized, a batch is a flag saying whether it is compressed, then
+ * {@code int length} and the bytes. Only batches made by
+ * {@link #compressedOnWire()} are compressed, and only if large enough.
+ *
+ * @author Refactored
+ */
+public final class MessageBatch extends AbstractList<ChatMessage> implements RandomAccess, Externalizable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final ChatMessage.Kind[] KINDS = ChatMessage.Kind.values();
+
+    /** Cached in place of a compressed form that would not be worth sending */
+    private static final byte[] NOT_COMPRESSED = new byte[0];
+
+    private List<ChatMessage> messages;
+    /** Cached encoding; racing first sends may both encode, with the same result */
+    private volatile byte[] encoded;
+    private volatile byte[] compressed;
+    private boolean compressOnWire;
+
+    /**
+     * Creates an empty batch for deserialization only.
+     */
+    public MessageBatch() {
+        this.messages = List.of();
+    }
+
+    /**
+     * Wraps messages for sending.
+     *
+     * @param messages the messages, oldest first; not copied, so must not change afterwards
+     */
+    public MessageBatch(List<ChatMessage> messages) {
+        if (messages == null) {
+            throw new IllegalArgumentException("Messages cannot be null");
+        }
+        this.messages = messages;
+    }
+
+    @Override
+    public ChatMessage get(int index) {
+        return messages.get(index);
+    }
+
+    @Override
+    public int size() {
+        return messages.size();
+    }
+
+    /**
+     * Gets this batch's encoding, encoding it on first use.
+     * Callers must not modify the array.
+     *
+     * @return the encoded batch
+     */
+    public byte[] encoded() {
+        byte[] bytes = encoded;
+        if (bytes == null) {
+            bytes = encode(messages);
+            encoded = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets this batch's encoding compressed by {@link MessageCompression},
+     * compressing it on first use. Callers must not modify the array.
+     *
+     * @return the compressed batch, or null if the encoding is smaller than
+     *         the compression threshold or does not shrink
+     */
+    public byte[] compressed() {
+        byte[] bytes = compressed;
+        if (bytes == null) {
+            byte[] plain = encoded();
+            bytes = NOT_COMPRESSED;
+            if (plain.length >= ChatConstants.COMPRESSION_THRESHOLD_BYTES) {
+                byte[] deflated = MessageCompression.compress(plain);
+                if (deflated.length < plain.length) {
+                    bytes = deflated;
+                }
+            }
+            compressed = bytes;
+        }
+        return bytes == NOT_COMPRESSED ? null : bytes;
+    }
+
+    /**
+     * Gets a view of this batch that is sent in compressed form when worth
+     * it, for a client that offered compression. Cached forms are shared.
+     *
+     * @return the view
+     */
+    public MessageBatch compressedOnWire() {
+        MessageBatch view = new MessageBatch(messages);
+        view.encoded = encoded;
+        view.compressed = compressed;
+        view.compressOnWire = true;
+        return view;
+    }
+
+    /**
+     * Gets the form this batch is sent in.
+     *
+     * @return the compressed form if this batch is to be compressed on the
+     *         wire and worth compressing, otherwise null
+     */
+    byte[] wireCompressed() {
+        return compressOnWire ? compressed() : null;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        byte[] deflated = wireCompressed();
+        byte[] bytes = deflated != null ? deflated : encoded();
+        out.writeBoolean(deflated != null);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        boolean deflated = in.readBoolean();
+        int length = in.readInt();
+        if (length < 0) {
+            throw new StreamCorruptedException("Invalid batch length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        try {
+            MessageBatch batch = deflated ? decodeCompressed(bytes) : decode(bytes);
+            messages = batch.messages;
+            encoded = batch.encoded;
+        } catch (IllegalArgumentException e) {
+            throw new StreamCorruptedException(e.getMessage());
+        }
+    }
+
+    /**
+     * Encodes messages.
+     *
+     * @param messages the messages, oldest first
+     * @return the encoded batch
+     */
+    public static byte[] encode(List<ChatMessage> messages) {
+        Encoder encoder = new Encoder();
+        encoder.writeVarLong(messages.size());
+        List<String> names = new ArrayList<>(4);
+        long previousTimestamp = 0;
+        for (ChatMessage message : messages) {
+            encoder.writeVarLong(message.getSequence());
+            long delta = message.getTimestamp() - previousTimestamp;
+            encoder.writeVarLong((delta << 1) ^ (delta >> 63));
+            previousTimestamp = message.getTimestamp();
+            encoder.writeByte(message.getKind().ordinal());
+            encoder.writeName(message.getSender(), names);
+            encoder.writeName(message.getRoom(), names);
+            byte[] payload = message.getPayload();
+            encoder.writeVarLong(payload.length);
+            encoder.writeBytes(payload, payload.length);
+        }
+        return encoder.toByteArray();
+    }
+
+    /**
+     * Reads the number of messages in an encoded batch without decoding it.
+     *
+     * @param encoded the encoded batch
+     * @return the message count
+     * @throws IllegalArgumentException if the data is malformed
+     */
+    public static int countOf(byte[] encoded) {
+        return new Decoder(encoded).readLength();
+    }
+
+    /**
+     * Decodes messages encoded by {@link #encode(List)}.
+     *
+     * @param encoded the encoded batch
+     * @return the messages, oldest first
+     * @throws IllegalArgumentException if the data is malformed
+     */
+    public static MessageBatch decode(byte[] encoded) {
+        Decoder decoder = new Decoder(encoded);
+        int count = decoder.readLength();
+        List<ChatMessage> messages = new ArrayList<>(count);
+        List<String> names = new ArrayList<>(4);
+        long timestamp = 0;
+        for (int i = 0; i < count; i++) {
+            long sequence = decoder.readVarLong();
+            long zigzag = decoder.readVarLong();
+            timestamp += (zigzag >>> 1) ^ -(zigzag & 1);
+            int kind = decoder.readByte();
+            if (kind >= KINDS.length) {
+                throw new IllegalArgumentException("Unknown message kind " + kind);
+            }
+            String sender = decoder.readName(names);
+            String room = decoder.readName(names);
+            byte[] payload = decoder.readBytes(decoder.readLength());
+            messages.add(new ChatMessage(sequence, timestamp, KINDS[kind], sender, room, payload));
+        }
+        decoder.expectEnd();
+        MessageBatch batch = new MessageBatch(messages);
+        batch.encoded = encoded;
+        return batch;
+    }
+
+    /**
+     * Decodes messages compressed by {@link #compressed()}.
+     *
+     * @param compressed the compressed batch
+     * @return the messages, oldest first
+     * @throws IllegalArgumentException if the data is malformed
+     */
+    public static MessageBatch decodeCompressed(byte[] compressed) {
+        return decode(MessageCompression.decompress(compressed));
+    }
+
+    /**
+     * Growable output buffer.
+     */
+    private static final class Encoder {
+
+        private byte[] bytes = new byte[128];
+        private int position;
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[position++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+        }
+
+        void writeBytes(byte[] value, int length) {
+            ensure(length);
+            System.arraycopy(value, 0, bytes, position, length);
+            position += length;
+        }
+
+        void writeName(String name, List<String> names) {
+            if (name == null) {
+                writeVarLong(0);
+                return;
+            }
+            // Batches name few senders, so a linear scan beats hashing
+            for (int i = 0; i < names.size(); i++) {
+                if (names.get(i).equals(name)) {
+                    writeVarLong(i + 1);
+                    return;
+                }
+            }
+            names.add(name);
+            writeVarLong(names.size());
+            byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length);
+            writeBytes(utf8, utf8.length);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, position);
+        }
+
+        private void ensure(int extra) {
+            if (position + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + extra));
+            }
+        }
+    }
+
+    /**
+     * Bounds-checked reader over an encoded batch.
+     */
+    private static final class Decoder {
+
+        private final byte[] bytes;
+        private int position;
+
+        Decoder(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readByte() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("Truncated message batch");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed number in message batch");
+        }
+
+        int readLength() {
+            long length = readVarLong();
+            // A ten-byte number can come out negative
+            if (length < 0 || length > bytes.length - position) {
+                throw new IllegalArgumentException("Truncated message batch");
+            }
+            return (int) length;
+        }
+
+        byte[] readBytes(int length) {
+            byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+            return value;
+        }
+
+        String readName(List<String> names) {
+            long id = readVarLong();
+            if (id == 0) {
+                return null;
+            }
+            if (id <= names.size()) {
+                return names.get((int) id - 1);
+            }
+            if (id != names.size() + 1) {
+                throw new IllegalArgumentException("Unknown name id " + id);
+            }
+            int length = readLength();
+            String name = new String(bytes, position, length, StandardCharsets.UTF_8).intern();
+            position += length;
+            names.add(name);
+            return name;
+        }
+
+        void expectEnd() {
+            if (position != bytes.length) {
+                throw new IllegalArgumentException("Trailing bytes after message batch");
+            }
+        }
+    }
+}
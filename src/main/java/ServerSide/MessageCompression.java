@@ -0,0 +1,179 @@
+package ServerSide;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate compression for encoded {@link MessageBatch}es sent to clients
+ * that offered it when joining. Both ends prime the compressor with the same
+ * dictionary of common chat text, so even a batch of a few hundred bytes,
+ * too short for Deflate to find much repetition in by itself, compresses
+ * well.
+ *
+ * <p>Format: {@code varint uncompressed length}, then raw Deflate data
+ * (no zlib header or checksum) compressed against {@link #DICTIONARY}.
+ * Changing the dictionary changes the format.
+ *
+ * @author Refactored
+ */
+public final class MessageCompression {
+
+    /** Feature name a client offers during join to receive compressed batches */
+    public static final String DEFLATE = "deflate";
+
+    /** Largest uncompressed batch accepted, so a small input cannot claim a huge allocation */
+    public static final int MAX_INFLATED_SIZE = Frames.MAX_FRAME_SIZE;
+
+    /**
+     * Text both ends preload. Deflate reaches back at most 32 KiB and refers
+     * to recent bytes most cheaply, so the most common phrases come last.
+     */
+    private static final byte[] DICTIONARY = (
+        "Exception in thread \"main\" java.lang.NullPointerException\n\tat java.base/"
+        + "Caused by: java.io.IOException: Connection refused\n\tat "
+        + "https://github.com/ http://www. .com/ .org/ .html?id= "
+        + "ERROR WARN INFO DEBUG [main] "
+        + "Could you please take a look at this when you have a minute? "
+        + "I think the problem is that the server is not responding. "
+        + "Does anyone know how to fix this error? "
+        + "Sorry, I was in a meeting. Let me check and get back to you. "
+        + "Thanks for the help, that worked! "
+        + "What time is the meeting tomorrow? "
+        + "I'll be there in five minutes. "
+        + "Good morning everyone! "
+        + "has left the room has joined the room "
+        + "has left the chat has joined the chat! "
+        + " the and to of a in is it you that for on was with this be are have "
+        + "not but at we can do what so if just about there all your "
+        + "yes no ok okay thanks lol :) "
+    ).getBytes(StandardCharsets.UTF_8);
+
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    // Pooled rather than per thread, as delivery may run on short-lived threads
+    private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private MessageCompression() {
+        // Utility class - prevent instantiation
+    }
+
+    /**
+     * Compresses an encoded batch.
+     *
+     * @param encoded the encoded batch
+     * @return the compressed batch
+     */
+    public static byte[] compress(byte[] encoded) {
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater(ChatConstants.COMPRESSION_LEVEL, true);
+        }
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(encoded);
+            deflater.finish();
+            byte[] out = new byte[encoded.length / 2 + 64];
+            int position = writeVarInt(out, encoded.length);
+            while (!deflater.finished()) {
+                if (position == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                position += deflater.deflate(out, position, out.length - position);
+            }
+            return Arrays.copyOf(out, position);
+        } finally {
+            deflater.reset();
+            if (!DEFLATERS.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Decompresses a batch compressed by {@link #compress(byte[])}.
+     *
+     * @param compressed the compressed batch
+     * @return the encoded batch
+     * @throws IllegalArgumentException if the data is malformed or too large
+     */
+    public static byte[] decompress(byte[] compressed) {
+        long length = 0;
+        int position = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (position >= compressed.length || shift > 28) {
+                throw new IllegalArgumentException("Malformed compressed batch length");
+            }
+            int b = compressed[position++] & 0xFF;
+            length |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        if (length > MAX_INFLATED_SIZE) {
+            throw new IllegalArgumentException("Compressed batch of " + length + " bytes exceeds the maximum");
+        }
+
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            inflater.setDictionary(DICTIONARY);
+            inflater.setInput(compressed, position, compressed.length - position);
+            byte[] out = new byte[(int) length];
+            int filled = 0;
+            while (filled < out.length) {
+                int n = inflater.inflate(out, filled, out.length - filled);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated compressed batch");
+                }
+                filled += n;
+            }
+            if (inflater.inflate(new byte[1]) > 0) {
+                throw new IllegalArgumentException("Compressed batch is longer than declared");
+            }
+            return out;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Malformed compressed batch", e);
+        } finally {
+            inflater.reset();
+            if (!INFLATERS.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Checks whether a client's join features include compression.
+     *
+     * @param features comma-separated feature names, or null
+     * @return true if the client offered {@link #DEFLATE}
+     */
+    public static boolean isOffered(String features) {
+        if (features == null) {
+            return false;
+        }
+        for (String feature : features.split(",")) {
+            if (DEFLATE.equalsIgnoreCase(feature.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int writeVarInt(byte[] out, int value) {
+        int position = 0;
+        while ((value & ~0x7F) != 0) {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+}
@@ -1,60 +1,80 @@
 package ServerSide;
 
-import java.time.LocalDateTime;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
 /**
  * Utility class for formatting chat messages with timestamps.
- * 
+ * Clients that understand {@link ChatMessage} format messages themselves;
+ * the server only formats for clients that predate it. Formatting for them
+ * sits on the delivery path, so the timestamp prefix is
+ * cached per second, messages are built in a reused per-thread builder,
+ * and sanitizing and validation use hand-written scans instead of regexes.
+ *
  * @author Refactored
  */
 public final class MessageFormatter {
-    
-    private static final DateTimeFormatter TIME_FORMATTER = 
-        DateTimeFormatter.ofPattern("HH:mm:ss");
-    
+
+    private static final DateTimeFormatter TIME_FORMATTER =
+        DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    /** Largest builder kept for reuse; bigger ones are discarded after use */
+    private static final int MAX_REUSED_BUILDER_CAPACITY = 4096;
+
+    private static final ThreadLocal<StringBuilder> BUILDER =
+        ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    /** Timestamp prefix for the most recent second seen */
+    private static volatile CachedTimestamp cachedTimestamp = new CachedTimestamp(Long.MIN_VALUE, "");
+
     private MessageFormatter() {
         // Utility class - prevent instantiation
     }
-    
+
     /**
-     * Formats a chat message with timestamp.
-     * 
-     * @param username the sender's username
-     * @param message the message content
+     * Formats a message envelope the way messages were sent before clients
+     * did their own formatting, using the message's own timestamp.
+     *
+     * @param message the message
      * @return formatted message with timestamp
      */
-    public static String formatChatMessage(String username, String message) {
-        String timestamp = LocalDateTime.now().format(TIME_FORMATTER);
-        return String.format("[%s] %s : %s\n", timestamp, username, message);
+    public static String format(ChatMessage message) {
+        StringBuilder builder = timestampedBuilder(message.getTimestamp());
+        String room = message.getRoom();
+        if (room != null) {
+            builder.append("[#").append(room).append("] ");
+        }
+        switch (message.getKind()) {
+            case SERVER:
+                builder.append("[Server]");
+                break;
+            case PRIVATE:
+                builder.append(message.getSender() == null ? "[PM]" : "[PM from " + message.getSender() + "]");
+                break;
+            default:
+                builder.append(message.getSender());
+        }
+        builder.append(" : ").append(message.getText()).append('\n');
+        return release(builder);
     }
-    
+
     /**
      * Formats a server notification message with timestamp.
-     * 
+     *
      * @param notification the notification message
      * @return formatted notification with timestamp
      */
     public static String formatServerMessage(String notification) {
-        String timestamp = LocalDateTime.now().format(TIME_FORMATTER);
-        return String.format("[%s] [Server] : %s\n", timestamp, notification);
-    }
-    
-    /**
-     * Formats a private message with timestamp.
-     * 
-     * @param sender the sender's username
-     * @param message the message content
-     * @return formatted private message with timestamp
-     */
-    public static String formatPrivateMessage(String sender, String message) {
-        String timestamp = LocalDateTime.now().format(TIME_FORMATTER);
-        return String.format("[%s] [PM from %s] : %s\n", timestamp, sender, message);
+        StringBuilder builder = timestampedBuilder();
+        builder.append("[Server] : ").append(notification).append('\n');
+        return release(builder);
     }
-    
+
     /**
      * Sanitizes user input to prevent injection or formatting issues.
-     * 
+     * Returns the input itself when there is nothing to strip or trim.
+     *
      * @param input the input to sanitize
      * @return sanitized input
      */
@@ -62,25 +82,141 @@ public final class MessageFormatter {
         if (input == null) {
             return "";
         }
+
+        int length = input.length();
+        int firstControl = 0;
+        while (firstControl < length && !isStrippedControl(input.charAt(firstControl))) {
+            firstControl++;
+        }
+        if (firstControl == length) {
+            return input.trim();
+        }
+
         // Remove control characters but keep newlines for multi-line messages
-        return input.replaceAll("[\\x00-\\x08\\x0B\\x0C\\x0E-\\x1F]", "").trim();
+        StringBuilder builder = new StringBuilder(length);
+        builder.append(input, 0, firstControl);
+        for (int i = firstControl + 1; i < length; i++) {
+            char c = input.charAt(i);
+            if (!isStrippedControl(c)) {
+                builder.append(c);
+            }
+        }
+        return builder.toString().trim();
     }
-    
+
     /**
      * Validates username format.
-     * 
+     *
      * @param username the username to validate
      * @return true if valid, false otherwise
      */
     public static boolean isValidUsername(String username) {
-        if (username == null || username.trim().isEmpty()) {
+        if (username == null) {
             return false;
         }
         String trimmed = username.trim();
         // Username: 3-20 chars, alphanumeric, underscore, hyphen only
-        return trimmed.length() >= 3 && 
-               trimmed.length() <= 20 && 
-               trimmed.matches("^[a-zA-Z0-9_-]+$");
+        int length = trimmed.length();
+        if (length < 3 || length > 20) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = trimmed.charAt(i);
+            boolean allowed = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+                              (c >= '0' && c <= '9') || c == '_' || c == '-';
+            if (!allowed) {
+                return false;
+            }
+        }
+        return true;
     }
-}
 
+    /**
+     * Validates room name format. Room names follow the username rules.
+     *
+     * @param roomName the room name to validate
+     * @return true if valid, false otherwise
+     */
+    public static boolean isValidRoomName(String roomName) {
+        return isValidUsername(roomName);
+    }
+
+    /**
+     * Checks if a character is a control character removed by sanitizing:
+     * everything below 0x20 except tab, newline and carriage return.
+     *
+     * @param c the character to check
+     * @return true if the character is stripped
+     */
+    private static boolean isStrippedControl(char c) {
+        return c < 0x20 && c != '\t' && c != '\n' && c != '\r';
+    }
+
+    /**
+     * Gets this thread's builder, cleared and holding the current timestamp prefix.
+     *
+     * @return the builder
+     */
+    private static StringBuilder timestampedBuilder() {
+        return timestampedBuilder(System.currentTimeMillis());
+    }
+
+    /**
+     * Gets this thread's builder, cleared and holding a timestamp prefix.
+     *
+     * @param epochMillis the time to show
+     * @return the builder
+     */
+    private static StringBuilder timestampedBuilder(long epochMillis) {
+        StringBuilder builder = BUILDER.get();
+        builder.setLength(0);
+        return builder.append(timestampPrefix(epochMillis));
+    }
+
+    /**
+     * Builds the result string and drops the builder if a large message grew it.
+     *
+     * @param builder this thread's builder
+     * @return the built string
+     */
+    private static String release(StringBuilder builder) {
+        String result = builder.toString();
+        if (builder.capacity() > MAX_REUSED_BUILDER_CAPACITY) {
+            BUILDER.remove();
+        }
+        return result;
+    }
+
+    /**
+     * Gets the "[HH:mm:ss] " prefix for a time, formatting it only when the
+     * second differs from the last one formatted.
+     *
+     * @param epochMillis the time
+     * @return the timestamp prefix
+     */
+    private static String timestampPrefix(long epochMillis) {
+        long epochSecond = Math.floorDiv(epochMillis, 1000);
+        CachedTimestamp cached = cachedTimestamp;
+        if (cached.epochSecond != epochSecond) {
+            String prefix = "[" + TIME_FORMATTER.format(Instant.ofEpochSecond(epochSecond)) + "] ";
+            cached = new CachedTimestamp(epochSecond, prefix);
+            cachedTimestamp = cached;
+        }
+        return cached.prefix;
+    }
+
+    /**
+     * Immutable pairing of a second and its formatted prefix, so readers
+     * never see one without the other.
+     */
+    private static final class CachedTimestamp {
+
+        private final long epochSecond;
+        private final String prefix;
+
+        private CachedTimestamp(long epochSecond, String prefix) {
+            this.epochSecond = epochSecond;
+            this.prefix = prefix;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ServerSide;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size ring of the most recent messages in a room.
+ * There is a single writer at a time (the room serializes publishes), and
+ * any number of readers that never lock: each slot holds an immutable
+ * message carrying its sequence number, so a reader that races with an
+ * overwrite simply skips the overwritten slot.
+ *
+ * @author Refactored
+ */
+public class MessageHistory {
+
+    private final AtomicReferenceArray<ChatMessage> slots;
+
+    /** Sequence number the next message will receive; written only by the writer */
+    private volatile long nextSequence = 1;
+
+    /**
+     * Creates an empty history.
+     *
+     * @param capacity the number of messages kept
+     */
+    public MessageHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Numbers a message and records it, overwriting the oldest once full.
+     * Must only be called by one thread at a time.
+     *
+     * @param message the message; its own sequence number is ignored
+     * @return the message as recorded, with its sequence number
+     */
+    public ChatMessage append(ChatMessage message) {
+        long sequence = nextSequence;
+        ChatMessage numbered = message.withSequence(sequence);
+        slots.set(slotOf(sequence), numbered);
+        nextSequence = sequence + 1;
+        return numbered;
+    }
+
+    /**
+     * Reads up to {@code limit} of the newest messages with a sequence number
+     * below {@code beforeSequence}, oldest first.
+     *
+     * @param beforeSequence exclusive upper bound; use {@link Long#MAX_VALUE} for the newest
+     * @param limit the maximum number of messages
+     * @return the matching messages, oldest first
+     */
+    public List<ChatMessage> read(long beforeSequence, int limit) {
+        long next = nextSequence;
+        long last = Math.min(beforeSequence, next) - 1;
+        long oldestKept = Math.max(1, next - slots.length());
+        long first = Math.max(oldestKept, last - limit + 1);
+        if (limit <= 0 || last < first) {
+            return List.of();
+        }
+
+        List<ChatMessage> messages = new ArrayList<>((int) (last - first + 1));
+        for (long sequence = first; sequence <= last; sequence++) {
+            ChatMessage message = slots.get(slotOf(sequence));
+            // Skip slots already overwritten by a newer message
+            if (message != null && message.getSequence() == sequence) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Gets the sequence number of the newest message.
+     *
+     * @return the newest sequence number, or 0 if empty
+     */
+    public long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * Gets the number of messages kept.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    private int slotOf(long sequence) {
+        return (int) (sequence % slots.length());
+    }
+}
@@ -0,0 +1,537 @@
+package ServerSide;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable append-only log of chat events.
+ * Records are written into fixed-size segment files mapped into memory, so an
+ * append is a copy into the page cache. A background flusher forces dirty
+ * segments to disk at a fixed interval (group commit), segments roll when
+ * full, and old segments are deleted by total size and age. A full segment
+ * is forced by the flusher too, so rolling never waits for the disk.
+ * {@link #readRecent} reads a room's latest records back, so the server can
+ * restore room history when it starts.
+ *
+ * <p>Record layout: {@code int bodyLength, int crc32c, body}, where the body
+ * is {@code long index, long epochMillis, byte kind, short channelLength,
+ * channel UTF-8, short senderLength, sender UTF-8, text UTF-8}. An empty
+ * sender means none. A zero length marks the end of a segment.
+ *
+ * @author Refactored
+ */
+public class MessageLog implements AutoCloseable {
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private static final Logger LOGGER = Logger.getLogger(MessageLog.class.getName());
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = 8;
+    private static final int FIXED_BODY_SIZE = 8 + 8 + 1 + 2 + 2;
+
+    /**
+     * Type of a logged event.
+     */
+    public enum Kind {
+        /** A message from a user to a room */
+        CHAT,
+        /** A server notice such as a join or leave */
+        SERVER,
+        /** A private message; the channel lists the recipients */
+        PRIVATE
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long retentionBytes;
+    private final long retentionMillis;
+    private final ScheduledExecutorService flusher;
+
+    /** Guards the active segment and index */
+    private final Object appendLock = new Object();
+    private MappedByteBuffer active;
+    private Path activePath;
+    private long nextIndex;
+    private final CRC32C appendCrc = new CRC32C();
+    private volatile boolean dirty = false;
+    private volatile boolean closed = false;
+
+    /**
+     * Opens or creates a log, resuming after the last complete record.
+     *
+     * @param directory the directory holding segment files
+     * @param segmentSize the size of each segment file in bytes
+     * @param retentionBytes total size of closed segments to keep
+     * @param retentionMillis age after which closed segments are deleted
+     * @param flushIntervalMillis how often dirty data is forced to disk
+     * @throws IOException if the log cannot be opened
+     */
+    public MessageLog(Path directory, int segmentSize, long retentionBytes, long retentionMillis,
+                      long flushIntervalMillis) throws IOException {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("Segment size must be at least 1024 bytes");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+
+        Files.createDirectories(directory);
+        recover();
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-log-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis,
+            TimeUnit.MILLISECONDS);
+
+        LOGGER.info("Message log opened at " + directory + ", next index " + nextIndex);
+    }
+
+    /**
+     * Opens the log configured by the {@code chat.log.*} system properties.
+     *
+     * @return the log, or null if logging is disabled
+     * @throws IOException if the log cannot be opened
+     */
+    public static MessageLog openDefault() throws IOException {
+        if (ChatConstants.MESSAGE_LOG_DIR.isEmpty()) {
+            return null;
+        }
+        return new MessageLog(Path.of(ChatConstants.MESSAGE_LOG_DIR),
+            ChatConstants.MESSAGE_LOG_SEGMENT_BYTES,
+            ChatConstants.MESSAGE_LOG_RETENTION_BYTES,
+            TimeUnit.HOURS.toMillis(ChatConstants.MESSAGE_LOG_RETENTION_HOURS),
+            ChatConstants.MESSAGE_LOG_FLUSH_MS);
+    }
+
+    /**
+     * Appends an event. Returns once the record is in the page cache; it is
+     * forced to disk by the next flush.
+     *
+     * @param kind the event type
+     * @param channel the room name, or the recipients of a private message
+     * @param sender the sender's username, or null for server notices
+     * @param text the message text
+     * @return the record's index in the log, or -1 if it was not written
+     */
+    public long append(Kind kind, String channel, String sender, String text) {
+        byte[] channelBytes = channel.getBytes(StandardCharsets.UTF_8);
+        byte[] senderBytes = sender == null ? new byte[0] : sender.getBytes(StandardCharsets.UTF_8);
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = FIXED_BODY_SIZE + channelBytes.length + senderBytes.length + textBytes.length;
+        if (channelBytes.length > Short.MAX_VALUE || senderBytes.length > Short.MAX_VALUE
+                || HEADER_SIZE + bodyLength + HEADER_SIZE > segmentSize) {
+            LOGGER.warning("Skipping " + kind + " record too large for a log segment");
+            return -1;
+        }
+
+        synchronized (appendLock) {
+            if (closed) {
+                return -1;
+            }
+            try {
+                // Always leave room for the zero end-of-segment marker
+                if (active.remaining() < HEADER_SIZE + bodyLength + HEADER_SIZE) {
+                    roll();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Failed to roll message log segment", e);
+                return -1;
+            }
+
+            long index = nextIndex++;
+            int start = active.position();
+            active.position(start + HEADER_SIZE);
+            active.putLong(index);
+            active.putLong(System.currentTimeMillis());
+            active.put((byte) kind.ordinal());
+            active.putShort((short) channelBytes.length);
+            active.put(channelBytes);
+            active.putShort((short) senderBytes.length);
+            active.put(senderBytes);
+            active.put(textBytes);
+
+            appendCrc.reset();
+            appendCrc.update(active.slice(start + HEADER_SIZE, bodyLength));
+            active.putInt(start + 4, (int) appendCrc.getValue());
+            // Length last, so a torn write never looks like a complete record
+            active.putInt(start, bodyLength);
+            dirty = true;
+            return index;
+        }
+    }
+
+    /**
+     * Forces appended records to disk.
+     */
+    public void flush() {
+        MappedByteBuffer toForce;
+        synchronized (appendLock) {
+            if (!dirty || active == null) {
+                return;
+            }
+            dirty = false;
+            toForce = active;
+        }
+        force(toForce);
+    }
+
+    private static void force(MappedByteBuffer segment) {
+        try {
+            segment.force();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to flush message log", e);
+        }
+    }
+
+    /**
+     * Gets the index the next appended record will receive.
+     *
+     * @return the next index
+     */
+    public long getNextIndex() {
+        synchronized (appendLock) {
+            return nextIndex;
+        }
+    }
+
+    /**
+     * Reads the latest chat and server records of a room, newest segments
+     * first, stopping once enough are found. Meant for startup, before the
+     * log is appended to.
+     *
+     * @param channel the room name the records were appended with
+     * @param limit the maximum number of records
+     * @return the records, oldest first
+     * @throws IOException if a segment cannot be read
+     */
+    public List<Record> readRecent(String channel, int limit) throws IOException {
+        Deque<Record> recent = new ArrayDeque<>();
+        synchronized (appendLock) {
+            List<Path> segments = listSegments();
+            for (int i = segments.size() - 1; i >= 0 && recent.size() < limit; i--) {
+                Path segment = segments.get(i);
+                ByteBuffer buffer = segment.equals(activePath) ? active.duplicate() : mapReadOnly(segment);
+                List<Record> matching = new ArrayList<>();
+                int position = 0;
+                int bodyLength;
+                while ((bodyLength = readValidRecord(buffer, position)) >= 0) {
+                    Record record = readRecord(buffer, position + HEADER_SIZE, bodyLength);
+                    if (record != null && record.kind != Kind.PRIVATE && record.channel.equals(channel)) {
+                        matching.add(record);
+                    }
+                    position += HEADER_SIZE + bodyLength;
+                }
+                // Older segments only fill in what the newer ones lack
+                for (int j = matching.size() - 1; j >= 0 && recent.size() < limit; j--) {
+                    recent.addFirst(matching.get(j));
+                }
+            }
+        }
+        return new ArrayList<>(recent);
+    }
+
+    /**
+     * Flushes and stops the log.
+     */
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            // Let segments handed over by a roll finish reaching the disk
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (appendLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (active != null) {
+                active.force();
+            }
+        }
+        LOGGER.info("Message log closed at index " + nextIndex);
+    }
+
+    /**
+     * Opens the newest segment and positions it after its last valid record,
+     * or creates the first segment.
+     *
+     * @throws IOException if a segment cannot be read or created
+     */
+    private void recover() throws IOException {
+        List<Path> segments = listSegments();
+        if (segments.isEmpty()) {
+            openSegment(0);
+            return;
+        }
+
+        Path newest = segments.get(segments.size() - 1);
+        long baseIndex = baseIndexOf(newest);
+        activePath = newest;
+        active = map(newest);
+
+        long count = 0;
+        int position = 0;
+        while (true) {
+            int bodyLength = readValidRecord(active, position);
+            if (bodyLength < 0) {
+                break;
+            }
+            position += HEADER_SIZE + bodyLength;
+            count++;
+        }
+        active.position(position);
+        // Clear any torn tail so it is not mistaken for data later
+        if (position + HEADER_SIZE <= active.capacity()) {
+            active.putInt(position, 0);
+        }
+        nextIndex = baseIndex + count;
+    }
+
+    /**
+     * Checks the record at a position.
+     *
+     * @param buffer the segment
+     * @param position the record start
+     * @return the body length, or -1 at the end of data or a corrupt record
+     */
+    private static int readValidRecord(ByteBuffer buffer, int position) {
+        if (position + HEADER_SIZE > buffer.capacity()) {
+            return -1;
+        }
+        int bodyLength = buffer.getInt(position);
+        if (bodyLength < FIXED_BODY_SIZE || position + HEADER_SIZE + bodyLength > buffer.capacity()) {
+            return -1;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(position + HEADER_SIZE, bodyLength));
+        return (int) crc.getValue() == buffer.getInt(position + 4) ? bodyLength : -1;
+    }
+
+    /**
+     * Decodes a record body checked by {@link #readValidRecord}.
+     *
+     * @param buffer the segment
+     * @param position the body start
+     * @param bodyLength the body length
+     * @return the record, or null if its fields do not fit the body
+     */
+    private static Record readRecord(ByteBuffer buffer, int position, int bodyLength) {
+        int end = position + bodyLength;
+        long index = buffer.getLong(position);
+        long timestamp = buffer.getLong(position + 8);
+        int kind = buffer.get(position + 16);
+        int channelLength = buffer.getShort(position + 17);
+        int senderAt = position + 19 + channelLength;
+        if (kind < 0 || kind >= KINDS.length || channelLength < 0 || senderAt + 2 > end) {
+            return null;
+        }
+        int senderLength = buffer.getShort(senderAt);
+        int textAt = senderAt + 2 + senderLength;
+        if (senderLength < 0 || textAt > end) {
+            return null;
+        }
+        String channel = utf8(buffer, position + 19, channelLength);
+        String sender = senderLength == 0 ? null : utf8(buffer, senderAt + 2, senderLength);
+        return new Record(index, timestamp, KINDS[kind], channel, sender, utf8(buffer, textAt, end - textAt));
+    }
+
+    private static String utf8(ByteBuffer buffer, int position, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Starts a new segment and applies retention. The full segment is forced
+     * to disk by the flusher, so the appending thread does not wait for it.
+     *
+     * @throws IOException if the new segment cannot be created
+     */
+    private void roll() throws IOException {
+        MappedByteBuffer full = active;
+        try {
+            flusher.execute(() -> force(full));
+        } catch (RejectedExecutionException e) {
+            // Closing; the segment must still reach the disk
+            force(full);
+        }
+        openSegment(nextIndex);
+        applyRetention();
+    }
+
+    private void openSegment(long baseIndex) throws IOException {
+        activePath = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, baseIndex, SEGMENT_SUFFIX));
+        active = map(activePath);
+        nextIndex = baseIndex;
+        LOGGER.fine("Opened message log segment " + activePath);
+    }
+
+    private MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private static ByteBuffer mapReadOnly(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Deletes the oldest closed segments beyond the size or age limits.
+     */
+    private void applyRetention() {
+        try {
+            List<Path> closedSegments = listSegments();
+            closedSegments.remove(activePath);
+            long totalBytes = 0;
+            for (Path segment : closedSegments) {
+                totalBytes += Files.size(segment);
+            }
+
+            long cutoff = System.currentTimeMillis() - retentionMillis;
+            for (Path segment : closedSegments) {
+                FileTime modified = Files.getLastModifiedTime(segment);
+                if (totalBytes <= retentionBytes && modified.toMillis() >= cutoff) {
+                    break;
+                }
+                totalBytes -= Files.size(segment);
+                Files.deleteIfExists(segment);
+                LOGGER.info("Deleted message log segment " + segment.getFileName());
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to apply message log retention", e);
+        }
+    }
+
+    /**
+     * Lists segment files, oldest first.
+     *
+     * @return the segment paths
+     * @throws IOException if the directory cannot be read
+     */
+    List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = new ArrayList<>();
+            files.filter(MessageLog::isSegment).sorted().forEach(segments::add);
+            return segments;
+        }
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long baseIndexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * A record read back from the log.
+     */
+    public static final class Record {
+
+        private final long index;
+        private final long timestamp;
+        private final Kind kind;
+        private final String channel;
+        private final String sender;
+        private final String text;
+
+        Record(long index, long timestamp, Kind kind, String channel, String sender, String text) {
+            this.index = index;
+            this.timestamp = timestamp;
+            this.kind = kind;
+            this.channel = channel;
+            this.sender = sender;
+            this.text = text;
+        }
+
+        /**
+         * Gets the record's index in the log.
+         *
+         * @return the index
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        /**
+         * Gets when the record was appended.
+         *
+         * @return the time in epoch milliseconds
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Gets the event type.
+         *
+         * @return the kind
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Gets the room name, or the recipients of a private message.
+         *
+         * @return the channel
+         */
+        public String getChannel() {
+            return channel;
+        }
+
+        /**
+         * Gets the sender's username.
+         *
+         * @return the sender, or null for server notices
+         */
+        public String getSender() {
+            return sender;
+        }
+
+        /**
+         * Gets the message text.
+         *
+         * @return the text
+         */
+        public String getText() {
+            return text;
+        }
+    }
+}
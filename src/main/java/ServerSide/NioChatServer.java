@@ -0,0 +1,660 @@
+package ServerSide;
+
+import ClientSide.ChatClient;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Alternative front end for a {@link Chat} server using one persistent
+ * socket per client, a single non-blocking selector thread, and the binary
+ * frames defined in {@link Frames}. Each connection stands in for the
+ * client's {@link ChatClient}, so delivery queues, rooms and heartbeats work
+ * unchanged; callbacks become frames queued on the connection.
+ *
+ * <p>The selector thread only does I/O. It splits incoming bytes into
+ * request frames and hands them to a virtual thread per connection, which
+ * runs them in the order they arrived; a request that waits, such as a
+ * broadcast to a full BLOCK queue, holds up only its own connection. A
+ * connection with too many requests waiting is not read from until they
+ * run. Callback and reply frames are written by the selector thread; a
+ * delivery worker waits only when a connection already has too many
+ * unsent bytes, and times out like an RMI callback would. A closed
+ * connection's user is disconnected on a request thread too. Requests
+ * act only for the user who joined on their connection.
+ *
+ * @author Refactored
+ */
+public class NioChatServer implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(NioChatServer.class.getName());
+
+    private static final int INITIAL_READ_BUFFER = 8 * 1024;
+    private static final int MAX_GATHERED_WRITES = 64;
+    /** Requests a connection may have waiting before it is no longer read from */
+    private static final int MAX_QUEUED_REQUESTS = 64;
+
+    private final Chat chat;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread selectorThread;
+    private final ConcurrentLinkedQueue<Connection> writeRequests = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Connection> readRequests = new ConcurrentLinkedQueue<>();
+    private final ExecutorService requestExecutor =
+        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("chat-nio-request-", 1).factory());
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private volatile boolean running = true;
+
+    /**
+     * Starts listening for NIO clients.
+     *
+     * @param chat the server that handles requests
+     * @param port the TCP port, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public NioChatServer(Chat chat, int port) throws IOException {
+        this.chat = chat;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        this.selectorThread = new Thread(this::run, "chat-nio-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        LOGGER.info("NIO transport listening on port " + getPort());
+    }
+
+    /**
+     * Gets the port the server is listening on.
+     *
+     * @return the local port
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Gets the total bytes received from clients.
+     *
+     * @return the byte count
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * Gets the total bytes sent to clients.
+     *
+     * @return the byte count
+     */
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * Stops accepting clients and closes every connection.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        requestExecutor.shutdown();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                Connection pending;
+                while ((pending = writeRequests.poll()) != null) {
+                    pending.writeScheduled.set(false);
+                    pending.write();
+                }
+                while ((pending = readRequests.poll()) != null) {
+                    pending.resumeReading();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        connection.read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.write();
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "NIO selector failed", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Error closing NIO selector", e);
+            }
+            LOGGER.info("NIO transport stopped");
+        }
+    }
+
+    private static String key(String userName) {
+        return userName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        LOGGER.fine("Accepted NIO connection from " + channel.getRemoteAddress());
+    }
+
+    /**
+     * A request frame copied out of the read buffer.
+     */
+    private static final class Request {
+
+        final byte opcode;
+        final byte[] payload;
+
+        Request(byte opcode, byte[] payload) {
+            this.opcode = opcode;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * One client socket. Acts as that client's callback interface.
+     */
+    private final class Connection implements ChatClient {
+
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+        private final ConcurrentLinkedQueue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        /** Frames being written; only touched by the selector thread */
+        private final ArrayDeque<ByteBuffer> writing = new ArrayDeque<>();
+        private final AtomicLong unsentBytes = new AtomicLong();
+        private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+        /** Requests waiting to run, in arrival order */
+        private final ConcurrentLinkedQueue<Request> requests = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queuedRequests = new AtomicInteger();
+        /** Whether a request worker is running for this connection */
+        private final AtomicBoolean handling = new AtomicBoolean(false);
+        /** Whether reading stopped because too many requests are waiting */
+        private final AtomicBoolean readPaused = new AtomicBoolean(false);
+        // A lock rather than a monitor, so waiting does not pin a virtual thread
+        private final ReentrantLock capacityLock = new ReentrantLock();
+        private final Condition capacityAvailable = capacityLock.newCondition();
+        private volatile String username;
+        private volatile boolean closed = false;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void messageFromServer(String message) throws RemoteException {
+            send(new Frames.Writer(Frames.MESSAGE).writeString(message).toBuffer());
+        }
+
+        @Override
+        public void receiveEncoded(byte[] encodedBatch) throws RemoteException {
+            send(new Frames.Writer(Frames.CHAT_MESSAGES).writeBytes(encodedBatch).toBuffer());
+        }
+
+        @Override
+        public void receiveCompressed(byte[] compressedBatch) throws RemoteException {
+            send(new Frames.Writer(Frames.CHAT_MESSAGES_COMPRESSED).writeBytes(compressedBatch).toBuffer());
+        }
+
+        @Override
+        public void updateUserList(String[] currentUsers) throws RemoteException {
+            send(new Frames.Writer(Frames.USER_LIST).writeStrings(currentUsers).toBuffer());
+        }
+
+        @Override
+        public void userListSnapshot(long version, String[] currentUsers) throws RemoteException {
+            send(new Frames.Writer(Frames.USER_LIST_SNAPSHOT).writeLong(version)
+                .writeStrings(currentUsers).toBuffer());
+        }
+
+        @Override
+        public void userListDelta(long version, String[] added, String[] removed) throws RemoteException {
+            send(new Frames.Writer(Frames.USER_LIST_DELTA).writeLong(version)
+                .writeStrings(added).writeStrings(removed).toBuffer());
+        }
+
+        @Override
+        public void ping() throws RemoteException {
+            // The socket is the liveness signal; a dead peer closes or stalls it
+            if (closed) {
+                throw new RemoteException("Connection for " + username + " is closed");
+            }
+        }
+
+        /**
+         * Queues a frame for the selector thread to write, waiting first if
+         * the connection is too far behind.
+         */
+        private void send(ByteBuffer frame) throws RemoteException {
+            if (Thread.currentThread() != selectorThread) {
+                awaitCapacity();
+            }
+            if (closed) {
+                throw new RemoteException("Connection for " + username + " is closed");
+            }
+            unsentBytes.addAndGet(frame.remaining());
+            outbound.add(frame);
+            if (Thread.currentThread() == selectorThread) {
+                write();
+            } else if (writeScheduled.compareAndSet(false, true)) {
+                writeRequests.add(this);
+                selector.wakeup();
+            }
+        }
+
+        private void awaitCapacity() throws RemoteException {
+            if (unsentBytes.get() <= ChatConstants.NIO_OUTBOUND_LIMIT_BYTES) {
+                return;
+            }
+            long timeoutMillis = ChatConstants.CALLBACK_TIMEOUT_MS > 0
+                ? ChatConstants.CALLBACK_TIMEOUT_MS : Long.MAX_VALUE;
+            long deadline = System.currentTimeMillis() + Math.min(timeoutMillis, TimeUnit.DAYS.toMillis(1));
+            capacityLock.lock();
+            try {
+                while (!closed && unsentBytes.get() > ChatConstants.NIO_OUTBOUND_LIMIT_BYTES) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new RemoteException("Callback to " + username + " timed out",
+                            new SocketTimeoutException("Outbound buffer full"));
+                    }
+                    try {
+                        capacityAvailable.await(remaining, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RemoteException("Interrupted waiting to send to " + username, e);
+                    }
+                }
+            } finally {
+                capacityLock.unlock();
+            }
+        }
+
+        private void signalCapacity() {
+            capacityLock.lock();
+            try {
+                capacityAvailable.signalAll();
+            } finally {
+                capacityLock.unlock();
+            }
+        }
+
+        /**
+         * Reads what the socket has and queues the complete requests. Selector thread only.
+         */
+        private void read() {
+            if (readPaused.get()) {
+                return;
+            }
+            try {
+                int count = channel.read(readBuffer);
+                if (count < 0) {
+                    close();
+                    return;
+                }
+                bytesRead.add(count);
+                takeRequests();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Closing NIO connection for " + username, e);
+                close();
+            }
+        }
+
+        /**
+         * Reads again once the waiting requests have run, starting with
+         * those already buffered. Selector thread only.
+         */
+        private void resumeReading() {
+            if (closed) {
+                return;
+            }
+            try {
+                takeRequests();
+                updateInterest();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Closing NIO connection for " + username, e);
+                close();
+            }
+        }
+
+        /**
+         * Queues the complete request frames in the read buffer, stopping
+         * early if too many requests are waiting.
+         */
+        private void takeRequests() throws IOException {
+            readBuffer.flip();
+            while (readBuffer.remaining() >= Frames.LENGTH_SIZE) {
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length <= 0 || length > Frames.MAX_FRAME_SIZE) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                if (readBuffer.remaining() < Frames.LENGTH_SIZE + length) {
+                    break;
+                }
+                if (queuedRequests.get() >= MAX_QUEUED_REQUESTS && pauseReading()) {
+                    break;
+                }
+                int start = readBuffer.position() + Frames.LENGTH_SIZE;
+                byte[] payload = new byte[length - 1];
+                readBuffer.get(start + 1, payload);
+                readBuffer.position(start + length);
+                requests.add(new Request(readBuffer.get(start), payload));
+                queuedRequests.incrementAndGet();
+                scheduleRequests();
+            }
+            readBuffer.compact();
+            growForPartialFrame();
+        }
+
+        /**
+         * Stops reading until the request worker catches up.
+         *
+         * @return true if paused; false if the worker caught up meanwhile
+         */
+        private boolean pauseReading() {
+            readPaused.set(true);
+            // The worker may have drained the queue before it could see the flag
+            if (queuedRequests.get() < MAX_QUEUED_REQUESTS && readPaused.compareAndSet(true, false)) {
+                return false;
+            }
+            updateInterest();
+            return true;
+        }
+
+        /**
+         * Starts the request worker if requests are waiting and none is running.
+         */
+        private void scheduleRequests() {
+            if (!closed && !requests.isEmpty() && handling.compareAndSet(false, true)) {
+                try {
+                    requestExecutor.execute(this::handleRequests);
+                } catch (RejectedExecutionException e) {
+                    handling.set(false);
+                }
+            }
+        }
+
+        /**
+         * Runs waiting requests in order until none are left.
+         */
+        private void handleRequests() {
+            try {
+                Request request;
+                while (!closed && (request = requests.poll()) != null) {
+                    dispatch(request.opcode, new Frames.Reader(ByteBuffer.wrap(request.payload)));
+                    int waiting = queuedRequests.decrementAndGet();
+                    if (waiting <= MAX_QUEUED_REQUESTS / 2 && readPaused.compareAndSet(true, false)) {
+                        readRequests.add(this);
+                        selector.wakeup();
+                    }
+                }
+            } catch (RuntimeException e) {
+                // A malformed request
+                LOGGER.log(Level.FINE, "Closing NIO connection for " + username, e);
+                close();
+            } finally {
+                handling.set(false);
+            }
+            // A request may have arrived after the last poll but before the flag was cleared
+            scheduleRequests();
+        }
+
+        private void growForPartialFrame() {
+            if (readBuffer.position() < Frames.LENGTH_SIZE) {
+                return;
+            }
+            int needed = Frames.LENGTH_SIZE + readBuffer.getInt(0);
+            if (needed > readBuffer.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(needed, readBuffer.capacity() * 2));
+                readBuffer.flip();
+                larger.put(readBuffer);
+                readBuffer = larger;
+            }
+        }
+
+        /**
+         * Runs one request against the chat server and queues the reply.
+         */
+        private void dispatch(byte opcode, Frames.Reader in) {
+            int callId = in.readInt();
+            Frames.Writer reply = new Frames.Writer(Frames.RESULT, callId);
+            try {
+                switch (opcode) {
+                    case Frames.JOIN:
+                        String name = in.readString();
+                        chat.addClient(name, this, in.hasRemaining() ? in.readString() : null);
+                        username = name.trim();
+                        break;
+                    case Frames.JOIN_SESSION:
+                        String sessionName = in.readString();
+                        ChatSession session = chat.openSession(sessionName, this, in.readString(),
+                            in.readString(), in.readLong());
+                        username = sessionName.trim();
+                        reply.writeString(session.getResumeToken()).writeByte(session.isResumed() ? 1 : 0)
+                             .writeLong(session.getFirstSequence());
+                        break;
+                    case Frames.UPDATE_CHAT:
+                        chat.updateChat(caller(in.readString()), in.readString());
+                        break;
+                    case Frames.UPDATE_ROOM_CHAT:
+                        chat.updateRoomChat(caller(in.readString()), in.readString(), in.readString());
+                        break;
+                    case Frames.JOIN_ROOM:
+                        reply.writeLong(chat.joinRoom(caller(in.readString()), in.readString()));
+                        break;
+                    case Frames.LEAVE_ROOM:
+                        chat.leaveRoom(caller(in.readString()), in.readString());
+                        break;
+                    case Frames.LIST_ROOMS:
+                        reply.writeStrings(chat.listRooms());
+                        break;
+                    case Frames.LOCATE_ROOM:
+                        reply.writeString(chat.locateRoom(in.readString()));
+                        break;
+                    case Frames.GET_ROOM_MEMBERS:
+                        reply.writeStrings(chat.getRoomMembers(in.readString()));
+                        break;
+                    case Frames.FETCH_HISTORY:
+                        HistoryPage page = chat.fetchHistory(caller(in.readString()), in.readString(),
+                            in.readLong(), in.readInt());
+                        reply.writeString(page.getRoomName()).writeLong(page.getOldestSequence())
+                             .writeMessages(page.getMessages());
+                        break;
+                    case Frames.RESEND:
+                        HistoryPage resent = chat.resend(caller(in.readString()), in.readString(), in.readLong());
+                        reply.writeString(resent.getRoomName()).writeLong(resent.getOldestSequence())
+                             .writeMessages(resent.getMessages());
+                        break;
+                    case Frames.LEAVE_CHAT:
+                        chat.leaveChat(caller(in.readString()));
+                        break;
+                    case Frames.SEND_PRIVATE_MESSAGE:
+                        chat.sendPrivateMessage(caller(in.readString()), in.readStrings(), in.readString());
+                        break;
+                    case Frames.SEND_PM:
+                        sendPM(in.readInts(), in.readString());
+                        break;
+                    case Frames.REQUEST_USER_LIST:
+                        chat.requestUserList(caller(in.readString()));
+                        break;
+                    case Frames.PING:
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown request type " + opcode);
+                }
+            } catch (RemoteException e) {
+                reply = new Frames.Writer(Frames.REMOTE_ERROR, callId).writeString(e.getMessage());
+            } catch (IllegalArgumentException e) {
+                reply = new Frames.Writer(Frames.ARGUMENT_ERROR, callId).writeString(e.getMessage());
+            }
+            try {
+                send(reply.toBuffer());
+            } catch (RemoteException e) {
+                LOGGER.log(Level.FINE, "Could not reply to " + username, e);
+            }
+        }
+
+        /**
+         * Checks that a request is made as the user who joined on this
+         * connection. The frames name the user to mirror the RMI methods,
+         * but a connection may only act for itself.
+         *
+         * @param named the username the request names
+         * @return the username joined on this connection
+         * @throws RemoteException if no one has joined on this connection
+         *         or the request names someone else
+         */
+        private String caller(String named) throws RemoteException {
+            String joined = username;
+            if (joined == null) {
+                throw new RemoteException("Join before sending requests");
+            }
+            if (named == null || !key(named).equals(key(joined))) {
+                throw new RemoteException("This connection is joined as '" + joined + "'");
+            }
+            return joined;
+        }
+
+        @SuppressWarnings("deprecation")
+        private void sendPM(int[] recipientIndices, String message) throws RemoteException {
+            chat.sendPM(recipientIndices, message);
+        }
+
+        /**
+         * Writes queued frames until the socket would block. Selector thread only.
+         */
+        private void write() {
+            if (closed) {
+                return;
+            }
+            try {
+                while (true) {
+                    ByteBuffer next;
+                    while (writing.size() < MAX_GATHERED_WRITES && (next = outbound.poll()) != null) {
+                        writing.add(next);
+                    }
+                    if (writing.isEmpty()) {
+                        break;
+                    }
+                    long written = channel.write(writing.toArray(new ByteBuffer[0]));
+                    bytesWritten.add(written);
+                    unsentBytes.addAndGet(-written);
+                    while (!writing.isEmpty() && !writing.peek().hasRemaining()) {
+                        writing.poll();
+                    }
+                    if (!writing.isEmpty()) {
+                        break; // Socket buffer full
+                    }
+                }
+                updateInterest();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Closing NIO connection for " + username, e);
+                close();
+                return;
+            }
+            if (unsentBytes.get() <= ChatConstants.NIO_OUTBOUND_LIMIT_BYTES) {
+                signalCapacity();
+            }
+        }
+
+        /**
+         * Asks the selector for what this connection can do next. Selector thread only.
+         */
+        private void updateInterest() {
+            key.interestOps((readPaused.get() ? 0 : SelectionKey.OP_READ)
+                | (writing.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+        }
+
+        private synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            requests.clear();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Error closing NIO connection", e);
+            }
+            signalCapacity();
+            String name = username;
+            if (name == null) {
+                return;
+            }
+            // Removing the member may wait on full BLOCK queues, so keep it off the selector thread
+            try {
+                requestExecutor.execute(() -> disconnect(name));
+            } catch (RejectedExecutionException e) {
+                disconnect(name);
+            }
+        }
+
+        private void disconnect(String name) {
+            if (chat.disconnectClient(name, this)) {
+                LOGGER.info("NIO connection for '" + name + "' closed");
+            }
+        }
+    }
+}
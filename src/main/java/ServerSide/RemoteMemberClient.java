@@ -0,0 +1,77 @@
+package ServerSide;
+
+import ClientSide.ChatClient;
+import java.rmi.RemoteException;
+
+/**
+ * Callback standing in for a room member connected to another cluster
+ * node. Messages queued for the member here are handed to that node, which
+ * queues them for the client; a refusal there fails the delivery, so the
+ * member is dropped from this node's rooms. User lists and pings come from
+ * the member's own node, so they are not sent from here.
+ *
+ * @author Refactored
+ */
+final class RemoteMemberClient implements ChatClient {
+
+    private final ClusterNode cluster;
+    private final String nodeId;
+    private final String userName;
+
+    /**
+     * Creates a callback for a member on another node.
+     *
+     * @param cluster this server's cluster membership
+     * @param nodeId the id of the node the member is connected to
+     * @param userName the member's username
+     */
+    RemoteMemberClient(ClusterNode cluster, String nodeId, String userName) {
+        this.cluster = cluster;
+        this.nodeId = nodeId;
+        this.userName = userName;
+    }
+
+    /**
+     * Gets the node the member is connected to.
+     *
+     * @return the node id
+     */
+    String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void receiveEncoded(byte[] encodedBatch) throws RemoteException {
+        cluster.deliverToMember(nodeId, userName, encodedBatch);
+    }
+
+    @Override
+    public void receiveCompressed(byte[] compressedBatch) throws RemoteException {
+        receiveEncoded(MessageCompression.decompress(compressedBatch));
+    }
+
+    @Override
+    public void messageFromServer(String message) {
+        // Never used: encoded batches are always accepted
+    }
+
+    @Override
+    public void updateUserList(String[] currentUsers) {
+        // Sent by the member's own node
+    }
+
+    @Override
+    public void userListSnapshot(long version, String[] currentUsers) {
+        // Sent by the member's own node
+    }
+
+    @Override
+    public void userListDelta(long version, String[] added, String[] removed) {
+        // Sent by the member's own node
+    }
+
+    @Override
+    public void ping() {
+        // The member's own node watches its connection
+    }
+}
@@ -0,0 +1,227 @@
+package ServerSide;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A named chat room with its own member set.
+ * Messages sent to a room are queued only for its members, so the cost of a
+ * message is proportional to the room's size rather than total connections.
+ * Each room keeps its recent messages, numbered in send order, so joining
+ * clients can be caught up. Publishing and joining are serialized per room,
+ * which keeps the history single-writer and means a joining client sees
+ * every message exactly once: either in its replay or live. Only numbering
+ * and queueing that needs no waiting happen under the room's lock; a member
+ * whose queue is full is delivered to after it, so it cannot hold up the
+ * other senders in the room.
+ *
+ * @author Refactored
+ */
+public class Room {
+
+    private final String name;
+    private final ClientRegistry members;
+    private final MessageHistory history;
+
+    /**
+     * Creates an empty room.
+     *
+     * @param name the room name
+     */
+    public Room(String name) {
+        this(name, new ClientRegistry());
+    }
+
+    /**
+     * Creates a room backed by an existing registry, used for the default
+     * room whose members are all connected clients.
+     *
+     * @param name the room name
+     * @param members the member registry
+     */
+    public Room(String name, ClientRegistry members) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Room name cannot be null or empty");
+        }
+        this.name = name.trim();
+        this.members = members;
+        this.history = new MessageHistory(ChatConstants.ROOM_HISTORY_CAPACITY);
+    }
+
+    /**
+     * Gets the room name.
+     *
+     * @return the room name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Adds a member and queues the room's most recent messages for it in a
+     * single batch, before any message published after the join unless
+     * its queue is full.
+     *
+     * @param chatter the client joining
+     * @param replayLimit the maximum number of recent messages to replay
+     * @param deferred collects the replay if the client's queue is full; the
+     *                 caller delivers it once it holds no locks
+     * @return sequence number of the first message the member is sent,
+     *         replayed or new, or -1 if already a member
+     */
+    public synchronized long addMember(Chatter chatter, int replayLimit, DeferredDeliveries deferred) {
+        if (!members.add(chatter)) {
+            return -1;
+        }
+        List<ChatMessage> recent = history.read(Long.MAX_VALUE, replayLimit);
+        if (recent.isEmpty()) {
+            return history.getLastSequence() + 1;
+        }
+        deferred.offer(chatter, new DeliveryQueue.BatchDelivery(new MessageBatch(recent)));
+        return recent.get(0).getSequence();
+    }
+
+    /**
+     * Adds a member that is resuming a session and queues the messages it
+     * missed in a single batch, before any message published after the
+     * join unless its queue is full. Messages that have already left the
+     * history are not replayed.
+     *
+     * @param chatter the client rejoining
+     * @param afterSequence sequence number of the last message the client received
+     * @param deferred collects the replay if the client's queue is full; the
+     *                 caller delivers it once it holds no locks
+     * @return true if added, false if already a member
+     */
+    public synchronized boolean resumeMember(Chatter chatter, long afterSequence, DeferredDeliveries deferred) {
+        if (!members.add(chatter)) {
+            return false;
+        }
+        long missed = history.getLastSequence() - Math.max(0, afterSequence);
+        if (missed > 0) {
+            List<ChatMessage> recent = history.read(Long.MAX_VALUE,
+                (int) Math.min(missed, history.getCapacity()));
+            if (!recent.isEmpty()) {
+                deferred.offer(chatter, new DeliveryQueue.BatchDelivery(new MessageBatch(recent)));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes a member.
+     *
+     * @param chatter the client leaving
+     * @return true if it was a member
+     */
+    public boolean removeMember(Chatter chatter) {
+        return members.remove(chatter);
+    }
+
+    /**
+     * Checks if a user is a member.
+     *
+     * @param username the username (case-insensitive)
+     * @return true if a member
+     */
+    public boolean hasMember(String username) {
+        return members.contains(username);
+    }
+
+    /**
+     * Gets the member usernames in join order.
+     *
+     * @return array of usernames
+     */
+    public String[] getMemberNames() {
+        return members.getNames();
+    }
+
+    /**
+     * Gets the number of members.
+     *
+     * @return the member count
+     */
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * Checks if the room has no members.
+     *
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    /**
+     * Numbers a message, records it in the room's history and queues it for
+     * every member. Members whose queue is full are delivered to after the
+     * room's lock is released, so their message may follow a later one.
+     *
+     * @param message the message
+     * @return members whose queue rejected the message and should be evicted
+     */
+    public List<Chatter> publish(ChatMessage message) {
+        DeferredDeliveries deferred = new DeferredDeliveries();
+        synchronized (this) {
+            ChatMessage numbered = history.append(message);
+            deferred.offerToAll(members.snapshot(), new DeliveryQueue.MessageDelivery(numbered), null);
+        }
+        return deferred.deliver();
+    }
+
+    /**
+     * Records messages from before a restart in the room's history, without
+     * queueing them for anyone. Call before the room has any members.
+     *
+     * @param messages the messages, oldest first; their sequence numbers are ignored
+     */
+    public synchronized void restoreHistory(List<ChatMessage> messages) {
+        for (ChatMessage message : messages) {
+            history.append(message);
+        }
+    }
+
+    /**
+     * Reads a page of recent messages without blocking publishers.
+     *
+     * @param beforeSequence only messages numbered below this are returned;
+     *                       {@link Long#MAX_VALUE} for the newest
+     * @param limit the maximum number of messages
+     * @return the page, oldest message first
+     */
+    public HistoryPage getHistory(long beforeSequence, int limit) {
+        List<ChatMessage> messages = history.read(beforeSequence, limit);
+        long oldest = messages.isEmpty() ? 0 : messages.get(0).getSequence();
+        return new HistoryPage(name, oldest, new MessageBatch(messages));
+    }
+
+    /**
+     * Reads messages from a sequence number on without blocking publishers.
+     *
+     * @param fromSequence the first sequence number wanted
+     * @param limit the maximum number of messages
+     * @return the page, oldest message first
+     */
+    public HistoryPage getHistoryFrom(long fromSequence, int limit) {
+        long before = fromSequence > Long.MAX_VALUE - limit ? Long.MAX_VALUE : fromSequence + limit;
+        List<ChatMessage> messages = history.read(before, limit);
+        // The page ends below before, so when fewer are missing it starts too early
+        int first = 0;
+        while (first < messages.size() && messages.get(first).getSequence() < fromSequence) {
+            first++;
+        }
+        if (first > 0) {
+            messages = new ArrayList<>(messages.subList(first, messages.size()));
+        }
+        long oldest = messages.isEmpty() ? 0 : messages.get(0).getSequence();
+        return new HistoryPage(name, oldest, new MessageBatch(messages));
+    }
+
+    @Override
+    public String toString() {
+        return "Room{name='" + name + "', members=" + members.size() + "}";
+    }
+}
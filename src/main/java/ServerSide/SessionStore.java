@@ -0,0 +1,148 @@
+package ServerSide;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resume tokens of the sessions on this server. A token is issued when a
+ * client joins and stays valid while the client is connected and for a
+ * window after it drops, so a client that lost its connection can prove it
+ * is the same user and pick up where it left off. A token can be redeemed
+ * once. Tokens live in memory only; after a server restart clients join
+ * afresh.
+ *
+ * @author Refactored
+ */
+public class SessionStore {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int TOKEN_BYTES = 16;
+
+    private final long resumeWindowNanos;
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private volatile long nextPurgeNanos;
+
+    /**
+     * Creates an empty store.
+     *
+     * @param resumeWindowMs how long a token stays valid after its client drops
+     * @throws IllegalArgumentException if the window is negative
+     */
+    public SessionStore(long resumeWindowMs) {
+        if (resumeWindowMs < 0) {
+            throw new IllegalArgumentException("Resume window cannot be negative");
+        }
+        this.resumeWindowNanos = TimeUnit.MILLISECONDS.toNanos(resumeWindowMs);
+        this.nextPurgeNanos = System.nanoTime() + resumeWindowNanos;
+    }
+
+    /**
+     * Issues a new token for a connected user, replacing any earlier one.
+     *
+     * @param userName the username
+     * @return the token
+     */
+    public String issue(String userName) {
+        purgeExpired();
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(key(userName), new Session(token));
+        return token;
+    }
+
+    /**
+     * Redeems a user's token, which cannot be used again.
+     *
+     * @param userName the username
+     * @param token the token the client presented
+     * @return true if the token was the user's current token and had not expired
+     */
+    public boolean redeem(String userName, String token) {
+        boolean[] valid = {false};
+        long now = System.nanoTime();
+        sessions.computeIfPresent(key(userName), (k, session) -> {
+            if (session.isExpired(now)) {
+                return null;
+            }
+            if (!MessageDigest.isEqual(session.token.getBytes(StandardCharsets.US_ASCII),
+                    token.getBytes(StandardCharsets.US_ASCII))) {
+                return session;
+            }
+            valid[0] = true;
+            return null;
+        });
+        return valid[0];
+    }
+
+    /**
+     * Starts the resume window of a user who dropped without leaving.
+     *
+     * @param userName the username
+     */
+    public void disconnected(String userName) {
+        Session session = sessions.get(key(userName));
+        if (session != null) {
+            session.expiresAt = System.nanoTime() + resumeWindowNanos;
+            session.connected = false;
+        }
+    }
+
+    /**
+     * Forgets a user's session, for a user who left on purpose.
+     *
+     * @param userName the username
+     */
+    public void discard(String userName) {
+        sessions.remove(key(userName));
+    }
+
+    /**
+     * Gets the number of sessions held, including expired ones not yet purged.
+     *
+     * @return the session count
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Drops expired sessions, at most once per resume window.
+     */
+    private void purgeExpired() {
+        long now = System.nanoTime();
+        if (now - nextPurgeNanos < 0) {
+            return;
+        }
+        nextPurgeNanos = now + resumeWindowNanos;
+        sessions.values().removeIf(session -> session.isExpired(now));
+    }
+
+    private static String key(String userName) {
+        return userName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * One user's current token.
+     */
+    private static final class Session {
+
+        final String token;
+        /** When the token stops being valid, from System.nanoTime; set when the client drops */
+        volatile long expiresAt;
+        volatile boolean connected = true;
+
+        Session(String token) {
+            this.token = token;
+        }
+
+        boolean isExpired(long now) {
+            return !connected && now - expiresAt >= 0;
+        }
+    }
+}
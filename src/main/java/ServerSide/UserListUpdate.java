@@ -0,0 +1,90 @@
+package ServerSide;
+
+import ClientSide.ChatClient;
+import java.rmi.RemoteException;
+
+/**
+ * A versioned change to the connected-user list, delivered to one or more clients.
+ * Clients receive a full snapshot when they join or report a gap, and
+ * otherwise only the names added or removed by each membership change.
+ * Legacy clients always receive the full list.
+ *
+ * @author Refactored
+ */
+public final class UserListUpdate implements DeliveryQueue.Delivery {
+
+    private static final String[] NONE = new String[0];
+
+    private final long version;
+    private final boolean snapshot;
+    private final String[] added;
+    private final String[] removed;
+    private final String[] members;
+
+    private UserListUpdate(long version, boolean snapshot, String[] added, String[] removed,
+                           String[] members) {
+        this.version = version;
+        this.snapshot = snapshot;
+        this.added = added;
+        this.removed = removed;
+        this.members = members;
+    }
+
+    /**
+     * Creates a full snapshot of the user list.
+     *
+     * @param version the membership version the snapshot reflects
+     * @param members all connected usernames
+     * @return the update
+     */
+    public static UserListUpdate snapshot(long version, String[] members) {
+        return new UserListUpdate(version, true, NONE, NONE, members);
+    }
+
+    /**
+     * Creates a delta announcing users who joined.
+     *
+     * @param version the membership version after the change
+     * @param added the usernames that joined
+     * @param members all connected usernames after the change, for legacy clients
+     * @return the update
+     */
+    public static UserListUpdate joined(long version, String[] added, String[] members) {
+        return new UserListUpdate(version, false, added, NONE, members);
+    }
+
+    /**
+     * Creates a delta announcing users who left.
+     *
+     * @param version the membership version after the change
+     * @param removed the usernames that left
+     * @param members all connected usernames after the change, for legacy clients
+     * @return the update
+     */
+    public static UserListUpdate left(long version, String[] removed, String[] members) {
+        return new UserListUpdate(version, false, NONE, removed, members);
+    }
+
+    /**
+     * Gets the membership version.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void deliverTo(ChatClient client) throws RemoteException {
+        if (snapshot) {
+            client.userListSnapshot(version, members);
+        } else {
+            client.userListDelta(version, added, removed);
+        }
+    }
+
+    @Override
+    public void deliverToLegacy(ChatClient client) throws RemoteException {
+        client.updateUserList(members);
+    }
+}
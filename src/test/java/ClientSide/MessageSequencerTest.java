@@ -0,0 +1,158 @@
+package ClientSide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ServerSide.ChatMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link MessageSequencer}.
+ *
+ * @author Refactored
+ */
+class MessageSequencerTest {
+
+    private final MessageSequencer sequencer = new MessageSequencer();
+
+    private static ChatMessage message(String room, long sequence) {
+        return new ChatMessage(sequence, 0, ChatMessage.Kind.CHAT, "alice", room, room + "#" + sequence);
+    }
+
+    private static List<ChatMessage> messages(String room, long... sequences) {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (long sequence : sequences) {
+            messages.add(message(room, sequence));
+        }
+        return messages;
+    }
+
+    private static List<Long> sequences(List<ChatMessage> messages) {
+        List<Long> sequences = new ArrayList<>();
+        for (ChatMessage message : messages) {
+            sequences.add(message.getSequence());
+        }
+        return sequences;
+    }
+
+    @Test
+    void passesInOrderMessagesThrough() {
+        assertEquals(List.of(1L, 2L, 3L), sequences(sequencer.accept(messages("games", 1, 2, 3))));
+        assertEquals(3, sequencer.lastShown("games"));
+        assertFalse(sequencer.hasGaps());
+    }
+
+    @Test
+    void reordersMessagesThatArriveEarly() {
+        sequencer.accept(messages("games", 1));
+
+        assertTrue(sequencer.accept(messages("games", 3, 4)).isEmpty());
+        assertTrue(sequencer.hasGaps());
+        assertEquals(List.of(2L, 3L, 4L), sequences(sequencer.accept(messages("games", 2))));
+        assertFalse(sequencer.hasGaps());
+    }
+
+    @Test
+    void dropsDuplicates() {
+        sequencer.accept(messages("games", 1, 2));
+
+        assertTrue(sequencer.accept(messages("games", 2, 1)).isEmpty());
+        // A duplicate of a waiting message is shown once
+        sequencer.accept(messages("games", 4));
+        assertEquals(List.of(3L, 4L), sequences(sequencer.accept(messages("games", 4, 3))));
+    }
+
+    @Test
+    void ordersRoomsIndependently() {
+        sequencer.accept(messages("games", 1));
+        sequencer.accept(messages("music", 5));
+
+        assertTrue(sequencer.accept(messages("games", 3)).isEmpty());
+        assertEquals(List.of(6L), sequences(sequencer.accept(messages("music", 6))));
+        // Room names are matched without regard to case
+        assertEquals(List.of(2L, 3L), sequences(sequencer.accept(messages("GAMES", 2))));
+    }
+
+    @Test
+    void passesUnnumberedMessagesThrough() {
+        sequencer.accept(messages("games", 1));
+        sequencer.accept(messages("games", 3));
+
+        List<ChatMessage> ready = sequencer.accept(List.of(
+            new ChatMessage(0, 0, ChatMessage.Kind.PRIVATE, "bob", null, "psst")));
+        assertEquals(List.of(0L), sequences(ready));
+    }
+
+    @Test
+    void reportsOverdueGapsAndSkipsThem() throws Exception {
+        sequencer.accept(messages("games", 1));
+        sequencer.accept(messages("games", 4, 5));
+
+        assertTrue(sequencer.overdueGaps(TimeUnit.HOURS.toNanos(1)).isEmpty());
+        Thread.sleep(5);
+        List<MessageSequencer.Gap> gaps = sequencer.overdueGaps(TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(1, gaps.size());
+        assertEquals("games", gaps.get(0).getRoom());
+        assertEquals(2, gaps.get(0).getFromSequence());
+
+        assertEquals(List.of(4L, 5L), sequences(sequencer.skipGap("games")));
+        assertEquals(2, sequencer.getSkippedCount());
+        assertFalse(sequencer.hasGaps());
+        assertTrue(sequencer.overdueGaps(0).isEmpty());
+        // A message from the skipped gap arriving late is not shown
+        assertTrue(sequencer.accept(messages("games", 3)).isEmpty());
+    }
+
+    @Test
+    void skipsOnlyUpToNextGap() {
+        sequencer.accept(messages("games", 1));
+        sequencer.accept(messages("games", 3, 6));
+
+        assertEquals(List.of(3L), sequences(sequencer.skipGap("games")));
+        List<MessageSequencer.Gap> gaps = sequencer.overdueGaps(0);
+        assertEquals(1, gaps.size());
+        assertEquals(4, gaps.get(0).getFromSequence());
+    }
+
+    @Test
+    void roomStartsAtFirstSequenceTheServerSends() {
+        sequencer.holdRoom("games");
+        // Replayed history may arrive after newer messages
+        assertTrue(sequencer.accept(messages("games", 12, 10, 11)).isEmpty());
+
+        assertEquals(List.of(10L, 11L, 12L), sequences(sequencer.releaseRoom("games", 10)));
+        assertEquals(12, sequencer.lastShown("games"));
+    }
+
+    @Test
+    void rejoinedRoomStartsAfresh() {
+        sequencer.accept(messages("games", 1, 2, 3, 4, 5));
+
+        // The room was created again on the server and numbers from the start
+        sequencer.holdRoom("games");
+        sequencer.accept(messages("games", 1, 2));
+        assertEquals(List.of(1L, 2L), sequences(sequencer.releaseRoom("games", 1)));
+    }
+
+    @Test
+    void releaseRoomWithoutSequenceKeepsOrder() {
+        sequencer.accept(messages("games", 1, 2));
+
+        sequencer.holdRoom("games");
+        sequencer.accept(messages("games", 2, 3));
+        assertEquals(List.of(3L), sequences(sequencer.releaseRoom("games", 0)));
+    }
+
+    @Test
+    void heldSessionResumesAfterLastShown() {
+        sequencer.accept(messages(null, 1, 2));
+
+        sequencer.hold();
+        assertTrue(sequencer.accept(messages(null, 9, 8, 7)).isEmpty());
+        assertEquals(List.of(8L, 9L), sequences(sequencer.release(null, 7)));
+    }
+}
@@ -0,0 +1,89 @@
+package ServerSide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link CircuitBreaker} state transitions.
+ *
+ * @author Refactored
+ */
+class CircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final CircuitBreaker breaker = new CircuitBreaker(50, 2, 3, 4);
+
+    @Test
+    void opensAfterConsecutiveSlowCalls() {
+        assertFalse(breaker.recordCall(SLOW));
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.recordCall(SLOW));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void fastCallEndsSlowStreak() {
+        breaker.recordCall(SLOW);
+        breaker.recordCall(FAST);
+        assertFalse(breaker.recordCall(SLOW));
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    void timeoutsCountAsSlowCalls() {
+        breaker.recordCall(SLOW);
+        assertTrue(breaker.recordTimeout());
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    void closesAfterConsecutiveFastCalls() {
+        breaker.recordCall(SLOW);
+        breaker.recordCall(SLOW);
+
+        assertFalse(breaker.recordCall(FAST));
+        assertFalse(breaker.recordCall(FAST));
+        breaker.recordCall(SLOW);
+        assertFalse(breaker.recordCall(FAST));
+        assertFalse(breaker.recordCall(FAST));
+        assertTrue(breaker.isOpen());
+
+        assertTrue(breaker.recordCall(FAST));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void givesUpAfterConsecutiveTimeouts() {
+        for (int i = 0; i < 3; i++) {
+            breaker.recordTimeout();
+        }
+        assertFalse(breaker.shouldGiveUp());
+
+        breaker.recordCall(SLOW);
+        for (int i = 0; i < 3; i++) {
+            breaker.recordTimeout();
+        }
+        assertFalse(breaker.shouldGiveUp());
+
+        breaker.recordTimeout();
+        assertTrue(breaker.shouldGiveUp());
+    }
+
+    @Test
+    void rejectsThresholdsBelowOne() {
+        assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker(50, 0, 1, 1));
+    }
+
+    @Test
+    void rejectsGivingUpBeforeDegrading() {
+        assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker(50, 3, 1, 3));
+        assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker(50, 3, 1, 2));
+    }
+}
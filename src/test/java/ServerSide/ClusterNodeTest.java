@@ -0,0 +1,118 @@
+package ServerSide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.rmi.server.UnicastRemoteObject;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link ClusterNode} room ownership and remote user tracking.
+ * The other nodes are never contacted.
+ *
+ * @author Refactored
+ */
+class ClusterNodeTest {
+
+    private static final String MEMBERS = "a=localhost:1199, b=localhost:1198, c=localhost:1197";
+
+    private Chat chat;
+    private ClusterNode node;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        chat = new Chat();
+        node = new ClusterNode(chat, "a", MEMBERS, 64);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        node.close();
+        chat.shutdown();
+        UnicastRemoteObject.unexportObject(chat, true);
+    }
+
+    @Test
+    void parsesMembersInOrder() {
+        Map<String, String> members = ClusterNode.parseMembers(MEMBERS);
+
+        assertEquals(Set.of("a", "b", "c"), members.keySet());
+        assertEquals("localhost:1198", members.get("b"));
+        assertEquals("localhost:1197", node.addressOf("c"));
+    }
+
+    @Test
+    void rejectsMalformedMembers() {
+        assertThrows(IllegalArgumentException.class, () -> ClusterNode.parseMembers(""));
+        assertThrows(IllegalArgumentException.class, () -> ClusterNode.parseMembers("a=localhost"));
+        assertThrows(IllegalArgumentException.class, () -> ClusterNode.parseMembers("a=localhost:port"));
+        assertThrows(IllegalArgumentException.class, () -> ClusterNode.parseMembers("a=h:1,a=h:2"));
+        assertThrows(IllegalArgumentException.class, () -> new ClusterNode(chat, "d", MEMBERS, 64));
+    }
+
+    @Test
+    void everyNodeAgreesOnRoomOwners() throws Exception {
+        ClusterNode other = new ClusterNode(chat, "b", MEMBERS, 64);
+        try {
+            Set<String> owners = new HashSet<>();
+            for (int i = 0; i < 200; i++) {
+                String room = "room" + i;
+                assertEquals(node.ownerOf(room), other.ownerOf(room));
+                owners.add(node.ownerOf(room));
+            }
+            assertEquals(Set.of("a", "b", "c"), owners);
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    void roomOwnerIgnoresCase() {
+        assertEquals(node.ownerOf("Games"), node.ownerOf(" games "));
+    }
+
+    @Test
+    void tracksUsersOfOtherNodes() throws Exception {
+        node.userJoined("b", "Carol");
+        assertEquals("b", node.remoteNodeOf("carol"));
+
+        // A stale leave from another node does not remove the user
+        node.userLeft("c", "carol");
+        assertEquals("b", node.remoteNodeOf("carol"));
+
+        node.userLeft("b", "carol");
+        assertNull(node.remoteNodeOf("carol"));
+    }
+
+    @Test
+    void ignoresUsersFromUnknownNodesOrItself() throws Exception {
+        node.userJoined("d", "dave");
+        node.userJoined("a", "erin");
+
+        assertNull(node.remoteNodeOf("dave"));
+        assertNull(node.remoteNodeOf("erin"));
+    }
+
+    @Test
+    void restartedNodeLosesItsUsers() throws Exception {
+        node.userJoined("b", "carol");
+        node.userJoined("c", "dave");
+
+        node.nodeStarted("b");
+        assertNull(node.remoteNodeOf("carol"));
+        assertEquals("c", node.remoteNodeOf("dave"));
+    }
+
+    @Test
+    void refusesRoomRequestsFromUnknownNodes() {
+        assertThrows(IllegalArgumentException.class, () -> node.joinRoom("d", "dave", "games"));
+        assertThrows(IllegalArgumentException.class, () -> node.joinRoom("a", "dave", "games"));
+    }
+}
@@ -0,0 +1,91 @@
+package ServerSide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link ConsistentHashRing}.
+ *
+ * @author Refactored
+ */
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 30_000;
+    private static final int VIRTUAL_NODES = ChatConstants.CLUSTER_VIRTUAL_NODES;
+
+    private static String key(int i) {
+        return "room-" + i;
+    }
+
+    @Test
+    void spreadsKeysEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"), VIRTUAL_NODES);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.nodeFor(key(i)), 1, Integer::sum);
+        }
+
+        assertEquals(3, counts.size());
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            double share = count.getValue() / (double) KEYS;
+            assertTrue(share > 0.25 && share < 0.42, count.getKey() + " owns " + share);
+        }
+    }
+
+    @Test
+    void assignsKeysRegardlessOfNodeOrder() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"), VIRTUAL_NODES);
+        ConsistentHashRing reordered = new ConsistentHashRing(List.of("c", "a", "b"), VIRTUAL_NODES);
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(ring.nodeFor(key(i)), reordered.nodeFor(key(i)));
+        }
+    }
+
+    @Test
+    void onlyKeysOfLeavingNodeMove() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("a", "b", "c"), VIRTUAL_NODES);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("a", "b"), VIRTUAL_NODES);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String owner = before.nodeFor(key(i));
+            if (owner.equals("c")) {
+                moved++;
+            } else {
+                assertEquals(owner, after.nodeFor(key(i)), key(i));
+            }
+        }
+        assertTrue(moved > 0);
+    }
+
+    @Test
+    void joiningNodeOnlyTakesKeys() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("a", "b"), VIRTUAL_NODES);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("a", "b", "c"), VIRTUAL_NODES);
+        for (int i = 0; i < KEYS; i++) {
+            String owner = after.nodeFor(key(i));
+            if (!owner.equals("c")) {
+                assertEquals(before.nodeFor(key(i)), owner, key(i));
+            }
+        }
+    }
+
+    @Test
+    void singleNodeOwnsEverything() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("solo"), 1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("solo", ring.nodeFor(key(i)));
+        }
+    }
+
+    @Test
+    void rejectsInvalidRings() {
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(List.of(), 10));
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(List.of("a"), 0));
+    }
+}
@@ -0,0 +1,218 @@
+package ServerSide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.SocketTimeoutException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link DeliveryQueue}. The delivery worker is run by hand, so
+ * each test decides when pending deliveries are sent.
+ *
+ * @author Refactored
+ */
+class DeliveryQueueTest {
+
+    private final List<Runnable> tasks = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger failures = new AtomicInteger();
+    private RecordingClient client;
+
+    @BeforeEach
+    void setUp() {
+        client = new RecordingClient();
+    }
+
+    private DeliveryQueue queue(int capacity, DeliveryQueue.OverflowPolicy policy) {
+        DeliveryQueue queue = new DeliveryQueue("alice", client, capacity, tasks::add,
+            e -> failures.incrementAndGet());
+        queue.setOverflowPolicy(policy);
+        return queue;
+    }
+
+    private void runWorkers() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    /** Waits for a drain scheduled after the degraded interval */
+    private Runnable awaitWorker() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(5 * ChatConstants.DEGRADED_INTERVAL_MS);
+        while (tasks.isEmpty()) {
+            assertTrue(System.nanoTime() < deadline, "No delivery scheduled");
+            Thread.sleep(10);
+        }
+        return tasks.remove(0);
+    }
+
+    private static DeliveryQueue.Delivery text(String text) {
+        return client -> client.messageFromServer(text);
+    }
+
+    private static DeliveryQueue.Delivery timingOut() {
+        return client -> {
+            throw new RemoteException("Call timed out", new SocketTimeoutException("Read timed out"));
+        };
+    }
+
+    @Test
+    void dropOldestDiscardsOldestPendingDelivery() {
+        DeliveryQueue queue = queue(2, DeliveryQueue.OverflowPolicy.DROP_OLDEST);
+
+        assertTrue(queue.enqueue(text("one")));
+        assertTrue(queue.enqueue(text("two")));
+        assertTrue(queue.enqueue(text("three")));
+        runWorkers();
+
+        assertEquals(List.of("two", "three"), client.received);
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(0, failures.get());
+    }
+
+    @Test
+    void disconnectRejectsDeliveryWhenFull() {
+        DeliveryQueue queue = queue(1, DeliveryQueue.OverflowPolicy.DISCONNECT);
+
+        assertTrue(queue.enqueue(text("one")));
+        assertFalse(queue.enqueue(text("two")));
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(1, queue.getDepth());
+
+        runWorkers();
+        assertEquals(List.of("one"), client.received);
+    }
+
+    @Test
+    void blockRejectsAfterTimeout() {
+        DeliveryQueue queue = queue(1, DeliveryQueue.OverflowPolicy.BLOCK);
+        queue.setBlockTimeoutMillis(50);
+
+        assertTrue(queue.enqueue(text("one")));
+        long start = System.nanoTime();
+        assertFalse(queue.enqueue(text("two")));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    void blockWaitsForRoom() throws Exception {
+        DeliveryQueue queue = queue(1, DeliveryQueue.OverflowPolicy.BLOCK);
+        queue.setBlockTimeoutMillis(10_000);
+        assertTrue(queue.enqueue(text("one")));
+
+        CompletableFuture<Boolean> second = CompletableFuture.supplyAsync(() -> queue.enqueue(text("two")));
+        Thread.sleep(50);
+        assertFalse(second.isDone());
+
+        // Delivering "one" makes room for "two"
+        tasks.remove(0).run();
+        assertTrue(second.get(5, TimeUnit.SECONDS));
+        runWorkers();
+
+        assertEquals(List.of("one", "two"), client.received);
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    void offerNeverWaitsOrCountsDrops() {
+        DeliveryQueue queue = queue(1, DeliveryQueue.OverflowPolicy.BLOCK);
+        queue.setBlockTimeoutMillis(10_000);
+
+        assertTrue(queue.offer(text("one")));
+        assertFalse(queue.offer(text("two")));
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    void offerUnderDropOldestMakesRoom() {
+        DeliveryQueue queue = queue(1, DeliveryQueue.OverflowPolicy.DROP_OLDEST);
+
+        assertTrue(queue.offer(text("one")));
+        assertTrue(queue.offer(text("two")));
+        runWorkers();
+
+        assertEquals(List.of("two"), client.received);
+        assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    void closedQueueRejectsDeliveries() {
+        DeliveryQueue queue = queue(4, DeliveryQueue.OverflowPolicy.DROP_OLDEST);
+        queue.enqueue(text("one"));
+        queue.close();
+
+        assertTrue(queue.isClosed());
+        assertFalse(queue.enqueue(text("two")));
+        assertFalse(queue.offer(text("three")));
+        assertEquals(0, queue.getDepth());
+    }
+
+    @Test
+    void failedDeliveryClosesQueueAndReportsOnce() {
+        DeliveryQueue queue = queue(4, DeliveryQueue.OverflowPolicy.DROP_OLDEST);
+        queue.enqueue(client -> {
+            throw new RemoteException("Connection refused");
+        });
+        queue.enqueue(text("after"));
+        runWorkers();
+
+        assertTrue(queue.isClosed());
+        assertEquals(1, failures.get());
+        assertTrue(client.received.isEmpty());
+    }
+
+    @Test
+    void timingOutClientIsDegradedBeforeItIsDropped() throws Exception {
+        DeliveryQueue queue = queue(16, DeliveryQueue.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < ChatConstants.BREAKER_MAX_TIMEOUTS; i++) {
+            queue.enqueue(timingOut());
+        }
+
+        runWorkers();
+        assertTrue(queue.getCircuitBreaker().isOpen());
+        assertFalse(queue.isClosed());
+        assertEquals(0, failures.get());
+        assertEquals(ChatConstants.BREAKER_TRIP_THRESHOLD, queue.getDroppedCount());
+        // The rest waits for the degraded interval
+        assertTrue(tasks.isEmpty());
+
+        // Each degraded pass sends one delivery, until the client is given up on
+        for (int i = ChatConstants.BREAKER_TRIP_THRESHOLD; i < ChatConstants.BREAKER_MAX_TIMEOUTS; i++) {
+            assertFalse(queue.isClosed());
+            awaitWorker().run();
+        }
+        assertTrue(queue.isClosed());
+        assertEquals(1, failures.get());
+        assertEquals(ChatConstants.BREAKER_MAX_TIMEOUTS, queue.getDroppedCount());
+    }
+
+    @Test
+    void successfulCallEndsTimeoutStreak() {
+        DeliveryQueue queue = queue(16, DeliveryQueue.OverflowPolicy.DROP_OLDEST);
+
+        // Timeout streaks one short of opening the breaker
+        for (int i = 0; i < 3 * ChatConstants.BREAKER_TRIP_THRESHOLD; i++) {
+            if (i % ChatConstants.BREAKER_TRIP_THRESHOLD == 0) {
+                queue.enqueue(text("ok " + i));
+            } else {
+                queue.enqueue(timingOut());
+            }
+        }
+        runWorkers();
+
+        assertFalse(queue.getCircuitBreaker().isOpen());
+        assertFalse(queue.isClosed());
+        assertEquals(0, failures.get());
+        assertEquals(3, queue.getDeliveredCount());
+    }
+}
@@ -0,0 +1,188 @@
+package ServerSide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the {@link MessageBatch} encoding.
+ *
+ * @author Refactored
+ */
+class MessageBatchTest {
+
+    private static final List<ChatMessage> MESSAGES = List.of(
+        new ChatMessage(7, 1_700_000_000_000L, ChatMessage.Kind.CHAT, "alice", "games", "hello"),
+        new ChatMessage(8, 1_700_000_000_250L, ChatMessage.Kind.CHAT, "bob", "games", "hi é世"),
+        new ChatMessage(9, 1_699_999_999_000L, ChatMessage.Kind.SERVER, null, "games", "carol joined"),
+        new ChatMessage(0, 1_700_000_001_000L, ChatMessage.Kind.PRIVATE, "alice", null, ""));
+
+    private static void assertSameMessages(List<ChatMessage> expected, List<ChatMessage> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            ChatMessage want = expected.get(i);
+            ChatMessage got = actual.get(i);
+            assertEquals(want.getSequence(), got.getSequence());
+            assertEquals(want.getTimestamp(), got.getTimestamp());
+            assertEquals(want.getKind(), got.getKind());
+            assertEquals(want.getSender(), got.getSender());
+            assertEquals(want.getRoom(), got.getRoom());
+            assertEquals(want.getText(), got.getText());
+        }
+    }
+
+    private static MessageBatch serializeAndRead(MessageBatch batch) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(batch);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (MessageBatch) in.readObject();
+        }
+    }
+
+    /** Encodes numbers as the batch does, for building malformed input */
+    private static byte[] varints(long... values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (long value : values) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void roundTrips() {
+        byte[] encoded = MessageBatch.encode(MESSAGES);
+
+        MessageBatch decoded = MessageBatch.decode(encoded);
+        assertSameMessages(MESSAGES, decoded);
+        assertEquals(MESSAGES.size(), MessageBatch.countOf(encoded));
+        // The received bytes are reused if the batch is passed on
+        assertSame(encoded, decoded.encoded());
+    }
+
+    @Test
+    void roundTripsEmptyBatch() {
+        assertEquals(0, MessageBatch.decode(MessageBatch.encode(List.of())).size());
+    }
+
+    @Test
+    void roundTripsThroughSerialization() throws Exception {
+        assertSameMessages(MESSAGES, serializeAndRead(new MessageBatch(MESSAGES)));
+    }
+
+    @Test
+    void roundTripsCompressed() throws Exception {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 1; messages.size() * 40 < 4 * ChatConstants.COMPRESSION_THRESHOLD_BYTES; i++) {
+            messages.add(new ChatMessage(i, 1_700_000_000_000L + i, ChatMessage.Kind.CHAT, "alice", "games",
+                "the same words again and again, message " + i));
+        }
+        MessageBatch batch = new MessageBatch(messages);
+
+        byte[] compressed = batch.compressed();
+        assertNotNull(compressed);
+        assertSameMessages(messages, MessageBatch.decodeCompressed(compressed));
+        assertSameMessages(messages, serializeAndRead(batch.compressedOnWire()));
+    }
+
+    @Test
+    void rejectsTruncatedBatch() {
+        byte[] encoded = MessageBatch.encode(MESSAGES);
+        for (int length = 0; length < encoded.length; length++) {
+            byte[] truncated = Arrays.copyOf(encoded, length);
+            assertThrows(IllegalArgumentException.class, () -> MessageBatch.decode(truncated),
+                "length " + length);
+        }
+    }
+
+    @Test
+    void rejectsTrailingBytes() {
+        byte[] encoded = MessageBatch.encode(MESSAGES);
+        assertThrows(IllegalArgumentException.class,
+            () -> MessageBatch.decode(Arrays.copyOf(encoded, encoded.length + 1)));
+    }
+
+    @Test
+    void rejectsUnknownKind() {
+        // count, sequence, timestamp, kind
+        byte[] encoded = varints(1, 1, 0, ChatMessage.Kind.values().length, 0, 0, 0);
+        assertThrows(IllegalArgumentException.class, () -> MessageBatch.decode(encoded));
+    }
+
+    @Test
+    void rejectsNegativeCount() {
+        byte[] encoded = varints(-1L);
+        assertThrows(IllegalArgumentException.class, () -> MessageBatch.decode(encoded));
+        assertThrows(IllegalArgumentException.class, () -> MessageBatch.countOf(encoded));
+    }
+
+    @Test
+    void rejectsNegativeTextLength() {
+        // count, sequence, timestamp, kind, sender, room, text length
+        byte[] encoded = varints(1, 1, 0, 0, 0, 0, Long.MIN_VALUE);
+        assertThrows(IllegalArgumentException.class, () -> MessageBatch.decode(encoded));
+    }
+
+    @Test
+    void rejectsNegativeNameLength() {
+        // count, sequence, timestamp, kind, new sender id, sender length
+        byte[] encoded = varints(1, 1, 0, 0, 1, -5L);
+        assertThrows(IllegalArgumentException.class, () -> MessageBatch.decode(encoded));
+    }
+
+    @Test
+    void rejectsUnknownNameId() {
+        byte[] encoded = varints(1, 1, 0, 0, 3, 0, 0);
+        assertThrows(IllegalArgumentException.class, () -> MessageBatch.decode(encoded));
+    }
+
+    @Test
+    void rejectsOverlongNumber() {
+        byte[] encoded = new byte[11];
+        Arrays.fill(encoded, (byte) 0xFF);
+        assertThrows(IllegalArgumentException.class, () -> MessageBatch.decode(encoded));
+    }
+
+    @Test
+    void rejectsNegativeLengthWhenDeserializing() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeBoolean(false);
+            out.writeInt(-1);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertThrows(StreamCorruptedException.class, () -> new MessageBatch().readExternal(in));
+        }
+    }
+
+    @Test
+    void rejectsMalformedBatchWhenDeserializing() throws IOException {
+        byte[] encoded = MessageBatch.encode(MESSAGES);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeBoolean(false);
+            out.writeInt(encoded.length - 1);
+            out.write(encoded, 0, encoded.length - 1);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertThrows(StreamCorruptedException.class, () -> new MessageBatch().readExternal(in));
+        }
+    }
+}
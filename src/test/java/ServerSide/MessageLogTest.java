@@ -0,0 +1,154 @@
+package ServerSide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link MessageLog} recovery, in particular of a segment whose
+ * last record was only partly written when the server stopped.
+ *
+ * @author Refactored
+ */
+class MessageLogTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private MessageLog open() throws IOException {
+        return new MessageLog(directory, SEGMENT_SIZE, Long.MAX_VALUE, Long.MAX_VALUE, 1000);
+    }
+
+    private static List<String> texts(List<MessageLog.Record> records) {
+        List<String> texts = new ArrayList<>();
+        for (MessageLog.Record record : records) {
+            texts.add(record.getText());
+        }
+        return texts;
+    }
+
+    /** Writes three records to a fresh log and returns its only segment */
+    private Path writeThree() throws IOException {
+        try (MessageLog log = open()) {
+            log.append(MessageLog.Kind.CHAT, "games", "alice", "one");
+            log.append(MessageLog.Kind.SERVER, "games", null, "two");
+            log.append(MessageLog.Kind.CHAT, "games", "bob", "three");
+            return log.listSegments().get(0);
+        }
+    }
+
+    /** Finds where each record of a segment starts */
+    private static List<Integer> recordStarts(Path segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment)).order(ByteOrder.BIG_ENDIAN);
+        List<Integer> starts = new ArrayList<>();
+        int position = 0;
+        int bodyLength;
+        while ((bodyLength = buffer.getInt(position)) > 0) {
+            starts.add(position);
+            position += 8 + bodyLength;
+        }
+        starts.add(position);
+        return starts;
+    }
+
+    private static void overwrite(Path segment, int position, ByteBuffer bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(bytes, position);
+        }
+    }
+
+    @Test
+    void reopenedLogContinuesAfterLastRecord() throws IOException {
+        writeThree();
+
+        try (MessageLog log = open()) {
+            assertEquals(3, log.getNextIndex());
+            List<MessageLog.Record> records = log.readRecent("games", 10);
+            assertEquals(List.of("one", "two", "three"), texts(records));
+            assertEquals(2, records.get(2).getIndex());
+            assertEquals("bob", records.get(2).getSender());
+            assertNull(records.get(1).getSender());
+            assertEquals(3, log.append(MessageLog.Kind.CHAT, "games", "alice", "four"));
+        }
+    }
+
+    @Test
+    void recoversFromCorruptLastRecord() throws IOException {
+        Path segment = writeThree();
+        List<Integer> starts = recordStarts(segment);
+        // Damage the text of the last record, as a torn write would leave it
+        overwrite(segment, starts.get(3) - 1, ByteBuffer.wrap(new byte[] {'X'}));
+
+        try (MessageLog log = open()) {
+            assertEquals(2, log.getNextIndex());
+            assertEquals(List.of("one", "two"), texts(log.readRecent("games", 10)));
+            assertEquals(2, log.append(MessageLog.Kind.CHAT, "games", "bob", "again"));
+        }
+        try (MessageLog log = open()) {
+            assertEquals(3, log.getNextIndex());
+            assertEquals(List.of("one", "two", "again"), texts(log.readRecent("games", 10)));
+        }
+    }
+
+    @Test
+    void ignoresLengthWrittenWithoutBody() throws IOException {
+        Path segment = writeThree();
+        int end = recordStarts(segment).get(3);
+        // A header whose body and checksum never reached the disk
+        overwrite(segment, end, ByteBuffer.allocate(4).putInt(0, 40));
+
+        try (MessageLog log = open()) {
+            assertEquals(3, log.getNextIndex());
+            assertEquals(List.of("one", "two", "three"), texts(log.readRecent("games", 10)));
+            log.append(MessageLog.Kind.CHAT, "games", "alice", "four");
+        }
+        try (MessageLog log = open()) {
+            assertEquals(List.of("one", "two", "three", "four"), texts(log.readRecent("games", 10)));
+        }
+    }
+
+    @Test
+    void ignoresLengthPastEndOfSegment() throws IOException {
+        Path segment = writeThree();
+        int end = recordStarts(segment).get(3);
+        overwrite(segment, end, ByteBuffer.allocate(4).putInt(0, SEGMENT_SIZE));
+
+        try (MessageLog log = open()) {
+            assertEquals(3, log.getNextIndex());
+        }
+    }
+
+    @Test
+    void readsRecentRecordsAcrossSegments() throws IOException {
+        try (MessageLog log = open()) {
+            for (int i = 0; i < 200; i++) {
+                log.append(MessageLog.Kind.CHAT, i % 2 == 0 ? "games" : "music", "alice", "message " + i);
+            }
+            log.append(MessageLog.Kind.PRIVATE, "games", "alice", "private");
+            assertTrue(log.listSegments().size() > 1);
+        }
+
+        try (MessageLog log = open()) {
+            assertEquals(201, log.getNextIndex());
+            List<MessageLog.Record> records = log.readRecent("games", 60);
+            assertEquals(60, records.size());
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals("message " + (80 + 2 * i), records.get(i).getText());
+            }
+        }
+    }
+}
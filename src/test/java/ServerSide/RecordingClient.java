@@ -0,0 +1,49 @@
+package ServerSide;
+
+import ClientSide.ChatClient;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Client stub that records the messages delivered to it, for tests.
+ *
+ * @author Refactored
+ */
+class RecordingClient implements ChatClient {
+
+    final List<String> received = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public void messageFromServer(String message) {
+        received.add(message);
+    }
+
+    @Override
+    public void receiveEncoded(byte[] encodedBatch) {
+        for (ChatMessage message : MessageBatch.decode(encodedBatch)) {
+            received.add(message.getText());
+        }
+    }
+
+    @Override
+    public void receiveCompressed(byte[] compressedBatch) {
+        receiveEncoded(MessageCompression.decompress(compressedBatch));
+    }
+
+    @Override
+    public void updateUserList(String[] currentUsers) {
+    }
+
+    @Override
+    public void userListSnapshot(long version, String[] currentUsers) {
+    }
+
+    @Override
+    public void userListDelta(long version, String[] added, String[] removed) {
+    }
+
+    @Override
+    public void ping() {
+    }
+}
@@ -0,0 +1,96 @@
+package ServerSide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link SessionStore} resume tokens.
+ *
+ * @author Refactored
+ */
+class SessionStoreTest {
+
+    private final SessionStore store = new SessionStore(TimeUnit.MINUTES.toMillis(5));
+
+    @Test
+    void tokenCanBeRedeemedOnce() {
+        String token = store.issue("alice");
+
+        assertTrue(store.redeem("alice", token));
+        assertFalse(store.redeem("alice", token));
+    }
+
+    @Test
+    void wrongTokenLeavesSessionInPlace() {
+        String token = store.issue("alice");
+
+        assertFalse(store.redeem("alice", "not-the-token"));
+        assertFalse(store.redeem("bob", token));
+        assertTrue(store.redeem("alice", token));
+    }
+
+    @Test
+    void usernamesIgnoreCase() {
+        String token = store.issue("Alice");
+
+        assertTrue(store.redeem(" alice ", token));
+    }
+
+    @Test
+    void issueReplacesEarlierToken() {
+        String first = store.issue("alice");
+        String second = store.issue("alice");
+
+        assertNotEquals(first, second);
+        assertFalse(store.redeem("alice", first));
+        assertTrue(store.redeem("alice", second));
+    }
+
+    @Test
+    void tokenExpiresAfterResumeWindow() throws InterruptedException {
+        SessionStore shortWindow = new SessionStore(20);
+        String token = shortWindow.issue("alice");
+
+        shortWindow.disconnected("alice");
+        Thread.sleep(50);
+        assertFalse(shortWindow.redeem("alice", token));
+        assertEquals(0, shortWindow.size());
+    }
+
+    @Test
+    void tokenStaysValidWithinResumeWindow() {
+        String token = store.issue("alice");
+
+        store.disconnected("alice");
+        assertTrue(store.redeem("alice", token));
+    }
+
+    @Test
+    void connectedSessionDoesNotExpire() throws InterruptedException {
+        SessionStore noWindow = new SessionStore(0);
+        String token = noWindow.issue("alice");
+
+        Thread.sleep(20);
+        assertTrue(noWindow.redeem("alice", token));
+    }
+
+    @Test
+    void discardForgetsSession() {
+        String token = store.issue("alice");
+
+        store.discard("alice");
+        assertFalse(store.redeem("alice", token));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void rejectsNegativeWindow() {
+        assertThrows(IllegalArgumentException.class, () -> new SessionStore(-1));
+    }
+}